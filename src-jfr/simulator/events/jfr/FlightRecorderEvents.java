@@ -0,0 +1,194 @@
+package simulator.events.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import simulator.events.EngineEvents;
+
+/**
+ * Records the engine's spans as JDK Flight Recorder events, named
+ * <code>simulator.*</code> in the <code>Simulator</code> category. Only
+ * loaded on a JVM that has the flight recorder. The rest of the project
+ * builds for Java 6, so this class is kept in its own source folder,
+ * src-jfr, and compiled with <code>--release 11</code> into the same
+ * classes by the build's compile_jfr target. The events are enabled like
+ * any other:
+ * <pre>
+ * java -XX:StartFlightRecording=filename=run.jfr ...
+ * jfr print --events 'simulator.*' run.jfr
+ * </pre>
+ * An event is only written when recording is on and the span lasts
+ * longer than the recording's threshold for it. Spans are no finer than a
+ * pass through a phase, so the events cost nothing noticeable either way.
+ */
+
+public class FlightRecorderEvents extends EngineEvents {
+
+	@Name("simulator.ModelRun")
+	@Label("Model Run")
+	@Category("Simulator")
+	@Description("Run of every group of a model")
+	@StackTrace(false)
+	static class ModelRun extends Event {
+		@Label("Groups")
+		int groups;
+		@Label("Phases")
+		int phases;
+		@Label("Timesteps")
+		@Description("Timesteps the run is estimated to simulate")
+		long timesteps;
+	}
+
+	@Name("simulator.GroupRun")
+	@Label("Group Run")
+	@Category("Simulator")
+	@Description("Run of the phases of a group")
+	@StackTrace(false)
+	static class GroupRun extends Event {
+		@Label("Group")
+		String group;
+		@Label("Phases")
+		int phases;
+	}
+
+	@Name("simulator.PhaseRun")
+	@Label("Phase Run")
+	@Category("Simulator")
+	@Description("Run of a phase over all its combinations")
+	@StackTrace(false)
+	static class PhaseRun extends Event {
+		@Label("Group")
+		String group;
+		@Label("Phase")
+		int phase;
+		@Label("Trials")
+		int trials;
+		@Label("Random")
+		boolean random;
+		@Label("Timesteps")
+		@Description("Timesteps the phase is estimated to simulate")
+		long timesteps;
+		@Label("CSC Size")
+		@Description("Mean CS length in timesteps")
+		int csc;
+	}
+
+	@Name("simulator.CombinationRun")
+	@Label("Combination Run")
+	@Category("Simulator")
+	@Description("One pass through the trials of a phase")
+	@StackTrace(false)
+	static class CombinationRun extends Event {
+		@Label("Group")
+		String group;
+		@Label("Phase")
+		int phase;
+		@Label("Combination")
+		int combination;
+		@Label("Trials")
+		int trials;
+	}
+
+	@Name("simulator.TimingGeneration")
+	@Label("Timing Generation")
+	@Category("Simulator")
+	@Description("Making the trial timings of a pass through a phase")
+	@StackTrace(false)
+	static class TimingGeneration extends Event {
+		@Label("Group")
+		String group;
+		@Label("Phase")
+		int phase;
+		@Label("Trials")
+		int trials;
+		@Label("Variable")
+		@Description("Whether durations are drawn from distributions")
+		boolean variable;
+	}
+
+	@Name("simulator.ExportSheet")
+	@Label("Export Sheet")
+	@Category("Simulator")
+	@Description("Export of the results of a group")
+	@StackTrace(false)
+	static class ExportSheet extends Event {
+		@Label("Format")
+		String format;
+		@Label("Group")
+		String group;
+		@Label("Phases")
+		int phases;
+	}
+
+	/**
+	 * Span committing an event when it ends.
+	 */
+
+	private static class EventSpan extends Span {
+		private final Event event;
+
+		EventSpan(Event event) {
+			this.event = event;
+			event.begin();
+		}
+
+		public void end() {
+			event.commit();
+		}
+	}
+
+	public Span modelRun(int groups, int phases, long timesteps) {
+		ModelRun event = new ModelRun();
+		event.groups = groups;
+		event.phases = phases;
+		event.timesteps = timesteps;
+		return new EventSpan(event);
+	}
+
+	public Span groupRun(String group, int phases) {
+		GroupRun event = new GroupRun();
+		event.group = group;
+		event.phases = phases;
+		return new EventSpan(event);
+	}
+
+	public Span phaseRun(String group, int phase, int trials, boolean random, long timesteps, int csc) {
+		PhaseRun event = new PhaseRun();
+		event.group = group;
+		event.phase = phase;
+		event.trials = trials;
+		event.random = random;
+		event.timesteps = timesteps;
+		event.csc = csc;
+		return new EventSpan(event);
+	}
+
+	public Span combinationRun(String group, int phase, int combination, int trials) {
+		CombinationRun event = new CombinationRun();
+		event.group = group;
+		event.phase = phase;
+		event.combination = combination;
+		event.trials = trials;
+		return new EventSpan(event);
+	}
+
+	public Span timingGeneration(String group, int phase, int trials, boolean variable) {
+		TimingGeneration event = new TimingGeneration();
+		event.group = group;
+		event.phase = phase;
+		event.trials = trials;
+		event.variable = variable;
+		return new EventSpan(event);
+	}
+
+	public Span exportSheet(String format, String group, int phases) {
+		ExportSheet event = new ExportSheet();
+		event.format = format;
+		event.group = group;
+		event.phases = phases;
+		return new EventSpan(event);
+	}
+}
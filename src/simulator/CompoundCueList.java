@@ -3,6 +3,9 @@
  */
 package simulator;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import simulator.SimCue.Trace;
 
 /**
@@ -16,6 +19,11 @@ import simulator.SimCue.Trace;
  **/
 public class CompoundCueList extends CueList {
 
+	/** Summed component weights recorded this trial, one per compound timestep. **/
+	private double[] pending = new double[16];
+	/** Number of pending compound weights. **/
+	private int pendingCount = 0;
+
 	/**
 	 * @param symbol
 	 * @param alpha
@@ -50,5 +58,32 @@ public class CompoundCueList extends CueList {
 		}
 		return thisCue;
 	}
+	
+	/**
+	 * Record the summed weight of the active components for the next
+	 * timestep the whole compound is present. Components are only created
+	 * when the trial is stored.
+	 * @param totalAssoc sum of the working weights of the active components.
+	 */
+	
+	public void record(double totalAssoc) {
+		if(pendingCount == pending.length) {
+			pending = Arrays.copyOf(pending, pending.length*2);
+		}
+		pending[pendingCount++] = totalAssoc;
+	}
+	
+	/**
+	 * Apply the weights recorded this trial to the compound's components,
+	 * then push them to the V vectors as usual.
+	 */
+	
+	public void store(Random random) {
+		for(int i = 0; i < pendingCount; i++) {
+			nextCue().setAssocValue(pending[i]);
+		}
+		pendingCount = 0;
+		super.store(random);
+	}
 
 }
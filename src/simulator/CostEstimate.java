@@ -0,0 +1,140 @@
+package simulator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.Preferences;
+
+/**
+ * An estimate of the work and memory a simulation will need, worked out
+ * from the phase tables before the simulation starts. The time per
+ * timestep is calibrated from the runs made so far and remembered between
+ * sessions.
+ */
+public class CostEstimate {
+	/** Bytes held per recorded value, a boxed Double in a list. **/
+	public static final int BYTES_PER_VALUE = 24;
+	/** Time per timestep used before any run has been measured. **/
+	private static final double DEFAULT_NANOS = 500;
+	/** Preference key for the calibrated time per timestep. **/
+	private static final String NANOS_KEY = "nanosPerTimestep";
+	/** Stored calibration. **/
+	private static final Preferences prefs = Preferences.userNodeForPackage(CostEstimate.class);
+
+	/** Number of groups that can run at once. **/
+	private final int parallelism;
+	/** Timesteps simulated across all groups. **/
+	private long timesteps;
+	/** Timesteps simulated by the largest group. **/
+	private long maxGroupTimesteps;
+	/** Expected size of the results held after the run. **/
+	private long resultBytes;
+	/** Largest expected number of components in a CSC. **/
+	private int maxCSCSize;
+
+	/**
+	 * @param parallelism number of groups that can be simulated at once.
+	 */
+
+	public CostEstimate(int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+	}
+
+	/**
+	 * Add the cost of a group.
+	 * @param steps timesteps simulated by the group.
+	 * @param bytes size of the results the group holds.
+	 * @param cscSize largest expected CSC size in the group.
+	 */
+
+	public void addGroup(long steps, long bytes, int cscSize) {
+		timesteps += steps;
+		maxGroupTimesteps = Math.max(maxGroupTimesteps, steps);
+		resultBytes += bytes;
+		maxCSCSize = Math.max(maxCSCSize, cscSize);
+	}
+
+	/**
+	 * Groups run concurrently, so the run takes at least as long as the
+	 * largest group, and at least as long as sharing all the work out evenly.
+	 * @return the number of timesteps on the critical path of the run.
+	 */
+
+	public long getCriticalTimesteps() {
+		return Math.max(maxGroupTimesteps, timesteps/parallelism);
+	}
+
+	/**
+	 * @return the estimated wall time of the run in milliseconds.
+	 */
+
+	public long getEstimatedMillis() {
+		return (long) (getCriticalTimesteps()*getNanosPerTimestep()/1e6);
+	}
+
+	/**
+	 * @return true if the results are expected not to fit in the memory left on the heap.
+	 */
+
+	public boolean exceedsHeap() {
+		return resultBytes > availableHeap();
+	}
+
+	/**
+	 * Update the calibrated time per timestep from a finished run.
+	 * @param elapsedMillis wall time the run took.
+	 */
+
+	public void calibrate(long elapsedMillis) {
+		long steps = getCriticalTimesteps();
+		if(steps > 0 && elapsedMillis > 0) {
+			double measured = elapsedMillis*1e6/steps;
+			prefs.putDouble(NANOS_KEY, (getNanosPerTimestep() + measured)/2);
+		}
+	}
+
+	/**
+	 * @return the time per timestep measured over previous runs.
+	 */
+
+	public static double getNanosPerTimestep() {
+		return prefs.getDouble(NANOS_KEY, DEFAULT_NANOS);
+	}
+
+	/**
+	 * @return the heap left for new results, in bytes.
+	 */
+
+	public static long availableHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+	}
+
+	/**
+	 * @return the number of timesteps simulated across all groups.
+	 */
+	public long getTimesteps() {
+		return timesteps;
+	}
+
+	/**
+	 * @return the expected size of the results in bytes.
+	 */
+	public long getResultBytes() {
+		return resultBytes;
+	}
+
+	/**
+	 * @return the largest expected number of components in a CSC.
+	 */
+	public int getMaxCSCSize() {
+		return maxCSCSize;
+	}
+
+	public String toString() {
+		long millis = getEstimatedMillis();
+		return String.format("%,d timesteps, %,d MB of results, about %d min, %d sec",
+				timesteps, resultBytes/(1024*1024),
+				TimeUnit.MILLISECONDS.toMinutes(millis),
+				TimeUnit.MILLISECONDS.toSeconds(millis) -
+				TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(millis)));
+	}
+}
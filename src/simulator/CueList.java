@@ -163,11 +163,20 @@ public class CueList implements Iterable<SimCue> {
 	 */
 	
 	public void store() {
+		store(new Random());
+	}
+	
+	/**
+	 * Push the working V value to the V vector for all cues.
+	 * @param random random numbers to draw the responses from.
+	 */
+	
+	public void store(Random random) {
 		double avg = 0;
 		double avgResp = 0;
 		for(int i = 0; i < cues.size(); i++) {
 			SimCue cue = cues.get(i);
-			cue.makeResponse(threshold);
+			cue.makeResponse(threshold, random);
 			if(i <= maxCue) {
 				avg += cue.getLastAssocValue();
 				avgResp += cue.response(trialCount);
@@ -0,0 +1,13 @@
+package simulator;
+
+/**
+ * Told about each group of a model as soon as it has been simulated, on
+ * the thread that ran it. Groups finish in any order.
+ */
+public interface GroupListener {
+
+	/**
+	 * @param group group whose results are complete.
+	 */
+	public void groupFinished(SimGroup group);
+}
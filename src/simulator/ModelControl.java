@@ -3,6 +3,12 @@
  */
 package simulator;
 
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A message passing object for tracking progress in long
  * running tasks and instructing them to cancel if required.
@@ -24,6 +30,24 @@ public class ModelControl {
 	/** Number of times the cycletime has been updated. **/
 	private volatile int modCount;
 	private volatile boolean isComplete;
+	/** Timesteps simulated so far, across all groups. **/
+	private final AtomicLong timesteps = new AtomicLong();
+	/** Timesteps the task is estimated to simulate. **/
+	private volatile long totalTimesteps;
+	/** Groups and phases run to the end. **/
+	private final AtomicInteger groupsCompleted = new AtomicInteger(), phasesCompleted = new AtomicInteger();
+	/** Passes through a phase's trials, one per random or variable combination. **/
+	private final AtomicLong combinationsCompleted = new AtomicLong();
+	/** Trials simulated so far, across all groups and combinations. **/
+	private final AtomicLong trials = new AtomicLong();
+	/** Rows written by exports. **/
+	private final AtomicLong rowsWritten = new AtomicLong();
+	/** Wall time of each phase run, by group and phase. **/
+	private final Map<String, Long> phaseMillis = new ConcurrentHashMap<String, Long>();
+	/** Estimated memory taken by the results. **/
+	private volatile long resultBytes;
+	/** When the task started and completed, 0 until then. **/
+	private volatile long startTime, endTime;
 	
 	public ModelControl() {
 		progress = 0;
@@ -70,10 +94,162 @@ public class ModelControl {
 	 * @param increment to apply to progress.
 	 */
 	
-	public void incrementProgress(double increment) {
+	public synchronized void incrementProgress(double increment) {
 		progress += increment;
 	}
 
+	/**
+	 * 
+	 * @param steps timesteps simulated since the last call.
+	 */
+	
+	public void addTimesteps(long steps) {
+		timesteps.addAndGet(steps);
+	}
+	
+	/**
+	 * @return the timesteps simulated so far.
+	 */
+	public long getTimesteps() {
+		return timesteps.get();
+	}
+	
+	/**
+	 * @param totalTimesteps the timesteps the task is estimated to simulate.
+	 */
+	public void setTotalTimesteps(long totalTimesteps) {
+		this.totalTimesteps = totalTimesteps;
+	}
+	
+	/**
+	 * @return the timesteps the task is estimated to simulate, 0 until known.
+	 */
+	public long getTotalTimesteps() {
+		return totalTimesteps;
+	}
+
+	/**
+	 * Note that a group has run all its phases.
+	 */
+	
+	public void groupCompleted() {
+		groupsCompleted.incrementAndGet();
+	}
+	
+	/**
+	 * @return the groups that have run all their phases.
+	 */
+	public int getGroupsCompleted() {
+		return groupsCompleted.get();
+	}
+	
+	/**
+	 * Note that a phase has run to the end.
+	 * @param group name of the phase's group.
+	 * @param phase number of the phase, from 1.
+	 * @param millis wall time the phase took.
+	 */
+	
+	public void phaseCompleted(String group, int phase, long millis) {
+		phasesCompleted.incrementAndGet();
+		phaseMillis.put(group + " phase " + phase, millis);
+	}
+	
+	/**
+	 * @return the phases that have run to the end.
+	 */
+	public int getPhasesCompleted() {
+		return phasesCompleted.get();
+	}
+	
+	/**
+	 * @return the wall time of each completed phase in milliseconds, by
+	 * group and phase.
+	 */
+	public Map<String, Long> getPhaseMillis() {
+		return new TreeMap<String, Long>(phaseMillis);
+	}
+	
+	/**
+	 * Note that a pass through a phase's trials has ended.
+	 */
+	
+	public void combinationCompleted() {
+		combinationsCompleted.incrementAndGet();
+	}
+	
+	/**
+	 * @return the passes through a phase's trials so far.
+	 */
+	public long getCombinationsCompleted() {
+		return combinationsCompleted.get();
+	}
+	
+	/**
+	 * Add to the trials simulated, once per pass through a phase rather than
+	 * per trial so the simulation threads do not contend on the count.
+	 * @param count trials simulated.
+	 */
+	
+	public void addTrials(long count) {
+		trials.addAndGet(count);
+	}
+	
+	/**
+	 * @return the trials simulated so far.
+	 */
+	public long getTrials() {
+		return trials.get();
+	}
+	
+	/**
+	 * @param rows rows an export has written since the last call.
+	 */
+	
+	public void addRowsWritten(long rows) {
+		rowsWritten.addAndGet(rows);
+	}
+	
+	/**
+	 * @return the rows written by exports so far.
+	 */
+	public long getRowsWritten() {
+		return rowsWritten.get();
+	}
+	
+	/**
+	 * @param resultBytes estimated memory the results take.
+	 */
+	public void setResultBytes(long resultBytes) {
+		this.resultBytes = resultBytes;
+	}
+	
+	/**
+	 * @return the estimated memory the results take, in bytes.
+	 */
+	public long getResultBytes() {
+		return resultBytes;
+	}
+	
+	/**
+	 * Note that the task has started, timing it from now.
+	 */
+	
+	public void start() {
+		startTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * @return milliseconds since the task started, or it took if complete,
+	 * 0 if it has not started.
+	 */
+	public long getElapsedMillis() {
+		if(startTime == 0) {
+			return 0;
+		}
+		return (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime;
+	}
+
 	/**
 	 * @return true if the associated task has been cancelled.
 	 */
@@ -100,5 +276,6 @@ public class ModelControl {
 	 */
 	public void setComplete(boolean isComplete) {
 		this.isComplete = isComplete;
+		endTime = isComplete ? System.currentTimeMillis() : 0;
 	}
 }
\ No newline at end of file
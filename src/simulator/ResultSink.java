@@ -0,0 +1,22 @@
+package simulator;
+
+/**
+ * Told about the results of each trial as the model runs, on the thread
+ * running the trial's group. Groups run at the same time, so trials of
+ * different groups arrive interleaved. Phases that average several runs,
+ * random or with variable durations, report their averaged trials once
+ * the phase is done rather than the trials of each run.
+ */
+public interface ResultSink {
+
+	/**
+	 * @param group group the trial was run in.
+	 * @param phase number of the phase, from 1.
+	 * @param cue symbol of the cue.
+	 * @param trial number of the trial in the phase, from 1.
+	 * @param weight average weight of the cue's components for the trial, as
+	 * the results show it.
+	 * @param response simulated response to the cue in the trial.
+	 */
+	public void trialStored(SimGroup group, int phase, String cue, int trial, double weight, double response);
+}
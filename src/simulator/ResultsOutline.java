@@ -0,0 +1,330 @@
+package simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreePath;
+import javax.swing.tree.TreeModel;
+
+/**
+ * Tree of the results of a run, by group, phase, cue and component, for
+ * browsing them a section at a time. Nodes are made as they are expanded
+ * and the text of a node is only formatted when it is asked for, so large
+ * runs never need their whole output built at once.
+ * <p>
+ * The tree outlives the run it was made for: formatted text is kept with
+ * the version of the phase results it came from (see
+ * {@link SimPhase#getResultsVersion()}), and {@link #refresh()} rebuilds
+ * only the phases whose results have changed since, telling the listeners
+ * which subtrees to redraw.
+ */
+
+public class ResultsOutline implements TreeModel {
+	private final SimModel model;
+	/** Whether compound cues are shown. **/
+	private final boolean compound;
+	private final String root = Messages.getString("SimView.allResults"); //$NON-NLS-1$
+	/** Group nodes, in model order. **/
+	private List<Node> groups;
+	/** Text of the whole run, and the results version it was formatted from. **/
+	private String rootText;
+	private long rootVersion;
+	private final EventListenerList listeners = new EventListenerList();
+
+	/**
+	 * @param model model that has been run.
+	 * @param compound whether to include compound cues.
+	 */
+
+	public ResultsOutline(SimModel model, boolean compound) {
+		this.model = model;
+		this.compound = compound;
+	}
+
+	/**
+	 * @param model a model.
+	 * @param compound whether compound cues are shown.
+	 * @return true if this tree shows the results of the model that way.
+	 */
+
+	public boolean isFor(SimModel model, boolean compound) {
+		return this.model == model && this.compound == compound;
+	}
+
+	/**
+	 * Format the results under a node, or reuse the text formatted before
+	 * if they have not changed since. Text for the whole run, a group or a
+	 * phase is cut short at {@link SimModel#OUTPUT_LIMIT}.
+	 * @param node node of this tree.
+	 * @return the node's results as text.
+	 */
+
+	public synchronized String format(Object node) {
+		if(node == root) {
+			long version = modelVersion();
+			if(rootText == null || rootVersion != version) {
+				rootText = model.textOutput(compound, SimModel.OUTPUT_LIMIT);
+				rootVersion = version;
+			}
+			return rootText;
+		}
+		Node section = (Node) node;
+		long version = section.phase < 0 ? groupVersion(section.group) : phaseVersion(section.group, section.phase);
+		if(section.text != null && section.textVersion == version) {
+			return section.text;
+		}
+		Map<String, String> names = model.getConfigCuesNames();
+		StringBuffer result = new StringBuffer();
+		boolean complete = true;
+		if(section.phase < 0) {
+			model.groupHeader(section.group, result);
+			complete = section.group.phasesOutput(compound, names, result, SimModel.OUTPUT_LIMIT);
+		} else if(section.cue == null) {
+			complete = section.group.phaseOutput(section.phase, compound, names, result, SimModel.OUTPUT_LIMIT);
+		} else {
+			SimPhase phase = section.group.getPhases().get(section.phase);
+			CueList cue = phase.getResults().get(section.cue);
+			if(section.component < 0) {
+				section.group.cueOutput(phase, cue, names, result);
+			} else {
+				section.group.componentOutput(cue, section.component, names, result);
+			}
+		}
+		if(!complete) {
+			result.append(Messages.getString("ResultsOutline.more")); //$NON-NLS-1$
+		}
+		section.text = result.toString();
+		section.textVersion = version;
+		return section.text;
+	}
+
+	/**
+	 * Bring the tree up to date with the model's results. Groups are matched
+	 * to the nodes made for them by name and number of phases, since a run
+	 * may replace the group objects; when they no longer match the whole
+	 * tree is rebuilt. Otherwise only the phases whose results have changed
+	 * lose their cues, and listeners are told of each of those subtrees
+	 * alone. Call on the event thread once a run is over.
+	 */
+
+	public void refresh() {
+		List<TreeModelEvent> events = new ArrayList<TreeModelEvent>();
+		synchronized(this) {
+			if(groups == null) {
+				return;
+			}
+			List<SimGroup> current = new ArrayList<SimGroup>(model.getGroups().values());
+			boolean same = current.size() == groups.size();
+			for(int i = 0; same && i < current.size(); i++) {
+				SimGroup group = groups.get(i).group;
+				same = current.get(i).getNameOfGroup().equals(group.getNameOfGroup())
+						&& current.get(i).getPhases().size() == group.getPhases().size();
+			}
+			if(!same) {
+				groups = null;
+				events.add(new TreeModelEvent(this, new Object[] {root}));
+			} else {
+				for(int i = 0; i < groups.size(); i++) {
+					Node group = groups.get(i);
+					group.rebind(current.get(i));
+					if(group.children == null || group.version == groupVersion(group.group)) {
+						continue;
+					}
+					group.version = groupVersion(group.group);
+					for(Node phase : group.children) {
+						long version = phaseVersion(phase.group, phase.phase);
+						if(phase.version != version) {
+							phase.version = version;
+							phase.children = null;
+							events.add(new TreeModelEvent(this, new Object[] {root, group, phase}));
+						}
+					}
+				}
+			}
+		}
+		for(TreeModelEvent event : events) {
+			for(TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+				listener.treeStructureChanged(event);
+			}
+		}
+	}
+
+	@Override
+	public Object getRoot() {
+		return root;
+	}
+
+	@Override
+	public Object getChild(Object parent, int index) {
+		return children(parent).get(index);
+	}
+
+	@Override
+	public int getChildCount(Object parent) {
+		return isLeaf(parent) ? 0 : children(parent).size();
+	}
+
+	@Override
+	public boolean isLeaf(Object node) {
+		if(node == root) {
+			return false;
+		}
+		Node section = (Node) node;
+		return section.component >= 0 || (section.cue != null && children(section).isEmpty());
+	}
+
+	@Override
+	public int getIndexOfChild(Object parent, Object child) {
+		return parent == null || child == null || isLeaf(parent) ? -1 : children(parent).indexOf(child);
+	}
+
+	@Override
+	public void valueForPathChanged(TreePath path, Object newValue) {
+		//Results are read-only
+	}
+
+	@Override
+	public void addTreeModelListener(TreeModelListener l) {
+		listeners.add(TreeModelListener.class, l);
+	}
+
+	@Override
+	public void removeTreeModelListener(TreeModelListener l) {
+		listeners.remove(TreeModelListener.class, l);
+	}
+
+	private synchronized List<Node> children(Object parent) {
+		if(parent == root) {
+			if(groups == null) {
+				groups = new ArrayList<Node>();
+				for(SimGroup group : model.getGroups().values()) {
+					groups.add(new Node(group, group.getNameOfGroup(), -1, null, -1));
+				}
+			}
+			return groups;
+		}
+		Node node = (Node) parent;
+		if(node.children == null) {
+			node.children = new ArrayList<Node>();
+			if(node.phase < 0) {
+				for(int i = 0; i < node.group.getPhases().size(); i++) {
+					node.children.add(new Node(node.group, Messages.getString("ResultsOutline.phase") + (i+1), i, null, -1)); //$NON-NLS-1$
+				}
+			} else if(node.cue == null) {
+				SimPhase phase = node.group.getPhases().get(node.phase);
+				for(Entry<String, CueList> entry : phase.getResults().entrySet()) {
+					String cueName = entry.getValue().getSymbol();
+					if(node.group.isCueOutput(phase, cueName, compound)) {
+						String label = node.group.interfaceName(cueName, model.getConfigCuesNames());
+						node.children.add(new Node(node.group, label, node.phase, entry.getKey(), -1));
+					}
+				}
+			} else if(node.component < 0) {
+				SimPhase phase = node.group.getPhases().get(node.phase);
+				CueList cue = phase.getResults().get(node.cue);
+				int components = cue == null ? 0 : node.group.componentsOutput(phase, cue);
+				for(int i = 0; i < components; i++) {
+					node.children.add(new Node(node.group, Messages.getString("ResultsOutline.component") + (i+1), node.phase, node.cue, i)); //$NON-NLS-1$
+				}
+			}
+		}
+		return node.children;
+	}
+
+	/**
+	 * @param group a group.
+	 * @param phase index of one of its phases.
+	 * @return the version of the phase's results.
+	 */
+
+	private static long phaseVersion(SimGroup group, int phase) {
+		return group.getPhases().get(phase).getResultsVersion();
+	}
+
+	/**
+	 * Versions only grow, so the latest of a group's phases changes
+	 * whenever any of them does.
+	 * @param group a group.
+	 * @return the version of the group's results.
+	 */
+
+	private static long groupVersion(SimGroup group) {
+		long version = 0;
+		for(SimPhase phase : group.getPhases()) {
+			version = Math.max(version, phase.getResultsVersion());
+		}
+		return version;
+	}
+
+	/**
+	 * @return the version of the results of the whole run.
+	 */
+
+	private long modelVersion() {
+		long version = 0;
+		for(SimGroup group : model.getGroups().values()) {
+			version = Math.max(version, groupVersion(group));
+		}
+		return version;
+	}
+
+	/**
+	 * A group, a phase of a group, a cue in a phase or a component of a
+	 * cue.
+	 */
+
+	private static class Node {
+		/** Group the node shows, replaced when a run makes a new one of the same name. **/
+		SimGroup group;
+		final String label;
+		/** Index of the phase, or -1 for a group. **/
+		final int phase;
+		/** Results key of the cue, or null for a group or phase. **/
+		final String cue;
+		/** Index of the component, or -1 for a group, phase or cue. **/
+		final int component;
+		/** Child nodes, made when first needed. **/
+		List<Node> children;
+		/** Version of the results the children were made from. **/
+		long version;
+		/** Text of the node once formatted, and the version it was formatted from. **/
+		String text;
+		long textVersion;
+
+		Node(SimGroup group, String label, int phase, String cue, int component) {
+			this.group = group;
+			this.label = label;
+			this.phase = phase;
+			this.cue = cue;
+			this.component = component;
+			this.version = phase < 0 ? groupVersion(group) : phaseVersion(group, phase);
+		}
+
+		/**
+		 * Show the results of a group that has replaced this node's group,
+		 * here and in every node below.
+		 * @param replacement group of the same name and phases.
+		 */
+
+		void rebind(SimGroup replacement) {
+			if(group != replacement) {
+				group = replacement;
+				if(children != null) {
+					for(Node child : children) {
+						child.rebind(replacement);
+					}
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+}
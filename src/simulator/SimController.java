@@ -38,6 +38,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.URI;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.Vector;
 import java.util.concurrent.ExecutionException;
@@ -59,13 +60,24 @@ import simulator.configurables.TimingConfiguration;
 import simulator.configurables.USConfiguration.Relationship;
 import simulator.graph.AverageResponseGraph;
 import simulator.graph.ComponentGraph;
+import simulator.graph.GraphCache;
+import simulator.graph.LiveGraph;
 import simulator.graph.ResponseGraph;
 import simulator.graph.SimGraph;
 import simulator.util.Distributions;
 import simulator.util.ExampleFileFilter;
 import simulator.util.ValuesTableModel;
 import simulator.util.VariableDistribution;
+import simulator.util.io.ExperimentReader;
+import simulator.util.io.ExperimentWriter;
+import simulator.util.io.ExportPipeline;
+import simulator.util.io.GroupExporter;
+import simulator.util.io.JsonLinesSink;
+import simulator.util.io.ResultArchive;
+import simulator.util.io.ResultArchiveWriter;
+import simulator.util.io.ResultExporter;
 import simulator.util.io.SimExport;
+import simulator.util.io.SimTableExport;
 
 
 /**
@@ -82,10 +94,20 @@ public class SimController implements ActionListener, PropertyChangeListener {
     private ProgressMonitor progressMonitor;
     /** Task for running the simulation. **/
     private RunTask task;
+    /** Curves shown while the model runs, or null. **/
+    private LiveGraph liveGraph;
+    /** Sink streaming the trials of the run to a file, if asked for. **/
+    private JsonLinesSink jsonLines;
+    /** Tree of the latest results, refreshed rather than rebuilt by later runs. **/
+    private ResultsOutline results;
     /** Thread for simulating. **/
     private volatile Thread simulate;
-    /** Excel exporter. **/
-    private SimExport exporter;
+    /** Spreadsheet or table exporter. **/
+    private ResultExporter exporter;
+    /** Export of the groups as they finish, for the run under way, if any. **/
+    private ExportPipeline pipeline;
+    /** Failure of the export made while running. **/
+    private volatile IOException pipelineFailure;
 	
 	private String lastDirectory = "."; // Alberto Fern�ndez Sept-2011  //$NON-NLS-1$
 	private boolean cscMode;
@@ -106,6 +128,7 @@ public class SimController implements ActionListener, PropertyChangeListener {
 		view.setStatusComponent(false, "run"); //$NON-NLS-1$
 		view.setStatusComponent(false, "dispGraph"); //$NON-NLS-1$
 		view.setStatusComponent(false, "Export"); //$NON-NLS-1$
+		view.setStatusComponent(false, "SaveResults"); //$NON-NLS-1$
 		view.setStatusComponent(false, "Save"); //$NON-NLS-1$
 		cscMode = true;
 	}
@@ -136,7 +159,11 @@ public class SimController implements ActionListener, PropertyChangeListener {
 	        if(returnVal == JFileChooser.APPROVE_OPTION) {
 	            try {
 	                File file = fc.getSelectedFile();
-	                loadObjects(file);
+	                if (ExperimentReader.isExperimentFile(file)) {
+	                	loadExperiment(file);
+	                } else {
+	                	loadObjects(file);
+	                }
 	            } catch (FileNotFoundException fe) {
 	                view.showError(Messages.getString("SimController.fileError")); //$NON-NLS-1$
 	            } catch (IOException ioe) {
@@ -184,32 +211,37 @@ public class SimController implements ActionListener, PropertyChangeListener {
 		if (e.getActionCommand() == "Export") { //$NON-NLS-1$
 			// Alberto Fernandez Sept-2011
 		    // new SimExport(view, model);
-			String[] dir = new String[1];
-			dir[0] = lastDirectory;
-			// Choose a file to store the values.
+			File file = chooseExportFile(false);
+	        if(file != null) {
+	        	exporter = exporterFor(file);
+	        	progressMonitor = new ProgressMonitor(view, Messages.getString("SimController.exportMessage"), "", 0, 100); //$NON-NLS-1$ //$NON-NLS-2$
+	        	progressMonitor.setMillisToPopup(0);
+	        	progressMonitor.setMillisToDecideToPopup(0);
+	        	progressMonitor.setProgress(0);
+	        	exporterTask = new ExportTask();
+	        	exporterTask.addPropertyChangeListener(this);
+	        	exporterTask.execute();
+	        }
+		}
+		
+		// The user chooses to keep the results to open again without rerunning.
+		if (e.getActionCommand() == "SaveResults") { //$NON-NLS-1$
 	        JFileChooser fc = new JFileChooser();
-	        fc.setCurrentDirectory(new File(dir[0])); // AF Sept-2011
-		    ExampleFileFilter filter = new ExampleFileFilter();
-	        filter.addExtension("xlsx");
-	        filter.setDescription("Spreadsheet");
+	        fc.setCurrentDirectory(new File(lastDirectory));
+	        ExampleFileFilter filter = new ExampleFileFilter();
+	        filter.addExtension(Messages.getString("SimController.resultExtension")); //$NON-NLS-1$
+	        filter.setDescription(Messages.getString("SimController.resultFileType")); //$NON-NLS-1$
 	        fc.setFileFilter(filter);
-	        int returnVal = fc.showSaveDialog(view);
-	        if(returnVal == JFileChooser.APPROVE_OPTION) {
+	        if(fc.showSaveDialog(view) == JFileChooser.APPROVE_OPTION) {
 	        	String path = fc.getSelectedFile().getParent();
-	            dir[0] = path; // Alberto Fern�ndez Sept-2011
+	            lastDirectory = path;
 	            String name = fc.getSelectedFile().getName();
-	            if (!name.contains(".xlsx")) name += ".xlsx"; // Alberto Fernandez: changed from xls -> xlsx
-	            boolean okToContinue = true;
+	            if (!name.contains(Messages.getString("SimController.dotResultExtension"))) name += Messages.getString("SimController.dotResultExtension"); //$NON-NLS-1$ //$NON-NLS-2$
 	            File file = new File(path, name);
-	            if (file.exists ()) {
-	                int response = JOptionPane.showConfirmDialog (null, "Overwrite existing file?","Confirm Overwrite",
-	                   JOptionPane.OK_CANCEL_OPTION,
-	                   JOptionPane.QUESTION_MESSAGE);
-	                if (response == JOptionPane.CANCEL_OPTION) {okToContinue = false;}
-	                
-	            }
-	            if(okToContinue) {
-	            	exporter = new SimExport(view, getModel(), name, file);
+	            if (!file.exists() || JOptionPane.showConfirmDialog(null, Messages.getString("SimController.overwrite"), //$NON-NLS-1$
+	                   Messages.getString("SimController.confirmOverwrite"), //$NON-NLS-1$
+	                   JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.OK_OPTION) {
+	            	exporter = new ResultArchiveWriter(getModel(), file);
 	            	progressMonitor = new ProgressMonitor(view, Messages.getString("SimController.exportMessage"), "", 0, 100); //$NON-NLS-1$ //$NON-NLS-2$
 			    	progressMonitor.setMillisToPopup(0);
 			    	progressMonitor.setMillisToDecideToPopup(0);
@@ -219,7 +251,34 @@ public class SimController implements ActionListener, PropertyChangeListener {
 			    	exporterTask.execute();
 	            }
 	        }
-		    lastDirectory = dir[0];
+		}
+		
+		// The user chooses to show saved results of the experiment without rerunning it.
+		if (e.getActionCommand() == "OpenResults") { //$NON-NLS-1$
+	        JFileChooser fc = new JFileChooser();
+	        fc.setCurrentDirectory(new File(lastDirectory));
+	        ExampleFileFilter filter = new ExampleFileFilter();
+	        filter.addExtension(Messages.getString("SimController.resultExtension")); //$NON-NLS-1$
+	        filter.setDescription(Messages.getString("SimController.resultFileType")); //$NON-NLS-1$
+	        fc.setFileFilter(filter);
+	        if(fc.showOpenDialog(view) == JFileChooser.APPROVE_OPTION) {
+	        	lastDirectory = fc.getSelectedFile().getParent();
+	        	if (checkModelTable() && checkCSValuesTable() && checkUSValuesTable() && checkOtherValuesTable()) {
+	        		updateModelValues(getModel());
+	        		try {
+	        			ResultArchive archive = new ResultArchive(fc.getSelectedFile());
+	        			try {
+	        				archive.restore(getModel());
+	        			} finally {
+	        				archive.close();
+	        			}
+	        			view.setStatusComponent(true, "run"); //$NON-NLS-1$
+	        			showResults();
+	        		} catch (IOException ioe) {
+	        			view.showError(Messages.getString("SimController.resultError") + ioe.getMessage()); //$NON-NLS-1$
+	        		}
+	        	}
+	        }
 		}
 		
 		// The user chooses to quit. The application closes.
@@ -375,6 +434,7 @@ public class SimController implements ActionListener, PropertyChangeListener {
 			view.setStatusComponent(false, "dispGraph"); //$NON-NLS-1$
     		view.setOutput("");  
     		view.setStatusComponent(false, "Export"); //$NON-NLS-1$
+    		view.setStatusComponent(false, "SaveResults"); //$NON-NLS-1$
     		view.setStatusComponent(false, "Save"); //$NON-NLS-1$
 			if (checkModelTable()) {
 				view.setStatusComponent(true, "run"); //$NON-NLS-1$
@@ -417,36 +477,7 @@ public class SimController implements ActionListener, PropertyChangeListener {
 		    		view.getGlassPane().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 			    	view.getGlassPane().setVisible(true);
 			    	
-			    	// Update values from the CS view to the model
-			    	AbstractTableModel cstm = view.getCSValuesTableModel();
-			    	for (int i=0; i<cstm.getRowCount(); i++)
-			    		for (int j=1; j<cstm.getColumnCount(); j++){
-			    			getModel().updateValues((String)cstm.getValueAt(i, 0), j, (String)cstm.getValueAt(i, j));
-			    		}
-			    	// Update values from the US view to the model
-			    	AbstractTableModel ustm = view.getUSValuesTableModel();
-			    	for (int i=0; i<ustm.getRowCount(); i++)
-			    		for (int j=1; j<=getModel().getPhaseNo(); j++){
-			    			if (!view.getIsUSAcrossPhases()){ 
-			    				getModel().updateValues((String)ustm.getValueAt(i,0), j, (String)ustm.getValueAt(i,1));
-			    			}
-			    			else{
-			    				getModel().updateValues((String)ustm.getValueAt(i,0), j, (String)ustm.getValueAt(i,j));
-			    			}
-			    		}
-			    	//Update other values (gamma, delta, omega)
-			    	// Update values from the US view to the model
-			    	AbstractTableModel otm = view.getOtherValuesTableModel();
-			    	for (int i=0; i<otm.getRowCount(); i++)
-			    		for (int j=1; j<=getModel().getPhaseNo(); j++){
-			    			getModel().updateValues((String)otm.getValueAt(i,0), j, (String)otm.getValueAt(i,1));
-			    		}
-			    	
-			    	// update CS and US values on all the groups
-			    	getModel().updateValuesOnGroups();
-			    	//Update the context switch.
-			    	getModel().setUseContext(view.useContext());
-			    	getModel().setContextAcrossPhase(view.getIsOmegaAcrossPhases());
+			    	updateModelValues(getModel());
 			    	// execute the algorithm
 			    	/*model.startCalculations();   
 			    	
@@ -457,7 +488,43 @@ public class SimController implements ActionListener, PropertyChangeListener {
 			    	view.setStatusComponent(true, "Export");
 			    	view.setStatusComponent(true, "Save");*/
 			    	getModel().setCSC(cscMode);
-			    	task = new RunTask();
+			    	//Check the results will fit in memory before starting
+			    	CostEstimate estimate = getModel().estimateCost();
+			    	if(estimate.exceedsHeap()) {
+			    		int response = JOptionPane.showConfirmDialog(view, 
+			    				Messages.getString("SimController.memoryWarningOne") + estimate.getResultBytes()/(1024*1024) //$NON-NLS-1$
+			    				+ Messages.getString("SimController.memoryWarningTwo") + CostEstimate.availableHeap()/(1024*1024) //$NON-NLS-1$
+			    				+ Messages.getString("SimController.memoryWarningThree"), //$NON-NLS-1$
+			    				Messages.getString("SimController.memoryWarningTitle"), //$NON-NLS-1$
+			    				JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+			    		if (response != JOptionPane.OK_OPTION) {
+			    			view.getGlassPane().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+			    			view.getGlassPane().setVisible(false);
+			    			return;
+			    		}
+			    	}
+			    	//Groups are exported as they finish when asked to
+			    	pipeline = null;
+			    	if (view.getIsSetExportWhileRunning()) {
+			    		File file = chooseExportFile(true);
+			    		if (file == null) {
+			    			view.getGlassPane().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+			    			view.getGlassPane().setVisible(false);
+			    			return;
+			    		}
+			    		pipeline = new ExportPipeline((GroupExporter) exporterFor(file), false);
+			    	}
+			    	if (!startJsonLines()) {
+			    		pipeline = null;
+			    		view.getGlassPane().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+			    		view.getGlassPane().setVisible(false);
+			    		return;
+			    	}
+			    	startLiveGraph();
+			    	//The run uses the estimate made here, and its time calibrates later estimates
+			    	getModel().setCostEstimate(estimate);
+			    	getModel().setCalibrating(true);
+			    	task = new RunTask(estimate);
 			    	task.addPropertyChangeListener(this);
 			    	task.execute();
 			    }
@@ -525,6 +592,155 @@ public class SimController implements ActionListener, PropertyChangeListener {
 
 
 
+    /**
+     * Ask the user for a file to export the results to.
+     * @param archives true to offer result archives as well as spreadsheets
+     * and tables.
+     * @return the file, with its extension, or null if the user cancelled.
+     */
+    
+    private File chooseExportFile(boolean archives) {
+        JFileChooser fc = new JFileChooser();
+        fc.setCurrentDirectory(new File(lastDirectory)); // AF Sept-2011
+	    ExampleFileFilter filter = new ExampleFileFilter();
+        filter.addExtension("xlsx");
+        filter.setDescription("Spreadsheet");
+        ExampleFileFilter tableFilter = new ExampleFileFilter(new String[] {"csv", "tsv"}, //$NON-NLS-1$ //$NON-NLS-2$
+        		Messages.getString("SimController.tableFileType")); //$NON-NLS-1$
+        fc.addChoosableFileFilter(tableFilter);
+        ExampleFileFilter archiveFilter = new ExampleFileFilter();
+        archiveFilter.addExtension(Messages.getString("SimController.resultExtension")); //$NON-NLS-1$
+        archiveFilter.setDescription(Messages.getString("SimController.resultFileType")); //$NON-NLS-1$
+        if (archives) {
+        	fc.addChoosableFileFilter(archiveFilter);
+        }
+        fc.setFileFilter(filter);
+        if(fc.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) {
+        	return null;
+        }
+    	String path = fc.getSelectedFile().getParent();
+        lastDirectory = path; // Alberto Fernandez Sept-2011
+        String name = fc.getSelectedFile().getName();
+        boolean table = tableFilter.getExtension(fc.getSelectedFile()) != null
+        		&& tableFilter.accept(fc.getSelectedFile());
+        boolean archive = archives && archiveFilter.accept(fc.getSelectedFile())
+        		&& archiveFilter.getExtension(fc.getSelectedFile()) != null;
+        if (fc.getFileFilter() == tableFilter && !table) {
+        	name += ".csv"; //$NON-NLS-1$
+        	table = true;
+        }
+        if (fc.getFileFilter() == archiveFilter && !archive) {
+        	name += Messages.getString("SimController.dotResultExtension"); //$NON-NLS-1$
+        	archive = true;
+        }
+        if (!table && !archive && !name.contains(".xlsx")) name += ".xlsx"; // Alberto Fernandez: changed from xls -> xlsx
+        File file = new File(path, name);
+        if (file.exists ()) {
+            int response = JOptionPane.showConfirmDialog (null, "Overwrite existing file?","Confirm Overwrite",
+               JOptionPane.OK_CANCEL_OPTION,
+               JOptionPane.QUESTION_MESSAGE);
+            if (response == JOptionPane.CANCEL_OPTION) {return null;}
+        }
+        return file;
+    }
+    
+    /**
+     * @param file file chosen to export to.
+     * @return the export of the model for the file's extension.
+     */
+    
+    private ResultExporter exporterFor(File file) {
+    	String name = file.getName();
+    	if (name.endsWith(Messages.getString("SimController.dotResultExtension"))) { //$NON-NLS-1$
+    		return new ResultArchiveWriter(getModel(), file);
+    	}
+    	if (name.toLowerCase().endsWith(".csv") || name.toLowerCase().endsWith(".tsv")) {
+    		return new SimTableExport(getModel(), file, view.getIsSetCompound());
+    	}
+    	SimExport spreadsheet = new SimExport(view, getModel(), name, file);
+    	spreadsheet.setTrialsAsRows(view.getIsSetTrialsAsRows());
+    	return spreadsheet;
+    }
+
+    /**
+     * Open a window showing the curves as the model runs and add it to the
+     * model's result sinks, if the user asked for it.
+     */
+    
+    private void startLiveGraph() {
+    	if (!view.getIsSetLiveGraph()) {
+    		return;
+    	}
+    	liveGraph = new LiveGraph(Messages.getString("SimController.liveGraphTitle"), getModel(), view.getIsSetCompound()); //$NON-NLS-1$
+    	liveGraph.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    	liveGraph.pack();
+    	liveGraph.setLocation(50, 50);
+    	ImageIcon icon = createImageIcon("/simulator/extras/TD.png" , ""); //$NON-NLS-1$ //$NON-NLS-2$
+    	if (icon != null) {
+    		liveGraph.setIconImage(icon.getImage());
+    	}
+    	liveGraph.setVisible(true);
+    	getModel().addResultSink(liveGraph);
+    }
+
+    /**
+     * Ask for a file to stream the trial results to and add a sink writing
+     * them to the model, if the user asked for it.
+     * @return false if the user cancelled or the file could not be opened.
+     */
+    
+    private boolean startJsonLines() {
+    	if (!view.getIsSetJsonLines()) {
+    		return true;
+    	}
+        JFileChooser fc = new JFileChooser();
+        fc.setCurrentDirectory(new File(lastDirectory));
+        ExampleFileFilter filter = new ExampleFileFilter();
+        filter.addExtension(Messages.getString("SimController.jsonExtension")); //$NON-NLS-1$
+        filter.setDescription(Messages.getString("SimController.jsonFileType")); //$NON-NLS-1$
+        fc.setFileFilter(filter);
+        if (fc.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) {
+        	return false;
+        }
+        String path = fc.getSelectedFile().getParent();
+        lastDirectory = path;
+        String name = fc.getSelectedFile().getName();
+        if (!name.contains(Messages.getString("SimController.dotJsonExtension"))) name += Messages.getString("SimController.dotJsonExtension"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+        	jsonLines = new JsonLinesSink(new File(path, name));
+        } catch (IOException e) {
+        	view.showError(Messages.getString("SimController.fileError")); //$NON-NLS-1$
+        	return false;
+        }
+        getModel().addResultSink(jsonLines);
+        return true;
+    }
+
+    /**
+     * Stop the sinks of the run and close their windows and files.
+     */
+    
+    private void finishSinks() {
+    	if (liveGraph != null) {
+    		getModel().removeResultSink(liveGraph);
+    		liveGraph.finish();
+    		liveGraph = null;
+    	}
+    	if (jsonLines != null) {
+    		getModel().removeResultSink(jsonLines);
+    		try {
+    			jsonLines.close();
+    			if (jsonLines.getDropped() > 0) {
+    				view.showError(Messages.getString("SimController.jsonDroppedOne") + jsonLines.getDropped() //$NON-NLS-1$
+    						+ Messages.getString("SimController.jsonDroppedTwo")); //$NON-NLS-1$
+    			}
+    		} catch (IOException e) {
+    			view.showError(Messages.getString("SimController.fileError")); //$NON-NLS-1$
+    		}
+    		jsonLines = null;
+    	}
+    }
+
     /** Returns an ImageIcon, or null if the path was invalid. */ //E. Mondragon 28 Sept 2011
     
     private ImageIcon createImageIcon(String path, String description) {
@@ -544,13 +760,22 @@ public class SimController implements ActionListener, PropertyChangeListener {
 	 * Returns true if the ModelTable has been checked successfully
      */
 	private boolean checkModelTable() {
+		return checkModelTable(getModel());
+	}
+
+	/**
+	 * Returns true if the ModelTable has been checked successfully, and
+	 * builds the groups it describes into a model.
+	 * @param model model to build the groups into.
+     */
+	private boolean checkModelTable(SimModel model) {
 	   
 		boolean cont = true;
 	    // Get the experiment's model table so we can process the information.
 	    AbstractTableModel tm = view.getPhasesTableModel();
 	    
 	    //First check that table contains legal values.
-	    for (int row = 0; row < getModel().getGroupNo(); row ++) {
+	    for (int row = 0; row < model.getGroupNo(); row ++) {
 	        //Checking group names
 	        if (((String) tm.getValueAt(row , 0)).length() == 0) {
 	            cont = false;
@@ -558,7 +783,7 @@ public class SimController implements ActionListener, PropertyChangeListener {
 	            break;
 	        }
 	        //Checking phases values
-	        for (int col = 1; col < getModel().getPhaseNo() + 1; col++) {
+	        for (int col = 1; col < model.getPhaseNo() + 1; col++) {
 	            String tmp = (String) tm.getValueAt(row , 5*col-4);
 	            if (tmp.length() == 0) {
 	                view.showAbout(Messages.getString("SimController.phaseWarningOne")+col+Messages.getString("SimController.phaseWarningTwo")+tm.getValueAt(row, 0)+Messages.getString("SimController.phaseWarningThree")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
@@ -585,27 +810,27 @@ public class SimController implements ActionListener, PropertyChangeListener {
 	        }
 	    }
 	    if (cont) {
-	    	getModel().reinitialize();	    	
-	    	for (int row = 0; row < getModel().getGroupNo(); row ++) {
+	    	model.reinitialize();	    	
+	    	for (int row = 0; row < model.getGroupNo(); row ++) {
 	    		String gName = (String) tm.getValueAt(row , 0); // first column is the group's name
 		        // Create a new group for every row of the table.
-		        SimGroup sg = new SimGroup(gName,  getModel().getPhaseNo(), getModel().getCombinationNo(), getModel());
-		        for (int c = 1; c < getModel().getPhaseNo() + 1; c++) {
+		        SimGroup sg = new SimGroup(gName,  model.getPhaseNo(), model.getCombinationNo(), model);
+		        for (int c = 1; c < model.getPhaseNo() + 1; c++) {
 		        	boolean isRandom = false; 
 		        	boolean success = false;
-		        	getModel().setIsGeometricMean(view.getMeanType());
-		        	getModel().setIsExponential(view.getIsExponential());
-		        	getModel().setContextAlpha(view.getContextAlpha());
-		        	getModel().setTraceType(view.getTraceType());
+		        	model.setIsGeometricMean(view.getMeanType());
+		        	model.setIsExponential(view.getIsExponential());
+		        	model.setContextAlpha(view.getContextAlpha());
+		        	model.setTraceType(view.getTraceType());
 		        	//If context is off, use the empty context for this simulation.
-		        	ContextConfig context = !getModel().isUseContext() ? ContextConfig.EMPTY : (ContextConfig) tm.getValueAt(row, c*5-3);
+		        	ContextConfig context = !model.isUseContext() ? ContextConfig.EMPTY : (ContextConfig) tm.getValueAt(row, c*5-3);
 		        	String trialString = (String)tm.getValueAt(row , c*5-4);
 		        	//Remove whitespace
 		        	trialString = trialString.replaceAll("\\s", ""); //$NON-NLS-1$ //$NON-NLS-2$
 		        	//Get whether the phase is random
 		        	isRandom = ((Boolean) tm.getValueAt(row , c*5-2)).booleanValue();
 		        	success = sg.addPhase(trialString, isRandom, c, 
-	        			        view.getIsSetConfiguralCompounds(),(TreeMap<String, String>) getModel().getConfigCuesNames(),
+	        			        view.getIsSetConfiguralCompounds(),(TreeMap<String, String>) model.getConfigCuesNames(),
 	        			        (TimingConfiguration)tm.getValueAt(row , c*5-1), 
 	        			        (ITIConfig) tm.getValueAt(row, c*5), context);
 		        	
@@ -617,9 +842,9 @@ public class SimController implements ActionListener, PropertyChangeListener {
 		                break;
 		            }
 		        }
-		        if (cont) getModel().addGroupIntoMap(gName, sg);
+		        if (cont) model.addGroupIntoMap(gName, sg);
 		    }
-	    	getModel().addValuesIntoMap();
+	    	model.addValuesIntoMap();
 	    }
 	    return cont;
 	}
@@ -747,6 +972,8 @@ public class SimController implements ActionListener, PropertyChangeListener {
 		//VariableDistribution.resetSeed();
 		view.reset();
 	    view.clearHidden();
+	    GraphCache.clear();
+	    results = null;
 	    setModel(new SimModel());
 	    view.updateModel(getModel());
 	    
@@ -801,45 +1028,83 @@ public class SimController implements ActionListener, PropertyChangeListener {
 	 */
 	
 	class RunTask extends SwingWorker<Void, Void> {
-        
+		/** Steps in the progress bar. **/
+		private static final int PROGRESS_STEPS = 1000;
+		/** Weight of the latest second in the smoothed timesteps per second. **/
+		private static final double SMOOTHING = 0.3;
+		/** Estimate made before the run. **/
+		private final CostEstimate estimate;
+
+		/**
+		 * @param estimate estimate made before the run.
+		 */
+		RunTask(CostEstimate estimate) {
+			this.estimate = estimate;
+		}
 
 		/**
          * Run the simulation in a worker thread, starts simulating and
          * attaches a progress monitor periodically updated with task
-         * progress.
+         * progress. Progress is counted in timesteps against the estimate
+         * made before the run, and the time left from the recent rate of
+         * timesteps, falling back on the calibrated estimate until the
+         * first trials are done.
          */
         @Override
         public Void doInBackground() {
-            int progress = 0;
             view.setUILocked(true);
             control = new ModelControl();
             getModel().setControl(control);
             // execute the algorithm
-	    	simulate = new Thread(getModel());
+	    	if (pipeline == null) {
+	    		simulate = new Thread(getModel());
+	    	} else {
+	    		final ExportPipeline running = pipeline;
+	    		pipelineFailure = null;
+	    		simulate = new Thread(new Runnable() {
+	    			public void run() {
+	    				try {
+	    					running.run(getModel(), control);
+	    				} catch (IOException e) {
+	    					pipelineFailure = e;
+	    				}
+	    			}
+	    		});
+	    	}
 	    	simulate.start();
             //Initialize progress property.
             setProgress(1);
-            totalProgress = getModel().totalNumPhases()+1;
-            progressMonitor = new ProgressMonitor(view, Messages.getString("SimController.runMessage"), "", 0, totalProgress+1); //$NON-NLS-1$ //$NON-NLS-2$
+            progressMonitor = new ProgressMonitor(view, Messages.getString("SimController.runMessage"), //$NON-NLS-1$
+            		runNote(estimate.getEstimatedMillis(), 0), 0, PROGRESS_STEPS);
 	    	progressMonitor.setMillisToPopup(0);
 	    	progressMonitor.setMillisToDecideToPopup(0);
 	    	progressMonitor.setProgress(0);
+	    	long start = System.nanoTime();
+	    	long lastTime = start;
+	    	long lastSteps = 0;
+	    	double rate = 0;
             try {
                 while (!isCancelled() && simulate.isAlive() && !progressMonitor.isCanceled() && !control.isComplete()) {
                     //Update progress
                 	Thread.sleep(1000);
-                    progress = (int)control.getProgress();
-                    //setProgress(Math.min(progress, totalProgress));
-                    //int progress = (Integer) evt.getNewValue();
-                    progressMonitor.setProgress(progress);
-                    long remaining = (long) (control.getEstimatedCycleTime()*(totalProgress-control.getProgress()));
-                    String timeRemaining = String.format("%d min, %d sec", 
-                    	    TimeUnit.MILLISECONDS.toMinutes(remaining),
-                    	    TimeUnit.MILLISECONDS.toSeconds(remaining) - 
-                    	    TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(remaining))
-                    					);
-                    String message = timeRemaining; //$NON-NLS-1$
-                    progressMonitor.setNote(message);
+                	long now = System.nanoTime();
+                	long steps = control.getTimesteps();
+                	long total = control.getTotalTimesteps() > 0 ? control.getTotalTimesteps() : estimate.getTimesteps();
+                	double measured = (steps - lastSteps)*1e9/(now - lastTime);
+                	rate = rate > 0 ? SMOOTHING*measured + (1 - SMOOTHING)*rate : measured;
+                	lastTime = now;
+                	lastSteps = steps;
+                    progressMonitor.setProgress((int) (PROGRESS_STEPS*Math.min(steps, total)/Math.max(total, 1)));
+                    long remaining = rate > 0 ? (long) (Math.max(total - steps, 0)*1000/rate)
+                    		: Math.max(estimate.getEstimatedMillis() - TimeUnit.NANOSECONDS.toMillis(now - start), 0);
+                    progressMonitor.setNote(runNote(remaining, rate));
+                }
+                //Let the export catch up with the last groups
+                if (pipeline != null && !isCancelled() && !progressMonitor.isCanceled()) {
+                	progressMonitor.setNote(Messages.getString("SimController.exportMessage")); //$NON-NLS-1$
+                	while (simulate.isAlive() && !progressMonitor.isCanceled()) {
+                		simulate.join(1000);
+                	}
                 }
                 if(progressMonitor.isCanceled()) {
                 	cancel(true);
@@ -850,6 +1115,24 @@ public class SimController implements ActionListener, PropertyChangeListener {
             return null;
         }
 
+        /**
+         * @param remaining estimated milliseconds left.
+         * @param rate timesteps simulated per second.
+         * @return the note for the progress monitor: time left, then the
+         * rate, busy worker threads and heap in use.
+         */
+
+        private String runNote(long remaining, double rate) {
+        	Runtime runtime = Runtime.getRuntime();
+        	long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+        	return String.format("<html>%d min, %d sec left<br>%,.0f timesteps/s, %d of %d threads busy, %,d of %,d MB heap</html>", //$NON-NLS-1$
+        			TimeUnit.MILLISECONDS.toMinutes(remaining),
+        			TimeUnit.MILLISECONDS.toSeconds(remaining) -
+        			TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(remaining)),
+        			rate, Simulator.fjPool.getActiveThreadCount(), Simulator.fjPool.getParallelism(),
+        			usedHeap/(1024*1024), runtime.maxMemory()/(1024*1024));
+        }
+
         /**
          * Kill the progress monitor, re-enable the gui and
          * update the output if the simulation wasn't cancelled.
@@ -857,11 +1140,15 @@ public class SimController implements ActionListener, PropertyChangeListener {
         @Override
         public void done() {
         	view.setUILocked(false);
+        	finishSinks();
+        	if (pipeline != null) {
+        		pipeline = null;
+        		if (!isCancelled() && pipelineFailure != null) {
+        			view.showError(Messages.getString("SimController.fileError")); //$NON-NLS-1$
+        		}
+        	}
             if(!isCancelled()) {
-            	view.setStatusComponent(true, "dispGraph"); //$NON-NLS-1$
-	    		view.setOutput(getModel().textOutput(view.getIsSetCompound()));  
-	    		view.setStatusComponent(true, "Export"); //$NON-NLS-1$
-	    		view.setStatusComponent(true, "Save"); //$NON-NLS-1$
+            	showResults();
             } else {
             	//getModel().cancel();
             	control.setCancelled(true);
@@ -870,6 +1157,7 @@ public class SimController implements ActionListener, PropertyChangeListener {
             	view.setStatusComponent(false, "dispGraph"); //$NON-NLS-1$
 	    		view.setOutput("");  
 	    		view.setStatusComponent(false, "Export"); //$NON-NLS-1$
+	    		view.setStatusComponent(false, "SaveResults"); //$NON-NLS-1$
 	    		view.setStatusComponent(false, "Save"); //$NON-NLS-1$
             }
             view.getGlassPane().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
@@ -879,6 +1167,24 @@ public class SimController implements ActionListener, PropertyChangeListener {
         }
     }
 	
+	/**
+	 * Show the results of the model in the outline and allow them to be
+	 * graphed, exported and saved.
+	 */
+	
+	private void showResults() {
+		view.setStatusComponent(true, "dispGraph"); //$NON-NLS-1$
+		if(results != null && results.isFor(getModel(), view.getIsSetCompound())) {
+			results.refresh();
+		} else {
+			results = new ResultsOutline(getModel(), view.getIsSetCompound());
+		}
+		view.setResults(results);
+		view.setStatusComponent(true, "Export"); //$NON-NLS-1$
+		view.setStatusComponent(true, "Save"); //$NON-NLS-1$
+		view.setStatusComponent(true, "SaveResults"); //$NON-NLS-1$
+	}
+	
 	/**
      * Invoked when task's progress property changes.
      */
@@ -1142,8 +1448,72 @@ public class SimController implements ActionListener, PropertyChangeListener {
         }
     }
     
+	/**
+	 * Copy the values in the CS, US and other values tables and the context
+	 * settings into a model whose groups have been built from the phases
+	 * table.
+	 * @param model model to update.
+	 */
+	private void updateModelValues(SimModel model) {
+		// Update values from the CS view to the model
+		AbstractTableModel cstm = view.getCSValuesTableModel();
+		for (int i=0; i<cstm.getRowCount(); i++)
+			for (int j=1; j<cstm.getColumnCount(); j++){
+				model.updateValues((String)cstm.getValueAt(i, 0), j, (String)cstm.getValueAt(i, j));
+			}
+		// Update values from the US view to the model
+		AbstractTableModel ustm = view.getUSValuesTableModel();
+		for (int i=0; i<ustm.getRowCount(); i++)
+			for (int j=1; j<=model.getPhaseNo(); j++){
+				if (!view.getIsUSAcrossPhases()){ 
+					model.updateValues((String)ustm.getValueAt(i,0), j, (String)ustm.getValueAt(i,1));
+				}
+				else{
+					model.updateValues((String)ustm.getValueAt(i,0), j, (String)ustm.getValueAt(i,j));
+				}
+			}
+		//Update other values (gamma, delta, omega)
+		AbstractTableModel otm = view.getOtherValuesTableModel();
+		for (int i=0; i<otm.getRowCount(); i++)
+			for (int j=1; j<=model.getPhaseNo(); j++){
+				model.updateValues((String)otm.getValueAt(i,0), j, (String)otm.getValueAt(i,1));
+			}
+		
+		// update CS and US values on all the groups
+		model.updateValuesOnGroups();
+		//Update the context switch.
+		model.setUseContext(view.useContext());
+		model.setContextAcrossPhase(view.getIsOmegaAcrossPhases());
+	}
+	
+	/**
+	 * Build a model of the experiment as the tables show it now, the way
+	 * the run does, without touching the current model or its results.
+	 * @return the model, or null if the tables have errors, which have
+	 * been shown to the user.
+	 */
+	private SimModel tableModel() {
+		SimModel model = new SimModel();
+		model.setGroupNo(getModel().getGroupNo());
+		model.setPhaseNo(getModel().getPhaseNo());
+		model.setCombinationNo(getModel().getCombinationNo());
+		model.setVariableCombinationNo(getModel().getVariableCombinationNo());
+		model.setTimestepSize(getModel().getTimestepSize());
+		model.setThreshold(getModel().getThreshold());
+		model.setShowResponse(getModel().showResponse());
+		model.setUseContext(view.useContext());
+		model.setCSC(cscMode);
+		if (checkModelTable(model) && checkCSValuesTable() && checkUSValuesTable() && checkOtherValuesTable()) {
+			updateModelValues(model);
+			return model;
+		}
+		return null;
+	}
+	
     /**
-     * Helper function for saving a simulation configuration to a tdl file.
+     * Helper function for saving a simulation configuration to a tdl file,
+     * in the experiment file format of {@link ExperimentReader}. What is
+     * saved is what the tables show, including changes since the last run.
      * @param file to save to.
      * @throws IOException if there's a problem reading the file.
      */
@@ -1156,53 +1526,13 @@ public class SimController implements ActionListener, PropertyChangeListener {
                    JOptionPane.QUESTION_MESSAGE);
                 if (response == JOptionPane.CANCEL_OPTION) {okToContinue  = false;}
             }
-            if(okToContinue) {
-                ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
-                	//Save file version
-                	out.writeDouble(Simulator.VERSION);
-                	//Number of groups
-                    out.writeInt(getModel().getGroupNo());
-                    //Number of phases
-                    out.writeInt(getModel().getPhaseNo());
-                    //Number of combinations for randomness
-                    out.writeInt(getModel().getCombinationNo());
-                    //Whether US is across phases
-                    out.writeBoolean(view.getIsUSAcrossPhases());
-                    // Alberto Fernandez August-2011, whether configurals are used
-                    out.writeBoolean(!getModel().getConfigCuesNames().isEmpty());
-                    //Timestep length
-                    out.writeDouble(getModel().getTimestepSize());
-                    //Response threshold
-                    out.writeDouble(getModel().getThreshold());
-                    //Whether decision rule sim is enabled
-                    out.writeBoolean(getModel().showResponse());
-                    //Whether single context is set
-                    out.writeBoolean(getModel().isUseContext() && !getModel().contextAcrossPhase());
-                    //Whether no context is set
-                    out.writeBoolean(getModel().isUseContext());
-                    //Default context salience
-                    out.writeDouble(view.getContextAlpha());
-                    //Whether compounds are on
-                    out.writeBoolean(view.getIsSetCompound());
-                    //Mean type is geometric
-                    out.writeBoolean(getModel().isGeometricMean());
-                    //Variable distribution
-                    out.writeBoolean(getModel().isExponential());
-                    //Trace type
-                    out.writeObject(getModel().getTraceType());
-                    //Random combos for variable durations
-                    out.writeInt(getModel().getVariableCombinationNo());
-                    ValuesTableModel tmp = view.getPhasesTableModel();
-                    out.writeObject(tmp.getData());
-                    
-                    ValuesTableModel tmv = view.getCSValuesTableModel();
-                    out.writeObject(tmv.getData());
-                    
-                    ValuesTableModel ustmv = view.getUSValuesTableModel();
-                    out.writeObject(ustmv.getData());
-                    
-                    ValuesTableModel otmv = view.getOtherValuesTableModel();
-                    out.writeObject(otmv.getData());
+            SimModel saved = okToContinue ? tableModel() : null;
+            if(saved != null) {
+                ExperimentWriter writer = new ExperimentWriter();
+                writer.setSetting("usAcrossPhases", view.getIsUSAcrossPhases()); //$NON-NLS-1$
+                writer.setSetting("configurals", view.getIsSetConfiguralCompounds()); //$NON-NLS-1$
+                writer.setSetting("compounds", view.getIsSetCompound()); //$NON-NLS-1$
+                writer.write(saved, file);
             }
     }
     
@@ -1264,6 +1594,103 @@ public class SimController implements ActionListener, PropertyChangeListener {
         VariableDistribution.newRandomSeed();
     }
     
+    /**
+     * Helper function for loading an experiment file. The experiment is read
+     * into a model first, then the tables are filled from it as if the
+     * variables had been set.
+     * @param file to load.
+     * @throws IOException if there's a problem loading the file.
+     */
+    
+    private void loadExperiment(final File file) throws IOException {
+    	ExperimentReader reader = new ExperimentReader();
+    	SimModel loaded = reader.read(file);
+    	Map<String, String> settings = reader.getSettings();
+    	clearModel(loaded.getGroupNo(), loaded.getPhaseNo(), loaded.getCombinationNo());
+    	view.setIsUSAcrossPhases(Boolean.parseBoolean(settings.get("usAcrossPhases"))); //$NON-NLS-1$
+    	view.setIsSetConfiguralCompounds(Boolean.parseBoolean(settings.get("configurals"))); //$NON-NLS-1$
+    	view.setStatusComponent(view.getIsSetConfiguralCompounds(), "SetConfiguralCompounds"); //$NON-NLS-1$
+    	getModel().setTimestepSize(loaded.getTimestepSize());
+    	getModel().setThreshold(loaded.getThreshold());
+    	getModel().setShowResponse(loaded.showResponse());
+    	view.setStatusComponent(getModel().showResponse(), "threshold"); //$NON-NLS-1$
+    	boolean context = loaded.isUseContext();
+    	if (!context) {
+    		view.setStatusComponent(true, "SetContext"); //$NON-NLS-1$
+    	} else if (loaded.contextAcrossPhase()) {
+    		view.setStatusComponent(true, "SetContextAcrossPhases"); //$NON-NLS-1$
+    	} else {
+    		view.setStatusComponent(true, "SingleContext"); //$NON-NLS-1$
+    	}
+    	view.setOmegaSalience(loaded.getContextAlpha());
+    	getModel().setUseContext(context);
+    	view.setIsSetCompound(Boolean.parseBoolean(settings.get("compounds"))); //$NON-NLS-1$
+    	view.setStatusComponent(loaded.isGeometricMean(), "geo"); //$NON-NLS-1$
+    	view.setStatusComponent(loaded.isExponential(), "exp"); //$NON-NLS-1$
+    	view.setTraceType(loaded.getTraceType());
+    	getModel().setVariableCombinationNo(loaded.getVariableCombinationNo());
+    	view.clearHidden();
+    	//One row per group, five columns per phase
+    	Vector<Object> data = new Vector<Object>();
+    	for (SimGroup group : loaded.getGroups().values()) {
+    		Object record[] = new Object[loaded.getPhaseNo()*5 + 1];
+    		record[0] = group.getNameOfGroup();
+    		for (int c = 1; c <= loaded.getPhaseNo(); c++) {
+    			SimPhase phase = group.getPhases().get(c - 1);
+    			record[c*5-4] = phase.intialSequence();
+    			//Phases run without context keep the default for the table
+    			ContextConfig phaseContext = phase.getContextConfig();
+    			record[c*5-3] = phaseContext == ContextConfig.EMPTY ? new ContextConfig() : phaseContext;
+    			record[c*5-2] = Boolean.valueOf(phase.isRandom());
+    			record[c*5-1] = phase.getTimingConfig();
+    			record[c*5] = phase.getITI();
+    		}
+    		data.add(record);
+    	}
+    	view.getPhasesTableModel().setData(data);
+    	view.getPhasesTable().createDefaultColumnsFromModel();
+    	view.updatePhasesColumnsWidth();
+    	view.toggleContext(context);
+    	if (checkModelTable()) {
+    		view.setStatusComponent(true, "run"); //$NON-NLS-1$
+    		view.getCSValuesTableModel().setValuesTable(false);
+    		view.getUSValuesTableModel().setValuesTable(false, view.getIsUSAcrossPhases());
+    		view.getOtherValuesTableModel().setValuesTable(false, view.getIsOmegaAcrossPhases());
+    		Map<String, Double> values = loaded.getValues();
+    		AbstractTableModel cstm = view.getCSValuesTableModel();
+    		for (int i = 0; i < cstm.getRowCount(); i++) {
+    			String name = (String) cstm.getValueAt(i, 0);
+    			if (name.length() > 1) {
+    				// c(AB) --> virtual name
+    				name = SimGroup.getKeyByValue(getModel().getConfigCuesNames(), name.substring(2, name.length()-1));
+    			}
+    			setTableValue(cstm, values.get(name), i, 1);
+    		}
+    		AbstractTableModel ustm = view.getUSValuesTableModel();
+    		for (int i = 0; i < ustm.getRowCount(); i++) {
+    			for (int j = 1; j < ustm.getColumnCount(); j++) {
+    				setTableValue(ustm, values.get(ustm.getValueAt(i, 0) + " p" + j), i, j); //$NON-NLS-1$
+    			}
+    		}
+    		AbstractTableModel otm = view.getOtherValuesTableModel();
+    		for (int i = 0; i < otm.getRowCount(); i++) {
+    			setTableValue(otm, values.get(otm.getValueAt(i, 0) + " p1"), i, 1); //$NON-NLS-1$
+    		}
+    	}
+    	VariableDistribution.newRandomSeed();
+    }
+    
+    /**
+     * Put a loaded value into a values table, leaving the cell as it is when
+     * the file has no value for it.
+     */
+    
+    private void setTableValue(AbstractTableModel table, Double value, int row, int col) {
+    	if (value != null) {
+    		table.setValueAt(value.toString(), row, col);
+    	}
+    }
+    
     /**
      * Save the current configuration to a .res file.
      * @param file
@@ -297,8 +297,16 @@ public class SimCue {
 	}
 	
 	public void makeResponse(double threshold) {
-		Random random = new Random();
-		
+		makeResponse(threshold, new Random());
+	}
+	
+	/**
+	 * Draw the response for the current weight.
+	 * @param threshold the B threshold to use for the distribution of b.
+	 * @param random random numbers to draw the boundaries from.
+	 */
+	
+	public void makeResponse(double threshold, Random random) {
 		thresholds.clear();
 		for(int i = 0; i < 60; i++) {
 			thresholds.add(random.nextDouble());
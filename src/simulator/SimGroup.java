@@ -36,6 +36,7 @@ import simulator.configurables.ContextConfig;
 import simulator.configurables.ContextConfig.Context;
 import simulator.configurables.ITIConfig;
 import simulator.configurables.TimingConfiguration;
+import simulator.events.EngineEvents;
 import extra166y.ParallelArray;
 
 /**
@@ -243,6 +244,19 @@ public class SimGroup implements Runnable{
         }
         count = 1;
     }
+
+    /**
+     * Drops the per-trial results of every phase and the histories held in
+     * the group's cues, once they have been exported and are not needed for
+     * display. The group has to be set up again before it is run.
+     */
+    public void releaseResults() {
+        clearResults();
+        for (Entry<String, CueList> entry : cues.entrySet()) {
+            CueList old = entry.getValue();
+            entry.setValue(new CueList(old.getSymbol(), old.getAlpha(), old.getThreshold(), old.getTraceType()));
+        }
+    }
     
     /**
 	 * Returns the number of trials that have been produced so far.
@@ -320,71 +334,153 @@ public class SimGroup implements Runnable{
      */
     public String phasesOutput(boolean compound, Map<String, String> configCuesNames) {
         StringBuffer result = new StringBuffer();
-     
+        phasesOutput(compound, configCuesNames, result, Integer.MAX_VALUE);
+        return result.toString();
+    }
+
+    /**
+     * Appends the results of every phase, stopping before the next cue
+     * once the output has reached the given length.
+     * @param result buffer to append to.
+     * @param limit length of output after which no more cues are added.
+     * @return true if all the results were appended.
+     */
+    public boolean phasesOutput(boolean compound, Map<String, String> configCuesNames, StringBuffer result, int limit) {
         // For all phases
-        for (int i = 0; i < noOfPhases; i++) {                       
-            SimPhase sp = phases.get(i);
-            result.append("(Phase ").append(i+1).append(" , Seq: ").append(sp.intialSequence())
-            .append(" Rand: ").append(sp.isRandom()).append(")").append("\n\n");
-            
-            Map<String, CueList> results = sp.getResults();
+        for (int i = 0; i < noOfPhases; i++) {
+            if (!phaseOutput(i, compound, configCuesNames, result, limit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the results of one phase, stopping before the next cue once
+     * the output has reached the given length.
+     * @param i index of the phase.
+     * @param result buffer to append to.
+     * @param limit length of output after which no more cues are added.
+     * @return true if all the phase's results were appended.
+     */
+    public boolean phaseOutput(int i, boolean compound, Map<String, String> configCuesNames, StringBuffer result, int limit) {
+        SimPhase sp = phases.get(i);
+        result.append("(Phase ").append(i+1).append(" , Seq: ").append(sp.intialSequence())
+        .append(" Rand: ").append(sp.isRandom()).append(")").append("\n\n");
+
+        Map<String, CueList> results = sp.getResults();
+
+    	// Alberto Fern·ndez August-2011
 
-        	// Alberto Fern·ndez August-2011
-            
-            // Output  Cues
-            Iterator<Entry<String, CueList>> iterCue = results.entrySet().iterator();
-            while (iterCue.hasNext()) {
-                Entry<String, CueList> pairCue = iterCue.next();
-                CueList tempCscCue = pairCue.getValue();
-                String cueName = tempCscCue.getSymbol();
-                if(sp.isCueInStimuli(cueName) && (compound || cueName.length() == 1)) { //Don't output cues not in this phase
-                	if (!configuralCue(cueName) && (cueName.startsWith(Simulator.OMEGA+"") || cueName.equals(cueName.toUpperCase()))) {
-                		result.append("Cue : ").append(cueName);
-                	} 	else if (cueName.length() == 1) {
-                		String compoundName, interfaceName;
-                		// configural cue
-                		compoundName = configCuesNames.get(cueName);
-                		interfaceName = "c(" + compoundName + ")";
-                		result.append("Cue : ").append(interfaceName);
-                	}	else {
-                			String compoundName, interfaceName;
-                			// configural compound
-                			compoundName = cueName.substring(0,cueName.length()-1);
-                			interfaceName = "[" + compoundName + "]";
-                			result.append("Cue : ").append(interfaceName);
-                	}
-                	if(!cueName.contains(Simulator.OMEGA+"")) {
-                		result.append("\n\n").append("Realtime.").append("\n\n");
-                	
-                		for (int z = 0; z < tempCscCue.size() && z < sp.getMaxDuration(); z++) {
-                			SimCue tempCue = tempCscCue.get(z);
-                			//Last-but-one V value (i.e. the predicted for next time.)
-                			result.append("Component ").append(z+1).append(" V = ").append(tempCue.getAssocValueAt(tempCscCue.getTrialCount()-1));
-                			result.append('\n');
-                		}
-                	}
-                	result.append('\n').append("Trial\n\n");
-                	
-                	for (int z = 0; z < tempCscCue.getTrialCount(); z++) {
-                		//Last-but-one V value (i.e. the predicted for next time.)
-                		result.append("Trial ").append(z+1).append(" V = ").append(tempCscCue.averageAssoc(z));
-                		result.append('\n');
-                	}
-                	if(model.showResponse() && !cueName.contains(Simulator.OMEGA+"")) {
-                		result.append('\n').append("Simulated Response\n\n");
-                		for (int z = 0; z < tempCscCue.size() && z < sp.getMaxDuration(); z++) {
-                    		SimCue tempCue = tempCscCue.get(z);
-                    		result.append("Response t").append(z+1).append(" = ");
-                    		result.append(tempCue.response(tempCue.getAssocValueSize() - 1));
-                    		result.append('\n');
-                    	}
-                	}
-                	result.append('\n');
-                }
+        // Output  Cues
+        Iterator<Entry<String, CueList>> iterCue = results.entrySet().iterator();
+        while (iterCue.hasNext()) {
+            Entry<String, CueList> pairCue = iterCue.next();
+            CueList tempCscCue = pairCue.getValue();
+            if (isCueOutput(sp, tempCscCue.getSymbol(), compound)) {
+            	if (result.length() >= limit) {
+            		return false;
+            	}
+            	cueOutput(sp, tempCscCue, configCuesNames, result);
             }
-          
         }
-        return result.toString();
+        return true;
+    }
+
+    /**
+     * @param sp phase the cue's results are from.
+     * @param cueName symbol of the cue.
+     * @param compound whether compound results are shown.
+     * @return true if the cue appears in the text output of the phase.
+     */
+    public boolean isCueOutput(SimPhase sp, String cueName, boolean compound) {
+    	//Don't output cues not in this phase
+    	return sp.isCueInStimuli(cueName) && (compound || cueName.length() == 1);
+    }
+
+    /**
+     * Appends the results of one cue in a phase.
+     * @param sp phase the results are from.
+     * @param tempCscCue the cue's results.
+     * @param result buffer to append to.
+     */
+    public void cueOutput(SimPhase sp, CueList tempCscCue, Map<String, String> configCuesNames, StringBuffer result) {
+    	String cueName = tempCscCue.getSymbol();
+    	result.append("Cue : ").append(interfaceName(cueName, configCuesNames));
+    	if(!cueName.contains(Simulator.OMEGA+"")) {
+    		result.append("\n\n").append("Realtime.").append("\n\n");
+
+    		for (int z = 0; z < tempCscCue.size() && z < sp.getMaxDuration(); z++) {
+    			SimCue tempCue = tempCscCue.get(z);
+    			//Last-but-one V value (i.e. the predicted for next time.)
+    			result.append("Component ").append(z+1).append(" V = ").append(tempCue.getAssocValueAt(tempCscCue.getTrialCount()-1));
+    			result.append('\n');
+    		}
+    	}
+    	result.append('\n').append("Trial\n\n");
+
+    	for (int z = 0; z < tempCscCue.getTrialCount(); z++) {
+    		//Last-but-one V value (i.e. the predicted for next time.)
+    		result.append("Trial ").append(z+1).append(" V = ").append(tempCscCue.averageAssoc(z));
+    		result.append('\n');
+    	}
+    	if(model.showResponse() && !cueName.contains(Simulator.OMEGA+"")) {
+    		result.append('\n').append("Simulated Response\n\n");
+    		for (int z = 0; z < tempCscCue.size() && z < sp.getMaxDuration(); z++) {
+        		SimCue tempCue = tempCscCue.get(z);
+        		result.append("Response t").append(z+1).append(" = ");
+        		result.append(tempCue.response(tempCue.getAssocValueSize() - 1));
+        		result.append('\n');
+        	}
+    	}
+    	result.append('\n');
+    }
+
+    /**
+     * @param sp phase the cue's results are from.
+     * @param tempCscCue the cue's results.
+     * @return the number of components listed for the cue in its output.
+     */
+    public int componentsOutput(SimPhase sp, CueList tempCscCue) {
+    	if(tempCscCue.getSymbol().contains(Simulator.OMEGA+"")) {
+    		return 0;
+    	}
+    	return Math.max(0, Math.min(tempCscCue.size(), sp.getMaxDuration()));
+    }
+
+    /**
+     * Appends the results of one component of a cue in a phase, its value
+     * after each trial.
+     * @param tempCscCue the cue's results.
+     * @param component index of the component.
+     * @param result buffer to append to.
+     */
+    public void componentOutput(CueList tempCscCue, int component, Map<String, String> configCuesNames, StringBuffer result) {
+    	SimCue tempCue = tempCscCue.get(component);
+    	result.append("Cue : ").append(interfaceName(tempCscCue.getSymbol(), configCuesNames))
+    	.append(", Component ").append(component+1).append("\n\n").append("Trial\n\n");
+    	for (int z = 0; z < tempCscCue.getTrialCount() && z < tempCue.getAssocValueSize(); z++) {
+    		result.append("Trial ").append(z+1).append(" V = ").append(tempCue.getAssocValueAt(z));
+    		result.append('\n');
+    	}
+    	result.append('\n');
+    }
+
+    /**
+     * @param cueName symbol of a cue.
+     * @return the name the cue is shown under: configural cues as c(AB)
+     * and configural compounds as [AB].
+     */
+    public String interfaceName(String cueName, Map<String, String> configCuesNames) {
+    	if (!configuralCue(cueName) && (cueName.startsWith(Simulator.OMEGA+"") || cueName.equals(cueName.toUpperCase()))) {
+    		return cueName;
+    	} else if (cueName.length() == 1) {
+    		// configural cue
+    		return "c(" + configCuesNames.get(cueName) + ")";
+    	} else {
+    		// configural compound
+    		return "[" + cueName.substring(0,cueName.length()-1) + "]";
+    	}
     }
 
     /**
@@ -407,15 +503,20 @@ public class SimGroup implements Runnable{
     	//Add to phasepool so we can still cancel them quickly if required
     	phasePool = ParallelArray.createEmpty(noOfPhases, SimPhase.class, Simulator.fjPool);
         phasePool.asList().addAll(phases);
-        for (int i = 0; i < noOfPhases; i++) {
-        	if(model.contextAcrossPhase()) {
-            	//Deal with different omega per phase
-            	for(Entry<String, CueList> entry : cues.entrySet()) {
-            		String realName = model.getConfigCuesNames().get(entry.getKey());
-            		realName = realName == null ? "" : realName;
-            	}
-            }
-            phases.get(i).runSimulator();
+        EngineEvents.Span span = EngineEvents.get().groupRun(nameOfGroup, noOfPhases);
+        try {
+        	for (int i = 0; i < noOfPhases; i++) {
+        		if(model.contextAcrossPhase()) {
+        			//Deal with different omega per phase
+        			for(Entry<String, CueList> entry : cues.entrySet()) {
+        				String realName = model.getConfigCuesNames().get(entry.getKey());
+        				realName = realName == null ? "" : realName;
+        			}
+        		}
+        		phases.get(i).runSimulator();
+        	}
+        } finally {
+        	span.end();
         }
     }
 
@@ -26,16 +26,20 @@ package simulator;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import simulator.SimCue.Trace;
 import simulator.configurables.ContextConfig;
+import simulator.events.EngineEvents;
 import extra166y.Ops;
 import extra166y.ParallelArray;
 
@@ -49,7 +53,8 @@ import extra166y.ParallelArray;
  * all data stored is getting lost but this is normal as a new experiment starts.
  */
 public class SimModel implements Runnable{
-    
+    /** Length of text output shown eagerly; larger results are browsed by section. **/
+    public static final int OUTPUT_LIMIT = 1 << 20;
 	
 	private int groupsNo, phasesNo, combinationNo, variableDistributionCombinationNo;
     private Map<String,SimGroup> groups; 
@@ -59,6 +64,8 @@ public class SimModel implements Runnable{
     private Map<String,String> configCuesNames; // e.g. <a,AB>
     //Random seed for variable distributions.
     private long randomSeed = System.currentTimeMillis();
+    /** Whether the seed has been set, making shuffles and responses repeatable. **/
+    private boolean seeded;
     //SimGroup parallel pool
     private ParallelArray<SimGroup> groupPool;
     /** Timestep size. **/
@@ -76,6 +83,12 @@ public class SimModel implements Runnable{
   		public SimGroup op(final SimGroup current) {
   			current.run();
   			addCueNames(current.getCuesMap());
+  			if(!control.isCancelled()) {
+  				control.groupCompleted();
+  			}
+  			if(groupListener != null && !control.isCancelled()) {
+  				groupListener.groupFinished(current);
+  			}
   		return current;
   	}};
   	/** Boolean indicating whether simulated response stats & figures are shown. **/
@@ -88,6 +101,22 @@ public class SimModel implements Runnable{
 	private Trace traceType;
 	private int randomPhases;
 	private ModelControl control;
+	/** Cost estimate for the next or current run, used to calibrate later estimates. **/
+	private CostEstimate estimate;
+	/** Whether runs update the calibrated time per timestep. **/
+	private boolean calibrating;
+	/** Told about each group as it finishes, if set. **/
+	private volatile GroupListener groupListener;
+	/** Told about each trial as it is stored, in the order added. **/
+	private final List<ResultSink> resultSinks = new CopyOnWriteArrayList<ResultSink>();
+	/** Passes each trial on to all the sinks. **/
+	private final ResultSink allSinks = new ResultSink() {
+		public void trialStored(SimGroup group, int phase, String cue, int trial, double weight, double response) {
+			for(ResultSink sink : resultSinks) {
+				sink.trialStored(group, phase, cue, trial, weight, response);
+			}
+		}
+	};
     /**
      * SimModel's Constructor method.
      */
@@ -421,10 +450,24 @@ public class SimModel implements Runnable{
     }
 	
 	/**
+	 * Setting the seed makes the random numbers of every later run the same.
 	 * @param randomSeed the randomSeed to set
 	 */
 	public void setRandomSeed(long randomSeed) {
 		this.randomSeed = randomSeed;
+		seeded = true;
+	}
+	
+	/**
+	 * Random numbers for a run of a phase, shuffling its trials and drawing
+	 * its responses. Once a seed has been set they are the same on every
+	 * run whichever thread runs the phase, otherwise they differ every time.
+	 * @param group name of the group.
+	 * @param phase number of the phase.
+	 * @return the random numbers.
+	 */
+	public Random random(String group, int phase) {
+		return seeded ? new Random((randomSeed*31 + group.hashCode())*31 + phase) : new Random();
 	}
   	
   	/**
@@ -466,9 +509,26 @@ public class SimModel implements Runnable{
     	//long timer = System.currentTimeMillis();
     	//System.out.println("Starting simulation..");
     	listAllCues.clear();
+    	if(estimate == null) {
+    		estimate = estimateCost();
+    	}
+    	control.setTotalTimesteps(estimate.getTimesteps());
+    	control.setResultBytes(estimate.getResultBytes());
+    	control.start();
+    	SimulationMonitor.get().watchRun(this, control);
+    	long start = System.currentTimeMillis();
         groupPool = ParallelArray.createEmpty(groupsNo, SimGroup.class, Simulator.fjPool);
         groupPool.asList().addAll(groups.values());
-        groupPool.withMapping(update).all();
+        EngineEvents.Span span = EngineEvents.get().modelRun(groups.size(), groups.size()*phasesNo, estimate.getTimesteps());
+        try {
+        	groupPool.withMapping(update).all();
+        } finally {
+        	span.end();
+        }
+        if(calibrating && !control.isCancelled()) {
+        	estimate.calibrate(System.currentTimeMillis() - start);
+        }
+        estimate = null;
         control.incrementProgress(1);
         control.setComplete(true);
         /*timer = System.currentTimeMillis() - timer;
@@ -478,24 +538,99 @@ public class SimModel implements Runnable{
     }
 
 	/**
+	 * @param estimate estimate already made for the next run, so the run
+	 * need not make its own, or null.
+	 */
+	public void setCostEstimate(CostEstimate estimate) {
+		this.estimate = estimate;
+	}
+
+	/**
+	 * @param calibrating true for runs to update the time per timestep
+	 * remembered between sessions, as runs the user waits on should. Off by
+	 * default, so batch and benchmark runs leave it alone.
+	 */
+	public void setCalibrating(boolean calibrating) {
+		this.calibrating = calibrating;
+	}
+
+	/**
+     * Estimate the timesteps, result memory and wall time a simulation of the
+     * current groups will take, from the phase tables and the mean durations
+     * and ITIs of each phase.
+     * @return the cost estimate.
+     */
+    public CostEstimate estimateCost() {
+    	CostEstimate cost = new CostEstimate(Math.min(groups.size(), Simulator.fjPool.getParallelism()));
+    	for(SimGroup group : groups.values()) {
+    		long steps = 0;
+    		long bytes = 0;
+    		int maxCSC = 0;
+    		for(SimPhase phase : group.getPhases()) {
+    			int csc = (int) Math.ceil(phase.getTimingConfig().meanCSLength()/timestepSize);
+    			int trials = phase.getNoTrials();
+    			steps += phase.estimateTimesteps();
+    			//Cues & compounds in the phase each keep weights and responses per component and trial
+    			Set<Character> phaseCues = new HashSet<Character>();
+    			Set<String> compounds = new HashSet<String>();
+    			for(SimStimulus stimulus : phase.getStimuli().values()) {
+    				String names = stimulus.getCueNames();
+    				for(int i = 0; i < names.length(); i++) {
+    					phaseCues.add(names.charAt(i));
+    				}
+    				if(names.length() > 1) {
+    					compounds.add(names);
+    				}
+    			}
+    			long values = (long) (phaseCues.size() + compounds.size())*(csc + 1)*trials*2;
+    			bytes += values*CostEstimate.BYTES_PER_VALUE;
+    			maxCSC = Math.max(maxCSC, csc);
+    		}
+    		cost.addGroup(steps, bytes, maxCSC);
+    	}
+    	return cost;
+    }
+
+	/**
      * It produces a text output of all the group results. It adds the headers of the
      * groups and then retrieves the text output of every group and adds it to one string
      * which at the end it will be presented on the main view. 
      * @return the final output of the results.
      */
     public String textOutput(boolean compound) {
+        return textOutput(compound, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Text output of the group results, cut short once it reaches a length.
+     * Cues are never split; the output ends with a note if it was cut.
+     * @param compound whether to include compound cues.
+     * @param limit length after which no more cues are added.
+     * @return the output of the results.
+     */
+    public String textOutput(boolean compound, int limit) {
         StringBuffer result = new StringBuffer();
-        String sep = "------------------------\n";
         Iterator<Entry<String, SimGroup>> iterGroup = groups.entrySet().iterator();
         while (iterGroup.hasNext()) {
             Entry<String, SimGroup> pairGroup = iterGroup.next();
             SimGroup tempGroup = pairGroup.getValue();
-            result.append(sep).append(tempGroup.getNameOfGroup()).append('\n').append(sep);
-            result.append(tempGroup.phasesOutput(compound, configCuesNames));
+            groupHeader(tempGroup, result);
+            if (!tempGroup.phasesOutput(compound, configCuesNames, result, limit)) {
+                result.append(Messages.getString("SimModel.truncated")); //$NON-NLS-1$
+                break;
+            }
         }
         return result.toString();
     }
 
+    /**
+     * Appends the banner that opens a group's text output.
+     */
+    public void groupHeader(SimGroup group, StringBuffer result) {
+        String sep = "------------------------\n";
+        result.append(sep).append(group.getNameOfGroup()).append('\n').append(sep);
+    }
+
 	/**
      * Updates the values from the SortedList to the values in the model 
      * Modified to add gamma and delta parameters.. J Gray
@@ -712,6 +847,38 @@ public class SimModel implements Runnable{
 			group.setControl(control);
 		}
 	}
+
+	/**
+	 * @param groupListener listener told about each group as soon as it
+	 * finishes, or null for none.
+	 */
+	public void setGroupListener(GroupListener groupListener) {
+		this.groupListener = groupListener;
+	}
+
+	/**
+	 * @param resultSink sink to tell about each trial's results as they are
+	 * stored, along with any others. A sink added during a run is told
+	 * from the next phase to start.
+	 */
+	public void addResultSink(ResultSink resultSink) {
+		resultSinks.add(resultSink);
+	}
+
+	/**
+	 * @param resultSink sink to stop telling about trial results.
+	 */
+	public void removeResultSink(ResultSink resultSink) {
+		resultSinks.remove(resultSink);
+	}
+
+	/**
+	 * @return the sink told about trial results, passing them on to every
+	 * sink added, or null when there are none.
+	 */
+	public ResultSink getResultSink() {
+		return resultSinks.isEmpty() ? null : allSinks;
+	}
 	
 	public int totalNumPhases() {
 		int total = phasesNo*groupsNo;
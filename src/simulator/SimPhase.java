@@ -42,11 +42,14 @@ import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import simulator.configurables.ContextConfig;
 import simulator.configurables.ContextConfig.Context;
 import simulator.configurables.ITIConfig;
 import simulator.configurables.TimingConfiguration;
+import simulator.configurables.TimingTable;
+import simulator.events.EngineEvents;
 import extra166y.Ops;
 import extra166y.Ops.DoubleOp;
 import extra166y.ParallelDoubleArray;
@@ -91,6 +94,29 @@ public class SimPhase {
 	private TimingConfiguration timingConfig;
 	/** Context configuration. **/
 	private ContextConfig contextCfg;
+	/** Trial timings for the sequence being run. **/
+	private TimingTable timingTable;
+	/** Sink for trial results, null when there is none. **/
+	private ResultSink sink;
+	/** Number of this phase in its group, from 1. **/
+	private int phaseNumber;
+	/** Whether trials are final as they are stored, rather than averaged later. **/
+	private boolean publishTrials;
+	/** Cue names of the stimuli and the single cues in them, built when first asked. **/
+	private volatile Set<String> stimulusCueNames, stimulusCues;
+	/** Cue names of the first stimulus and the single cues in the others. **/
+	private String firstCueNames;
+	private Set<String> laterStimulusCues;
+	/** Source of results versions, which only ever grow. **/
+	private static final AtomicLong resultsVersions = new AtomicLong();
+	/** Version of the results, 0 until the phase has been run. **/
+	private volatile long resultsVersion;
+	/** Random numbers of the current run, for shuffling trials and drawing responses. **/
+	private Random generator;
+	/** Timesteps this phase is estimated to simulate, and those reported so far. **/
+	private long timestepBudget, timestepsReported;
+	/** Passes through the trials so far in the current run. **/
+	private int combinations;
 	 
 	/** Operation for adding together two double arrays. **/
 	final Ops.BinaryDoubleOp addWeights = new Ops.BinaryDoubleOp() {
@@ -136,6 +162,8 @@ public class SimPhase {
 	    //Added to allow for variable distributions of onsets - J Gray
 	    //Added to control the onset of fixed onset stimulu
 	    timingConfig = timing;
+	    timingConfig.setTimestep(group.getModel().getTimestepSize());
+	    iti.setTimestep(group.getModel().getTimestepSize());
 	    timingConfig.setTrials(trials);
 	    iti.setTrials(trials);
 	    lastPrediction = prediction = 0.0f;
@@ -154,41 +182,71 @@ public class SimPhase {
 	 */
 	
 	protected void algorithm(List<String> sequence, Map<String, CueList> tempRes, boolean context) {
-		//Map cues to iterators of cues.
-		Map<Character, CueList> tempMap;
-		HashSet<String> uniqSeq = new HashSet<String>();
-		uniqSeq.addAll(sequence);
+		EngineEvents.Span pass = EngineEvents.get().combinationRun(group.getNameOfGroup(), phaseNumber, ++combinations, trials);
+		try {
+			//Produce actual timings for every trial
+			EngineEvents.Span timings = EngineEvents.get().timingGeneration(group.getNameOfGroup(), phaseNumber, trials,
+					timingConfig.hasVariableDurations());
+			try {
+				timingTable.build(sequence);
+			} finally {
+				timings.end();
+			}
+			runTrials(sequence, tempRes, context);
+		} finally {
+			pass.end();
+		}
+	}
+	
+	/**
+	 * Run one pass through the trials, as timed by the timing table.
+	 * @param sequence list of trial strings in order
+	 * @param tempRes Map to populate with results
+	 */
+	
+	private void runTrials(List<String> sequence, Map<String, CueList> tempRes, boolean context) {
+		CueList contextCues = null;
 		if(context) {
 			//Set the alpha on the context we're using here
-			tempRes.get(contextCfg.getContext().toString()).setAlpha(contextCfg.getAlpha());
+			contextCues = tempRes.get(contextCfg.getSymbol());
+			contextCues.setAlpha(contextCfg.getAlpha());
 		}
 		List<SimCue> activeList = new ArrayList<SimCue>();
+		//Cue lists by position in the trial name, and each distinct list once.
+		CueList[] trialCues = new CueList[0];
+		CueList[] updating = new CueList[0];
+		int completed = 0;
 		for (int i = 1; i <=trials && !control.isCancelled(); i++) {
 			lastPrediction = 0d;//new Double(0);
 			String curNameSt = (String) sequence.get(i-1);
 			SimStimulus currentSt = stimuli.get(curNameSt);
-			tempMap = new HashMap<Character, CueList>();
-			
-			//Get the stimuli present this trial, copy them to the temporary map
-			//and collect their onsets.
-			for (int y = 0; y < curNameSt.length() - 1; y ++) { 
-				Character curCue = Character.valueOf(curNameSt.charAt(y));
-				tempRes.get(curCue+"").restart();
-				tempMap.put(curCue, tempRes.get(curCue+""));
+			int trial = i-1;
+			int cueCount = curNameSt.length() - 1;
+			if(trialCues.length < cueCount) {
+				trialCues = new CueList[cueCount];
+				updating = new CueList[cueCount];
 			}
-
-			int iti = (int) Math.round(itis.next()/Simulator.getController().getModel().getTimestepSize());
-			
+			int distinct = 0;
 			
-			//Produce actual timings for this trial
-			Map<String, int[]> timings = timingConfig.makeTimings(tempMap.keySet());
-			int trialLength = timings.get("Total")[1];
-			
-			if(i <= trials) {
-				maxMaxOnset = Math.max(maxMaxOnset, timings.get("CS_Total")[1]);
+			//Get the stimuli present this trial, copy them to the temporary arrays.
+			for (int y = 0; y < cueCount; y ++) { 
+				trialCues[y] = tempRes.get(curNameSt.substring(y, y+1));
+				trialCues[y].restart();
+				if(curNameSt.indexOf(curNameSt.charAt(y)) == y) {
+					updating[distinct++] = trialCues[y];
+				}
 			}
+
+			int iti = timingTable.getITI(trial);
+			int trialLength = timingTable.getTotal(trial);
+			maxMaxOnset = Math.max(maxMaxOnset, timingTable.getCSTotal(trial));
+			int usOnset = timingTable.getUSOnset(trial);
+			int usOffset = timingTable.getUSOffset(trial);
+			int contextEnd = timingTable.getContextLength(trial) - 1;
 			
-			
+			//Compound for this trial, resolved the first time all its components are active.
+			int compoundSize = curNameSt.length() - 1;
+			CompoundCueList compound = null;
 			
 			//Run through all the timesteps, duration of the trial is the total period
 			//returned by the timings generator.
@@ -196,32 +254,23 @@ public class SimPhase {
 				activeList.clear();
 				//Ready to update prediction
 				prediction = 0d;//new Double(0);
-				if(context) {
-					if(timings.get(Simulator.OMEGA+"")[1]-1 == tempMap.get(contextCfg.getSymbol().charAt(0)).getIndex()) {
-						tempMap.get(contextCfg.getSymbol().charAt(0)).restart();
-					}
+				if(context && contextEnd == contextCues.getIndex()) {
+					contextCues.restart();
 				}
 				//Update each stimulus
-				for (int y = 0; y < curNameSt.length()-1; y ++) { 
-					Character curCue = Character.valueOf(curNameSt.charAt(y));
-					String timingKey = Context.isContext(curCue+"") ? Simulator.OMEGA + "" : curCue.toString();
-					//Timing range for this CS
-					int onset = timings.get(timingKey)[0];
-					int offset = timings.get(timingKey)[1];
+				for (int y = 0; y < cueCount; y ++) { 
 					//Check if this stimulus is present right now, only update it
 					//and allow it to contribute to the prediction if it is.
-					if(timingKey.equals(Simulator.OMEGA + "") || 
-							(onset <= j && j < offset)) {
+					if(timingTable.getOnset(trial, y) <= j && j < timingTable.getOffset(trial, y)) {
 							
 							//Lazily expand if we need to grow the CSC
-							SimCue active = tempMap.get(curCue).nextCue();
+							SimCue active = trialCues[y].nextCue();
 							//Start eligibility trace for the active component
 							active.setActive(true);
 							activeList.add(active);
 							//Update predictions
 							//Prediction that the active components are making
 							prediction += active.getLastAssocValue();
-							//tempMap.get(curCue).restart();
 							
 					}
 				}
@@ -234,47 +283,70 @@ public class SimPhase {
 				double betaError = getGamma()*prediction - lastPrediction;
 				//System.out.println(betaError);
 				//Is the US active right now?
-				boolean usOn = ((timings.get("US")[0]) <= j && j < (timings.get("US")[1]));
+				boolean usOn = usOnset <= j && j < usOffset;
 				//Reinforce during US duration
 				betaError += usOn ? (currentSt.isReinforced() ? getLambdaPlus() : 0) : 0;
 				
 				//Multiply by learning rate
 				betaError *= currentSt.isReinforced() ? getBetaPlus() : getBetaMinus();
 				//Update the cues
-				updateCues(betaError, tempRes, tempMap.keySet());
-				//Merge if a compound is present
-				if(curNameSt.length() > 2) {
-					mergeCues(curNameSt.substring(0, curNameSt.length()-1), tempRes, activeList);
+				updateCues(betaError, updating, distinct);
+				//Record the compound weight if the whole compound is present
+				if(compoundSize > 1 && activeList.size() == compoundSize) {
+					if(compound == null) {
+						compound = getCompound(curNameSt.substring(0, compoundSize), tempRes);
+					}
+					double totalAssoc = 0;
+					for(int k = 0; k < compoundSize; k++) {
+						totalAssoc += activeList.get(k).getLastAssocValue();
+					}
+					compound.record(totalAssoc);
 				}
 				//Update prediction
 				lastPrediction = prediction;
 			}
 			//Store new prediction at the end of each trial
 			store(tempRes, currentSt);
+			reportTimesteps(trialLength + iti);
+			completed++;
+		}
+		control.addTrials(completed);
+		if(!control.isCancelled()) {
+			control.combinationCompleted();
+		}
+	}
+	
+	/**
+	 * Add simulated timesteps to the progress of the run. A phase never
+	 * reports more than it was estimated to need, and makes up the rest
+	 * when it ends, so that progress adds up to the estimate for the run.
+	 * @param steps timesteps simulated.
+	 */
+	
+	private void reportTimesteps(long steps) {
+		long add = Math.min(steps, timestepBudget - timestepsReported);
+		if(add > 0) {
+			timestepsReported += add;
+			control.addTimesteps(add);
 		}
 	}
 	
 	/**
-	 * Merge cues together to form a compound cue.
+	 * Get the compound cue list for a trial, creating it if this is the
+	 * first time the compound has been fully present. Its components are
+	 * filled in from the recorded weights when the trial is stored.
 	 * @param compoundName name of the compound
 	 * @param tempRes working results map
-	 * @param active list of active components
-	 */
-	
-	protected void mergeCues(String compoundName, Map<String, CueList> tempRes, List<SimCue> active) {
-		CueList compound = tempRes.containsKey(compoundName) ? tempRes.get(compoundName) : 
-			new CompoundCueList(compoundName, 0d, group.getModel().getThreshold());
-		
-		if(active.size() == compoundName.length()) {
-		SimCue cue = compound.nextCue();
-		double totalAssoc = 0;
-		for(SimCue tmp : active) {
-			totalAssoc += tmp.getLastAssocValue();
-		}
-		cue.setAssocValue(totalAssoc);
-		
-		tempRes.put(compoundName, compound);
+	 * @return the compound's cue list.
+	 */
+	
+	protected CompoundCueList getCompound(String compoundName, Map<String, CueList> tempRes) {
+		CompoundCueList compound = (CompoundCueList) tempRes.get(compoundName);
+		if(compound == null) {
+			compound = new CompoundCueList(compoundName, 0d, group.getModel().getThreshold());
+			tempRes.put(compoundName, compound);
 		}
+		return compound;
 	}
 	
 	
@@ -282,16 +354,15 @@ public class SimPhase {
 	/**
 	 * Update cues according to TD algorithm.
 	 * @param betaError beta error term
-	 * @param tempRes results map
-	 * @param cues set of cues to update
+	 * @param cues cue lists to update
+	 * @param count number of cue lists to update
 	 */
 	
-	protected void updateCues(double betaError, Map<String, CueList> tempRes,
-			Set<Character> cues) {
+	protected void updateCues(double betaError, CueList[] cues, int count) {
 		//For each stimulus in the trial
-		for(Character updating : cues) {		
+		for(int i = 0; i < count; i++) {		
 			//For each component of the stimulus
-			tempRes.get(updating.toString()).update(betaError, delta, gamma);
+			cues[i].update(betaError, delta, gamma);
 		}
 	}
 	
@@ -304,16 +375,33 @@ public class SimPhase {
 	protected void store(Map<String, CueList> tempRes, SimStimulus current) {
 		for(CueList cue : tempRes.values()) {
 			if(cue.getSymbol().length() > 1 && current.getCueNames().equals(cue.getSymbol())) {
-				cue.store();
+				cue.store(generator);
 				cue.restart();
+				if(publishTrials) {
+					publish(cue, cue.getTrialCount());
+				}
 			}
 			else if(cue.getSymbol().length() == 1 && current.getCueNames().contains(cue.getSymbol())) {
-				cue.store();
+				cue.store(generator);
 				cue.restart();
+				if(publishTrials) {
+					publish(cue, cue.getTrialCount());
+				}
 			}
 		}
 	}
 	
+	/**
+	 * Tell the sink about a stored trial of a cue.
+	 * @param cue cue list the trial was stored in.
+	 * @param trial number of the trial, from 1.
+	 */
+	
+	private void publish(CueList cue, int trial) {
+		sink.trialStored(group, phaseNumber, cue.getSymbol(), trial,
+				cue.averageAssoc(trial - 1), cue.averageResponse(trial - 1));
+	}
+	
 	/**
 	 * Returns an exact TreeMap copy from the TreeMap that is been given.
 	 * It iterates through it's keys and puts their values into a new object.
@@ -429,6 +517,48 @@ public class SimPhase {
 	    return trials;
 	}
 	
+	/**
+	 * Returns the number of times the algorithm is run for this phase, once
+	 * per random combination and per variable duration combination.
+	 * @return the number of runs.
+	 */
+	public int getNoRuns() {
+		int runs = isRandom() ? group.noOfCombin() : 1;
+		return timingConfig.hasVariableDurations() ? runs*group.getModel().getVariableCombinationNo() : runs;
+	}
+	
+	/**
+	 * Show results read back from a result archive in place of simulated
+	 * ones. They take a new version like the results of a run.
+	 * @param restored results by cue, as {@link #getResults()} gives them.
+	 * @param maxDuration longest trial the results were simulated with.
+	 */
+	public void restoreResults(Map<String, CueList> restored, int maxDuration) {
+		results = new TreeMap<String, CueList>(restored);
+		maxMaxOnset = maxDuration;
+		resultsVersion = resultsVersions.incrementAndGet();
+	}
+	
+	/**
+	 * Versions tell consumers of the results which phases have new results
+	 * since they last read them. Every run of any phase takes a version
+	 * later than all those before.
+	 * @return the version of the results, 0 if the phase has not been run.
+	 */
+	public long getResultsVersion() {
+		return resultsVersion;
+	}
+	
+	/**
+	 * Estimate the timesteps this phase simulates over all its runs, from
+	 * the mean trial length and ITI.
+	 * @return the estimated number of timesteps.
+	 */
+	public long estimateTimesteps() {
+		double trialLength = timingConfig.meanTrialLength() + itis.getMinimum() + itis.getMean();
+		return (long) (getNoRuns()*(double) trials*trialLength/group.getModel().getTimestepSize());
+	}
+	
 	/**
 	 * Returns the results into a HashMap containing the cues that are
 	 * participate in this phase or in the other group's phase's (their value
@@ -466,25 +596,53 @@ public class SimPhase {
  	 * @return if the cue is taking part in the current phase
 	 */
 	public boolean isCueInStimuli(String cue){
-	 	   boolean is = false;
-	 	   // looking for the cue in the stimuli
-	 	   Set<String> keys = stimuli.keySet();
-	 	   for (String key: keys) {
-	 		   	if (cue.length()>1){ //cue is a compound --> check with the complete name
-	 		   		if(cue.startsWith(Simulator.OMEGA+"")) {
-	 		   			cue = cue.substring(1);
-	 		   		}
-	 		   		if (stimuli.get(key).getCueNames().equals(cue)) {
-	 		   			is = true; 
-	 		   			break;
-	 		   		}
-	 		   	}else if (key.indexOf(cue)!=-1) { // cue is a simple one --> check if cue is inside the stimuli
-	    				is = true; 
-	    				break;
-	    		}
+	 	   if (stimuli.isEmpty()) {
+	 		   return cue.equals(Simulator.OMEGA+"");
+	 	   }
+	 	   if (stimulusCues == null) {
+	 		   indexStimuli();
+	 	   }
+	 	   if (cue.length()>1 && cue.startsWith(Simulator.OMEGA+"")) {
+	 		   cue = cue.substring(1);
+	 		   if (cue.length() == 1) {
+	 			   // Matched by name against the first stimulus only and inside the names of the others, as it always has been
+	 			   return cue.equals(firstCueNames) || laterStimulusCues.contains(cue) || cue.equals(Simulator.OMEGA+"");
+	 		   }
+	 	   }
+	 	   if (cue.length()>1) { //cue is a compound --> check with the complete name
+	 		   return stimulusCueNames.contains(cue);
 	 	   }
-	 	   if(cue.equals(Simulator.OMEGA+"")) is = true;
-	 	   return is;
+	 	   // cue is a simple one --> check if cue is inside the stimuli
+	 	   return cue.length() == 0 || stimulusCues.contains(cue) || cue.equals(Simulator.OMEGA+"");
+	}
+	
+	/**
+	 * Index the cue names of the stimuli and every character of the stimuli
+	 * names, so looking a cue up does not walk the stimuli each time.
+	 */
+	
+	private void indexStimuli() {
+		Set<String> names = new HashSet<String>();
+		Set<String> singles = new HashSet<String>();
+		Set<String> later = new HashSet<String>();
+		String first = null;
+		for (Entry<String, SimStimulus> stimulus : stimuli.entrySet()) {
+			names.add(stimulus.getValue().getCueNames());
+			String key = stimulus.getKey();
+			for (int i = 0; i < key.length(); i++) {
+				singles.add(key.substring(i, i+1));
+				if (first != null) {
+					later.add(key.substring(i, i+1));
+				}
+			}
+			if (first == null) {
+				first = stimulus.getValue().getCueNames();
+			}
+		}
+		firstCueNames = first;
+		laterStimulusCues = later;
+		stimulusCueNames = names;
+		stimulusCues = singles;
 	}
 	
 	/**
@@ -556,8 +714,35 @@ public class SimPhase {
 	 *
 	 */
 	public void runSimulator() {
+	    phaseNumber = group.getPhases().indexOf(this) + 1;
+	    combinations = 0;
+	    timestepBudget = estimateTimesteps();
+	    int csc = (int) Math.ceil(timingConfig.meanCSLength()/group.getModel().getTimestepSize());
+	    EngineEvents.Span span = EngineEvents.get().phaseRun(group.getNameOfGroup(), phaseNumber, trials, isRandom(),
+	    		timestepBudget, csc);
+	    try {
+	    	simulate();
+	    } finally {
+	    	span.end();
+	    }
+	}
+	
+	/**
+	 * Run the phase, as described for {@link #runSimulator()}.
+	 */
+	
+	private void simulate() {
+	    long started = System.currentTimeMillis();
 	    results = copyKeysMapToTreeMap(cues); 
+	    timingTable = new TimingTable(timingConfig, itis, group.getModel().getTimestepSize());
 	    boolean context = group.getModel().isUseContext();
+	    sink = group.getModel().getResultSink();
+	    generator = group.getModel().random(group.getNameOfGroup(), phaseNumber);
+	    //Durations reshuffle independently of each other
+	    timingConfig.reseed(generator);
+	    itis.reseed(generator.nextLong());
+	    publishTrials = sink != null && !isRandom() && !timingConfig.hasVariableDurations();
+	    timestepsReported = 0;
 	    // Sequence is running randomly
 	    if (isRandom()) {
 	    	Map<String, Integer> trialCounts = new HashMap<String, Integer>();
@@ -577,7 +762,6 @@ public class SimPhase {
 	    	
 	    	
 	        // Shuffle process
-	        Random generator = new Random();
 	        TreeMap<String, List<ParallelDoubleArray[]>> avgResult = new TreeMap<String, List<ParallelDoubleArray[]>>();
 	        TreeMap<String, CueList> tempRes = copyKeysMapToTreeMap(cues);
 	        for (int i = 0; i < group.noOfCombin() && !control.isCancelled(); i++) {
@@ -630,7 +814,22 @@ public class SimPhase {
 	    	}
 	    	control.incrementProgress(1);//00d/group.getNoOfPhases());
 	    }
+	    if(!control.isCancelled()) {
+	    	reportTimesteps(timestepBudget - timestepsReported);
+	    	control.phaseCompleted(group.getNameOfGroup(), phaseNumber, System.currentTimeMillis() - started);
+	    }
+	    //Averaged runs are only final now
+	    if(sink != null && !publishTrials && !control.isCancelled()) {
+	    	for(CueList cue : results.values()) {
+	    		for(int trial = 1; trial <= cue.getTrialCount(); trial++) {
+	    			publish(cue, trial);
+	    		}
+	    	}
+	    }
+	    publishTrials = false;
+	    sink = null;
 	    cues.putAll(results);
+	    resultsVersion = resultsVersions.incrementAndGet();
 	}
 	
 	/**
@@ -718,9 +917,12 @@ public class SimPhase {
 			//Max components for each trial.
 			List<Integer> totalMax = new ArrayList<Integer>();
 			if(maxCues.containsKey(cues.getKey())) {
-				for(int i = 0; i < cues.getValue().getMaxCueList().size(); i++) {
-					totalMax.add(
-						Math.max(maxCues.get(cues.getKey()).get(i), cues.getValue().getMaxCueList().get(i)));
+				//Lists differ in length when variable durations are nested in random runs
+				List<Integer> soFar = maxCues.get(cues.getKey());
+				List<Integer> current = cues.getValue().getMaxCueList();
+				for(int i = 0; i < Math.max(soFar.size(), current.size()); i++) {
+					totalMax.add(i >= current.size() ? soFar.get(i) : i >= soFar.size() ? current.get(i)
+						: Math.max(soFar.get(i), current.get(i)));
 				}
 				maxCues.put(cues.getKey(), totalMax);
 			} else {
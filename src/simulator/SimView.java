@@ -70,17 +70,23 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
 import javax.swing.JTable;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.JTree;
 import javax.swing.KeyStroke;
 import javax.swing.border.EtchedBorder;
 import javax.swing.event.ChangeEvent;
+import javax.swing.event.TreeSelectionEvent;
+import javax.swing.event.TreeSelectionListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
 import javax.swing.text.JTextComponent;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
 
 import simulator.SimCue.Trace;
 import simulator.configurables.ContextConfig;
@@ -134,7 +140,7 @@ public class SimView extends JFrame {
 	
 	private JMenuBar menuBar;
 	private JMenu menuFile, menuDesignSettings, menuHelp;
-	private JMenuItem menuItemNew, menuItemOpen, menuItemSave, menuItemExport, menuItemQuit, 
+	private JMenuItem menuItemNew, menuItemOpen, menuItemSave, menuItemExport, menuItemSaveResults, menuItemOpenResults, menuItemQuit, 
 		menuItemComb, menuItemGuide,
 		menuItemAbout; 
 	private JCheckBoxMenuItem menuItemUSAcrossPhases, menuItemSetCompound, menuItemSetConfiguralCompounds; // menuItemSetConfiguralCompounds by Alberto Fern�ndez August-2011
@@ -149,6 +155,9 @@ public class SimView extends JFrame {
 	private CSValuesTableModel CSValuesTableModel;
 	private USValuesTableModel USValuesTableModel;
 	private JTextArea outputArea;
+	/** Sections of the results, shown in the output area when selected. **/
+	private JTree resultsTree;
+	private ResultsOutline outline;
 	private JLabel bottomLabel;
 	
 	private boolean isUSAcrossPhases, isSetCompound, isSetConfiguralCompounds;
@@ -162,6 +171,13 @@ public class SimView extends JFrame {
 	private JMenuItem menuItemExp, menuItemUnif;
 	private JMenuItem menuItemContextAcrossPhases;
 	private JCheckBoxMenuItem menuItemCsc;
+	/** Option to show the curves while the model runs. **/
+	private JCheckBoxMenuItem menuItemLiveGraph;
+	/** Option to write the trial results to a file while the model runs. **/
+	private JCheckBoxMenuItem menuItemJsonLines;
+	private JCheckBoxMenuItem menuItemTrialsAsRows;
+	/** Option to export the groups as they finish running. **/
+	private JCheckBoxMenuItem menuItemExportWhileRunning;
 	private AbstractButton menuItemTimestep;
 	/** Tracking for hidden context columns. **/
 	private Map<TableColumn, Integer> hiddenColumns;
@@ -313,6 +329,20 @@ public class SimView extends JFrame {
 	    menuItemExport.setActionCommand("Export"); //$NON-NLS-1$
 	    menuFile.add(menuItemExport);
 	    
+	    menuItemTrialsAsRows = new JCheckBoxMenuItem(Messages.getString("SimView.trialsAsRows"), false);  //$NON-NLS-1$
+	    menuFile.add(menuItemTrialsAsRows);
+	    
+	    menuItemExportWhileRunning = new JCheckBoxMenuItem(Messages.getString("SimView.exportWhileRunning"), false);  //$NON-NLS-1$
+	    menuFile.add(menuItemExportWhileRunning);
+	    
+	    menuItemSaveResults = new JMenuItem(Messages.getString("SimView.saveResults")); //$NON-NLS-1$
+	    menuItemSaveResults.setActionCommand("SaveResults"); //$NON-NLS-1$
+	    menuFile.add(menuItemSaveResults);
+	    
+	    menuItemOpenResults = new JMenuItem(Messages.getString("SimView.openResults")); //$NON-NLS-1$
+	    menuItemOpenResults.setActionCommand("OpenResults"); //$NON-NLS-1$
+	    menuFile.add(menuItemOpenResults);
+	    
 	    menuFile.addSeparator();
 	    
 	    menuItemQuit = new JMenuItem(Messages.getString("SimView.quit"), KeyEvent.VK_Q); //$NON-NLS-1$
@@ -405,6 +435,12 @@ public class SimView extends JFrame {
 	    menuItemSetConfiguralCompounds.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_X, ActionEvent.ALT_MASK));
 	    menuDesignSettings.add(menuItemSetConfiguralCompounds);
 	    
+	    menuItemLiveGraph = new JCheckBoxMenuItem(Messages.getString("SimView.liveGraph"), false);  //$NON-NLS-1$
+	    menuDesignSettings.add(menuItemLiveGraph);
+	    
+	    menuItemJsonLines = new JCheckBoxMenuItem(Messages.getString("SimView.jsonLines"), false);  //$NON-NLS-1$
+	    menuDesignSettings.add(menuItemJsonLines);
+	    
 	    menuMeans = new JMenu(Messages.getString("SimView.meanType")); //$NON-NLS-1$
 	    menuProcSettings.add(menuMeans);
 	    
@@ -585,13 +621,24 @@ public class SimView extends JFrame {
 		outputArea.setEditable(false);
 		outputArea.setFont(new Font("Serif" , Font.PLAIN , 16)); //$NON-NLS-1$
 		outputScroll = new JScrollPane(outputArea);
+		resultsTree = new JTree(new DefaultTreeModel(null));
+		resultsTree.addTreeSelectionListener(new TreeSelectionListener() {
+			public void valueChanged(TreeSelectionEvent e) {
+				if(outline != null && e.getNewLeadSelectionPath() != null) {
+					outputArea.setText(outline.format(e.getNewLeadSelectionPath().getLastPathComponent()));
+					outputArea.setCaretPosition(0);
+				}
+			}
+		});
+		JSplitPane outputSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, new JScrollPane(resultsTree), outputScroll);
+		outputSplit.setDividerLocation(160);
 		dispGraphBut = new JButton(Messages.getString("SimView.graphs")); //$NON-NLS-1$
 	    dispGraphBut.setActionCommand("dispGraph"); //$NON-NLS-1$
 	    JPanel dispGraphButPanel = new JPanel();
 	    dispGraphButPanel.add(dispGraphBut);
 
 	    resultPanel.add(clearButPanel,BorderLayout.NORTH);
-	    resultPanel.add(outputScroll, BorderLayout.CENTER);
+	    resultPanel.add(outputSplit, BorderLayout.CENTER);
 	    resultPanel.add(dispGraphButPanel,BorderLayout.SOUTH);
 	    
 	    c.gridx = 0;
@@ -1064,6 +1111,8 @@ public class SimView extends JFrame {
         menuItemOpen.addActionListener(event);
         menuItemSave.addActionListener(event);
         menuItemExport.addActionListener(event);
+        menuItemSaveResults.addActionListener(event);
+        menuItemOpenResults.addActionListener(event);
         menuItemQuit.addActionListener(event);
         menuItemComb.addActionListener(event);
         menuItemUSAcrossPhases.addActionListener(event);
@@ -1110,6 +1159,7 @@ public class SimView extends JFrame {
     	if (b.equals(dispGraphBut.getActionCommand())) dispGraphBut.setEnabled(mode);
     	if (b.equals(menuItemSave.getActionCommand())) menuItemSave.setEnabled(mode);
     	if (b.equals(menuItemExport.getActionCommand())) menuItemExport.setEnabled(mode);
+    	if (b.equals(menuItemSaveResults.getActionCommand())) menuItemSaveResults.setEnabled(mode);
     	if (b.equals(menuItemUSAcrossPhases.getActionCommand())) menuItemUSAcrossPhases.setState(mode);
     	if (b.equals(menuItemSetCompound.getActionCommand())) menuItemSetCompound.setState(mode);
     	if (b.equals(menuItemSetConfiguralCompounds.getActionCommand())) menuItemSetConfiguralCompounds.setState(mode);
@@ -1130,7 +1180,7 @@ public class SimView extends JFrame {
      * Clear the Area of the results. 
      */
     public void clearOutputArea() {
-        outputArea.setText(""); //$NON-NLS-1$
+        setOutput(""); //$NON-NLS-1$
     }
     
     /**
@@ -1377,8 +1427,31 @@ public class SimView extends JFrame {
      * @param msg
      */
     public void setOutput(String msg) {
+        outline = null;
+        resultsTree.setModel(new DefaultTreeModel(null));
         outputArea.setText(msg);
     }
+
+    /**
+     * Shows the results of a run as a tree of groups, phases and cues. The
+     * output area starts with the results of the whole run, cut short if
+     * they are large, and shows the section of whichever node is selected.
+     * An outline that is already shown has been refreshed in place: the tree
+     * redraws the subtrees that changed by itself, and the output area
+     * shows the selected section again.
+     * @param outline results of the run.
+     */
+    public void setResults(ResultsOutline outline) {
+        if(outline == this.outline) {
+            TreePath selected = resultsTree.getSelectionPath();
+            outputArea.setText(outline.format(selected == null ? outline.getRoot() : selected.getLastPathComponent()));
+            outputArea.setCaretPosition(0);
+            return;
+        }
+        setOutput(outline.format(outline.getRoot()));
+        this.outline = outline;
+        resultsTree.setModel(outline);
+    }
     
     
     /**
@@ -2007,6 +2080,41 @@ public class SimView extends JFrame {
 		return menuItemThreshold.isSelected();
 	}
 	
+	/**
+	 * @return true if the curves should be shown while the model runs.
+	 */
+	
+	public boolean getIsSetLiveGraph() {
+		return menuItemLiveGraph.isSelected();
+	}
+	
+	/**
+	 * @return true if the trial results should be streamed to a JSON lines
+	 * file while the model runs.
+	 */
+	
+	public boolean getIsSetJsonLines() {
+		return menuItemJsonLines.isSelected();
+	}
+	
+	/**
+	 * @return true if spreadsheets should have a row per trial, on a sheet
+	 * per phase, rather than a column per trial.
+	 */
+	
+	public boolean getIsSetTrialsAsRows() {
+		return menuItemTrialsAsRows.isSelected();
+	}
+	
+	/**
+	 * @return true if the results should be exported group by group while
+	 * the model runs.
+	 */
+	
+	public boolean getIsSetExportWhileRunning() {
+		return menuItemExportWhileRunning.isSelected();
+	}
+	
 	/**
 	 * 
 	 * @return true is the geometric mean option is selected.
@@ -2099,6 +2207,7 @@ public class SimView extends JFrame {
 		getPhasesTable().setEnabled(true);
 		//Export off
 	    setStatusComponent(false, "Export"); //$NON-NLS-1$
+	    setStatusComponent(false, "SaveResults"); //$NON-NLS-1$
 	    //Save off
 		setStatusComponent(false, "Save"); //$NON-NLS-1$
 		//Set variables button on
@@ -0,0 +1,99 @@
+package simulator;
+
+import java.util.Map;
+
+/**
+ * Engine metrics of the latest simulation run and export, for watching long
+ * runs from JConsole, VisualVM or any other JMX client. Registered as
+ * {@value SimulationMonitor#NAME} the first time a model is run.
+ */
+
+public interface SimulationMXBean {
+
+	/**
+	 * @return groups in the model being run.
+	 */
+	public int getGroups();
+
+	/**
+	 * @return groups that have run all their phases.
+	 */
+	public int getGroupsCompleted();
+
+	/**
+	 * @return phases in all the groups of the model being run.
+	 */
+	public int getPhases();
+
+	/**
+	 * @return phases that have run to the end.
+	 */
+	public int getPhasesCompleted();
+
+	/**
+	 * @return passes through a phase's trials, one per random or variable
+	 * duration combination.
+	 */
+	public long getCombinationsCompleted();
+
+	/**
+	 * @return timesteps simulated so far.
+	 */
+	public long getTimesteps();
+
+	/**
+	 * @return timesteps the run is estimated to simulate.
+	 */
+	public long getTotalTimesteps();
+
+	/**
+	 * @return fraction of the estimated timesteps simulated, 0 to 1.
+	 */
+	public double getProgress();
+
+	/**
+	 * @return trials simulated so far.
+	 */
+	public long getTrials();
+
+	/**
+	 * @return trials simulated per second over the run.
+	 */
+	public double getTrialsPerSecond();
+
+	/**
+	 * @return milliseconds since the run started, or the run took.
+	 */
+	public long getElapsedMillis();
+
+	/**
+	 * @return wall time of each completed phase in milliseconds, by group and
+	 * phase.
+	 */
+	public Map<String, Long> getPhaseMillis();
+
+	/**
+	 * @return estimated memory taken by the results, in bytes.
+	 */
+	public long getResultBytes();
+
+	/**
+	 * @return rows written by the run's export and the latest export.
+	 */
+	public long getRowsWritten();
+
+	/**
+	 * @return true once the run has finished.
+	 */
+	public boolean isComplete();
+
+	/**
+	 * @return true if the run or the latest export has been cancelled.
+	 */
+	public boolean isCancelled();
+
+	/**
+	 * Cancel the run and the latest export.
+	 */
+	public void cancel();
+}
@@ -0,0 +1,168 @@
+package simulator;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the metrics of the latest run and export through JMX, read from
+ * their {@link ModelControl}s whenever a client asks. Only the controls
+ * are kept, not the model, so its results can still be collected once it
+ * is replaced. Nothing here touches Swing, so it works for headless runs.
+ */
+
+public final class SimulationMonitor implements SimulationMXBean {
+	/** Object name the bean is registered under. **/
+	public static final String NAME = "simulator:type=Simulation"; //$NON-NLS-1$
+
+	private static SimulationMonitor instance;
+
+	/** Control of the latest run and of the latest export. **/
+	private volatile ModelControl run, export;
+	/** Size of the model being run. **/
+	private volatile int groups, phases;
+
+	private SimulationMonitor() {}
+
+	/**
+	 * @return the monitor, registering it with the platform MBean server
+	 * the first time.
+	 */
+
+	public static synchronized SimulationMonitor get() {
+		if(instance == null) {
+			instance = new SimulationMonitor();
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(NAME));
+			} catch (JMException e) {
+				//Still usable from code, just not from JMX clients
+				e.printStackTrace();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Report on a run of a model from now on.
+	 * @param model model about to be run.
+	 * @param control control of the run.
+	 */
+
+	public void watchRun(SimModel model, ModelControl control) {
+		int phaseCount = 0;
+		for(SimGroup group : model.getGroups().values()) {
+			phaseCount += group.getPhases().size();
+		}
+		groups = model.getGroups().size();
+		phases = phaseCount;
+		run = control;
+	}
+
+	/**
+	 * Report the rows written by an export from now on.
+	 * @param control control of the export.
+	 */
+
+	public void watchExport(ModelControl control) {
+		export = control;
+	}
+
+	public int getGroups() {
+		return groups;
+	}
+
+	public int getGroupsCompleted() {
+		ModelControl control = run;
+		return control == null ? 0 : control.getGroupsCompleted();
+	}
+
+	public int getPhases() {
+		return phases;
+	}
+
+	public int getPhasesCompleted() {
+		ModelControl control = run;
+		return control == null ? 0 : control.getPhasesCompleted();
+	}
+
+	public long getCombinationsCompleted() {
+		ModelControl control = run;
+		return control == null ? 0 : control.getCombinationsCompleted();
+	}
+
+	public long getTimesteps() {
+		ModelControl control = run;
+		return control == null ? 0 : control.getTimesteps();
+	}
+
+	public long getTotalTimesteps() {
+		ModelControl control = run;
+		return control == null ? 0 : control.getTotalTimesteps();
+	}
+
+	public double getProgress() {
+		ModelControl control = run;
+		if(control == null || control.getTotalTimesteps() == 0) {
+			return 0;
+		}
+		return Math.min(1, (double) control.getTimesteps()/control.getTotalTimesteps());
+	}
+
+	public long getTrials() {
+		ModelControl control = run;
+		return control == null ? 0 : control.getTrials();
+	}
+
+	public double getTrialsPerSecond() {
+		ModelControl control = run;
+		long millis = control == null ? 0 : control.getElapsedMillis();
+		return millis == 0 ? 0 : control.getTrials()*1000d/millis;
+	}
+
+	public long getElapsedMillis() {
+		ModelControl control = run;
+		return control == null ? 0 : control.getElapsedMillis();
+	}
+
+	public Map<String, Long> getPhaseMillis() {
+		ModelControl control = run;
+		return control == null ? Collections.<String, Long>emptyMap() : control.getPhaseMillis();
+	}
+
+	public long getResultBytes() {
+		ModelControl control = run;
+		return control == null ? 0 : control.getResultBytes();
+	}
+
+	public long getRowsWritten() {
+		ModelControl control = run, exported = export;
+		long rows = control == null ? 0 : control.getRowsWritten();
+		if(exported != null && exported != control) {
+			rows += exported.getRowsWritten();
+		}
+		return rows;
+	}
+
+	public boolean isComplete() {
+		ModelControl control = run;
+		return control != null && control.isComplete();
+	}
+
+	public boolean isCancelled() {
+		ModelControl control = run, exported = export;
+		return control != null && control.isCancelled() || exported != null && exported.isCancelled();
+	}
+
+	public void cancel() {
+		ModelControl control = run, exported = export;
+		if(control != null) {
+			control.setCancelled(true);
+		}
+		if(exported != null) {
+			exported.setCancelled(true);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package simulator.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One case of the benchmark suite: a piece of the simulation run over and
+ * over by {@link SimulationBenchmarks}. A case names the parameters it
+ * depends on, is set up once for every combination of their values, and
+ * then times {@link #run()} alone.
+ */
+
+public abstract class Benchmark {
+	/** Results of the runs, read so the work cannot be optimized away. **/
+	private static volatile int sink;
+
+	private final String name;
+	private final List<String> parameters;
+
+	/**
+	 * @param name name of the case, as shown and filtered on.
+	 * @param parameters names of the parameters the case depends on.
+	 */
+
+	protected Benchmark(String name, String... parameters) {
+		this.name = name;
+		this.parameters = Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(parameters)));
+	}
+
+	/**
+	 * @return the name of the case.
+	 */
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the names of the parameters the case depends on.
+	 */
+
+	public List<String> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Prepare for runs with a set of parameter values, not timed.
+	 * @param values value of each of the case's parameters.
+	 * @throws Exception if the case cannot be set up.
+	 */
+
+	public abstract void setUp(Map<String, Integer> values) throws Exception;
+
+	/**
+	 * Run the timed work once.
+	 * @return what the work produced.
+	 * @throws Exception if the work fails.
+	 */
+
+	public abstract Object run() throws Exception;
+
+	/**
+	 * @return the items of work one run handles, such as cells written,
+	 * when the case is scored by items per second, otherwise 0 to score it
+	 * by time per run.
+	 */
+
+	public long getItems() {
+		return 0;
+	}
+
+	/**
+	 * @return the name of the items of work, when there are any.
+	 */
+
+	public String getItemName() {
+		return null;
+	}
+
+	/**
+	 * Time the case for a while.
+	 * @param millis least time to run it for, it runs at least once.
+	 * @return the mean time of one run, in nanoseconds.
+	 * @throws Exception if the work fails.
+	 */
+
+	double measure(long millis) throws Exception {
+		long operations = 0;
+		long start = System.nanoTime();
+		long end = start + millis*1000000;
+		long now;
+		do {
+			sink ^= System.identityHashCode(run());
+			operations++;
+			now = System.nanoTime();
+		} while(now < end);
+		return (double) (now - start)/operations;
+	}
+}
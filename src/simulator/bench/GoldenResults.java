@@ -0,0 +1,294 @@
+package simulator.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import simulator.CueList;
+import simulator.ModelControl;
+import simulator.SimCue;
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.SimPhase;
+import simulator.util.VariableDistribution;
+import simulator.util.io.ExperimentReader;
+
+/**
+ * Golden results of the simulation core, for checking that reworking the
+ * engine does not change what it learns. Every experiment file of a corpus
+ * is run with fixed seeds, so shuffled trials, variable durations and
+ * responses come out the same each time, and its results are written to or
+ * compared with a golden file beside it, <code>name.golden</code>:
+ * <ul>
+ * <li>the mean value of each cue after each trial, and its mean response;</li>
+ * <li>the value of each component of each cue after each trial, and its
+ * responses.</li>
+ * </ul>
+ * Values match when they differ by no more than the absolute tolerance
+ * plus the relative tolerance times the golden value. Responses are drawn
+ * from the seeded numbers in the order cues are stored, so an engine that
+ * stores them in another order needs new goldens for its responses.
+ * <pre>
+ * java -cp ... simulator.bench.GoldenResults record golden/corpus
+ * java -cp ... simulator.bench.GoldenResults check [-abs 1e-9] [-rel 1e-6] golden/corpus [goldenDir]
+ * </pre>
+ * Goldens recorded with one build are checked against another by running
+ * <code>check</code> with the other build's classes first on the class
+ * path. It exits with 1 if any experiment differs.
+ */
+
+public class GoldenResults {
+	/** Seed of every random number drawn in a run. **/
+	public static final long SEED = 20111;
+	/** Default tolerances of a check. **/
+	public static final double ABSOLUTE = 1e-9, RELATIVE = 1e-6;
+	/** Extension of golden files. **/
+	static final String EXTENSION = ".golden"; //$NON-NLS-1$
+	/** Most differences shown per experiment. **/
+	private static final int SHOWN = 20;
+
+	private GoldenResults() {}
+
+	/**
+	 * Run an experiment with the fixed seeds.
+	 * @param experiment experiment file.
+	 * @return its results, each series of values by its key.
+	 * @throws IOException if the file cannot be read.
+	 */
+
+	public static Map<String, double[]> run(File experiment) throws IOException {
+		VariableDistribution.setRandomSeed(SEED);
+		SimModel model = new ExperimentReader().read(experiment);
+		model.setRandomSeed(SEED);
+		model.setControl(new ModelControl());
+		model.startCalculations();
+		return results(model);
+	}
+
+	/**
+	 * @param model a model that has been run.
+	 * @return its results, each series of values keyed by group, phase, cue
+	 * and what it is, separated by tabs.
+	 */
+
+	public static Map<String, double[]> results(SimModel model) {
+		Map<String, double[]> results = new TreeMap<String, double[]>();
+		for(SimGroup group : model.getGroups().values()) {
+			List<SimPhase> phases = group.getPhases();
+			for(int p = 0; p < phases.size(); p++) {
+				Map<String, CueList> cues = phases.get(p).getResults();
+				for(Map.Entry<String, CueList> cue : cues.entrySet()) {
+					String key = group.getNameOfGroup() + '\t' + (p + 1) + '\t' + cue.getKey() + '\t';
+					CueList list = cue.getValue();
+					results.put(key + "trial", values(list.getAverageWeights())); //$NON-NLS-1$
+					results.put(key + "trial response", values(list.getAverageResponse())); //$NON-NLS-1$
+					for(int c = 0; c < list.size(); c++) {
+						SimCue component = list.get(c);
+						results.put(key + "component " + (c + 1), values(component.getAssocValueVector())); //$NON-NLS-1$
+						results.put(key + "component " + (c + 1) + " response", values(component.getResponses())); //$NON-NLS-1$ //$NON-NLS-2$
+					}
+				}
+			}
+		}
+		return results;
+	}
+
+	private static double[] values(List<Double> list) {
+		double[] values = new double[list == null ? 0 : list.size()];
+		for(int i = 0; i < values.length; i++) {
+			Double value = list.get(i);
+			values[i] = value == null ? Double.NaN : value;
+		}
+		return values;
+	}
+
+	/**
+	 * Write results to a golden file, a line per series: its key then its
+	 * values, separated by tabs.
+	 * @param results results by key.
+	 * @param file file to write.
+	 * @throws IOException if the file cannot be written.
+	 */
+
+	public static void write(Map<String, double[]> results, File file) throws IOException {
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ExperimentReader.CHARSET));
+		try {
+			out.write("# seed " + SEED + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			for(Map.Entry<String, double[]> series : results.entrySet()) {
+				out.write(series.getKey());
+				for(double value : series.getValue()) {
+					out.write('\t');
+					out.write(Double.toString(value));
+				}
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param file golden file.
+	 * @return the results it holds, by key.
+	 * @throws IOException if the file cannot be read.
+	 */
+
+	public static Map<String, double[]> read(File file) throws IOException {
+		Map<String, double[]> results = new TreeMap<String, double[]>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), ExperimentReader.CHARSET));
+		try {
+			String line;
+			while((line = in.readLine()) != null) {
+				if(line.length() == 0 || line.startsWith("#")) { //$NON-NLS-1$
+					continue;
+				}
+				String[] fields = line.split("\t", -1); //$NON-NLS-1$
+				if(fields.length < 4) {
+					throw new IOException(file + ": bad line " + line); //$NON-NLS-1$
+				}
+				double[] values = new double[fields.length - 4];
+				for(int i = 0; i < values.length; i++) {
+					values[i] = Double.parseDouble(fields[i + 4]);
+				}
+				results.put(fields[0] + '\t' + fields[1] + '\t' + fields[2] + '\t' + fields[3], values);
+			}
+		} finally {
+			in.close();
+		}
+		return results;
+	}
+
+	/**
+	 * Compare results with golden ones.
+	 * @param expected golden results.
+	 * @param actual results of the run.
+	 * @param absolute largest difference allowed.
+	 * @param relative largest difference allowed relative to the golden value,
+	 * added to the absolute one.
+	 * @return a description of each series that differs, empty if they match.
+	 */
+
+	public static List<String> compare(Map<String, double[]> expected, Map<String, double[]> actual,
+			double absolute, double relative) {
+		List<String> differences = new ArrayList<String>();
+		for(Map.Entry<String, double[]> series : expected.entrySet()) {
+			String key = series.getKey().replace('\t', ' ');
+			double[] golden = series.getValue();
+			double[] values = actual.get(series.getKey());
+			if(values == null) {
+				differences.add(key + ": missing"); //$NON-NLS-1$
+				continue;
+			}
+			if(values.length != golden.length) {
+				differences.add(key + ": " + values.length + " values, expected " + golden.length); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			int first = -1, count = 0;
+			for(int i = 0; i < Math.min(values.length, golden.length); i++) {
+				if(!matches(golden[i], values[i], absolute, relative)) {
+					if(first < 0) {
+						first = i;
+					}
+					count++;
+				}
+			}
+			if(count > 0) {
+				differences.add(key + ": " + count + " values differ, first at " + (first + 1) //$NON-NLS-1$ //$NON-NLS-2$
+						+ " " + values[first] + " expected " + golden[first]); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		for(String key : actual.keySet()) {
+			if(!expected.containsKey(key)) {
+				differences.add(key.replace('\t', ' ') + ": not in the golden results"); //$NON-NLS-1$
+			}
+		}
+		return differences;
+	}
+
+	private static boolean matches(double golden, double value, double absolute, double relative) {
+		if(Double.isNaN(golden) || Double.isNaN(value)) {
+			return Double.isNaN(golden) && Double.isNaN(value);
+		}
+		return golden == value || Math.abs(golden - value) <= absolute + relative*Math.abs(golden);
+	}
+
+	/**
+	 * @param args <code>record</code> or <code>check</code>, the tolerances
+	 * when checking, the directory of experiment files and optionally the
+	 * directory of golden files, the same one by default.
+	 * @throws IOException if an experiment or golden file cannot be read or
+	 * written.
+	 */
+
+	public static void main(String[] args) throws IOException {
+		double absolute = ABSOLUTE, relative = RELATIVE;
+		List<String> directories = new ArrayList<String>();
+		for(int i = 1; i < args.length; i++) {
+			if(args[i].equals("-abs")) { //$NON-NLS-1$
+				absolute = Double.parseDouble(args[++i]);
+			} else if(args[i].equals("-rel")) { //$NON-NLS-1$
+				relative = Double.parseDouble(args[++i]);
+			} else {
+				directories.add(args[i]);
+			}
+		}
+		boolean record = args.length > 0 && args[0].equals("record"); //$NON-NLS-1$
+		if(!record && !(args.length > 0 && args[0].equals("check")) || directories.isEmpty() || directories.size() > 2) { //$NON-NLS-1$
+			System.err.println("Usage: GoldenResults record|check [-abs tolerance] [-rel tolerance] corpus [goldenDir]"); //$NON-NLS-1$
+			System.exit(2);
+		}
+		File corpus = new File(directories.get(0));
+		File goldenDirectory = new File(directories.get(directories.size() - 1));
+		File[] experiments = corpus.listFiles(new FilenameFilter() {
+			public boolean accept(File directory, String name) {
+				return name.endsWith(".tdx"); //$NON-NLS-1$
+			}
+		});
+		if(experiments == null || experiments.length == 0) {
+			System.err.println("No experiment files in " + corpus); //$NON-NLS-1$
+			System.exit(2);
+		}
+		Arrays.sort(experiments);
+		if(record && !goldenDirectory.isDirectory() && !goldenDirectory.mkdirs()) {
+			throw new IOException("Cannot make " + goldenDirectory); //$NON-NLS-1$
+		}
+		int failed = 0;
+		for(File experiment : experiments) {
+			String name = experiment.getName().replaceFirst("\\.[^.]*$", ""); //$NON-NLS-1$ //$NON-NLS-2$
+			File golden = new File(goldenDirectory, name + EXTENSION);
+			long start = System.currentTimeMillis();
+			Map<String, double[]> results = run(experiment);
+			long millis = System.currentTimeMillis() - start;
+			if(record) {
+				write(results, golden);
+				System.out.println(name + ": recorded " + results.size() + " series in " + millis + " ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				continue;
+			}
+			List<String> differences = compare(read(golden), results, absolute, relative);
+			if(differences.isEmpty()) {
+				System.out.println(name + ": ok, " + results.size() + " series in " + millis + " ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			} else {
+				failed++;
+				System.out.println(name + ": " + differences.size() + " series differ"); //$NON-NLS-1$ //$NON-NLS-2$
+				for(String difference : differences.subList(0, Math.min(SHOWN, differences.size()))) {
+					System.out.println("  " + difference); //$NON-NLS-1$
+				}
+			}
+		}
+		if(!record) {
+			System.out.println(failed == 0 ? "All " + experiments.length + " experiments match" //$NON-NLS-1$ //$NON-NLS-2$
+					: failed + " of " + experiments.length + " experiments differ"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		System.exit(failed == 0 ? 0 : 1);
+	}
+}
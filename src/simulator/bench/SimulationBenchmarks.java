@@ -0,0 +1,506 @@
+package simulator.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.table.DefaultTableModel;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import simulator.CueList;
+import simulator.ModelControl;
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.SimPhase;
+import simulator.configurables.ContextConfig;
+import simulator.configurables.ITIConfig;
+import simulator.configurables.TimingConfiguration;
+import simulator.configurables.TimingTable;
+import simulator.configurables.USConfiguration.Relationship;
+import simulator.util.Distributions;
+import simulator.util.VariableDistribution;
+import simulator.util.io.SimExport;
+import simulator.util.io.SimTableExport;
+
+/**
+ * Benchmarks of the simulation core, for checking that optimizations help
+ * and catching regressions. Each case is timed for a few warmup iterations
+ * and then for the measured ones, for every combination of the values of
+ * the parameters it depends on:
+ * <ul>
+ * <li><code>csc</code> mean CS duration in timesteps, the length of the CSC;</li>
+ * <li><code>trials</code> trials in the phase;</li>
+ * <li><code>combinations</code> random or variable duration combinations averaged.</li>
+ * </ul>
+ * Most cases are scored by the time a run takes. Export cases are scored
+ * by the cells they write per second instead, so formats and layouts of
+ * different sizes can be compared.
+ * <pre>
+ * java -cp ... simulator.bench.SimulationBenchmarks [-wi 3] [-i 5] [-t 1000]
+ *     [-p csc=10,50] [-p trials=50] [-p combinations=20] [-l] [pattern]
+ * </pre>
+ * Only cases whose name contains the pattern, a regular expression, are run.
+ * Scores are the mean and standard deviation of the measured iterations.
+ * Everything runs in one JVM, so run a single case on its own when
+ * comparing two builds closely.
+ */
+
+public class SimulationBenchmarks {
+	/** Seed of the variable durations. **/
+	private static final long SEED = 12345;
+	/** Groups in the designs exported to spreadsheets. **/
+	private static final int GROUPS = 4;
+
+	/**
+	 * Runs a one-phase design, restoring the cues the group started with
+	 * before every run so each starts from the same weights.
+	 */
+
+	private static class PhaseBenchmark extends Benchmark {
+		private final String sequence;
+		private final boolean random, configurals, context, variable;
+		private SimPhase phase;
+		private Map<String, CueList> initial;
+
+		PhaseBenchmark(String name, String sequence, boolean random, boolean configurals, boolean context, boolean variable) {
+			super(name, random || variable ? new String[] {"csc", "trials", "combinations"} : new String[] {"csc", "trials"});
+			this.sequence = sequence;
+			this.random = random;
+			this.configurals = configurals;
+			this.context = context;
+			this.variable = variable;
+		}
+
+		public void setUp(Map<String, Integer> values) {
+			int combinations = values.containsKey("combinations") ? values.get("combinations") : 1;
+			phase = design(sequence.replace("#", String.valueOf(values.get("trials"))).replace("$", String.valueOf(values.get("trials")/2)),
+					random, configurals, context, variable, values.get("csc"), combinations);
+			initial = new TreeMap<String, CueList>(phase.getGroup().getCuesMap());
+		}
+
+		public Object run() {
+			phase.getGroup().getCuesMap().putAll(initial);
+			phase.getITI().reset();
+			phase.getTimingConfig().reset();
+			phase.runSimulator();
+			return phase.getResults();
+		}
+	}
+
+	/**
+	 * Exports the results of a compound design in several groups to a
+	 * spreadsheet, scored by the cells written.
+	 */
+
+	private static class SpreadsheetBenchmark extends Benchmark {
+		private final boolean trialsAsRows;
+		private SimModel model;
+		private File file;
+		private long cells;
+
+		SpreadsheetBenchmark(String name, boolean trialsAsRows) {
+			super(name, "csc", "trials"); //$NON-NLS-1$ //$NON-NLS-2$
+			this.trialsAsRows = trialsAsRows;
+		}
+
+		public void setUp(Map<String, Integer> values) throws Exception {
+			model = design(GROUPS, values.get("trials") + "AB+", false, false, false, false, values.get("csc"), 1); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			for(SimGroup group : model.getGroups().values()) {
+				group.getPhases().get(0).runSimulator();
+			}
+			if(file == null) {
+				file = File.createTempFile("export", ".xlsx"); //$NON-NLS-1$ //$NON-NLS-2$
+				file.deleteOnExit();
+			}
+			export();
+			cells = 0;
+			InputStream in = new FileInputStream(file);
+			try {
+				Workbook workbook = new XSSFWorkbook(in);
+				for(int i = 0; i < workbook.getNumberOfSheets(); i++) {
+					for(Row row : workbook.getSheetAt(i)) {
+						cells += row.getPhysicalNumberOfCells();
+					}
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		public Object run() throws Exception {
+			return export();
+		}
+
+		private ModelControl export() throws IOException {
+			ModelControl control = new ModelControl();
+			//The parameter tables as the view would hold them
+			SimExport export = new SimExport(model,
+					table(new Object[][] {{"A", "0.3"}, {"B", "0.3"}}), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+					table(new Object[][] {{"lambda+", "1.0"}, {"lambda-", "0.0"}, {"beta+", "0.4"}, {"beta-", "0.2"}}), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+					table(new Object[][] {{"gamma", "0.95"}, {"delta", "0.9"}}), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+					true, getName(), file);
+			export.setTrialsAsRows(trialsAsRows);
+			export.setControl(control);
+			export.doExport();
+			return control;
+		}
+
+		private static DefaultTableModel table(Object[][] rows) {
+			return new DefaultTableModel(rows, new Object[] {"Parameter", "Value"}); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		public long getItems() {
+			return cells;
+		}
+
+		public String getItemName() {
+			return "cells"; //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @return every case of the suite.
+	 */
+
+	public static List<Benchmark> benchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new PhaseBenchmark("phase.acquisition", "#A+", false, false, false, false)); //$NON-NLS-1$ //$NON-NLS-2$
+		benchmarks.add(new PhaseBenchmark("phase.compound", "#AB+", false, false, false, false)); //$NON-NLS-1$ //$NON-NLS-2$
+		benchmarks.add(new PhaseBenchmark("phase.configural", "#AB+", false, true, false, false)); //$NON-NLS-1$ //$NON-NLS-2$
+		benchmarks.add(new PhaseBenchmark("phase.context", "#A+", false, false, true, false)); //$NON-NLS-1$ //$NON-NLS-2$
+		benchmarks.add(new PhaseBenchmark("phase.variable", "#A+", false, false, false, true)); //$NON-NLS-1$ //$NON-NLS-2$
+		benchmarks.add(new PhaseBenchmark("phase.random", "$A+/$AB-", true, false, false, false)); //$NON-NLS-1$ //$NON-NLS-2$
+		benchmarks.add(new Benchmark("cuelist.update", "csc", "trials") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			private int csc, trials;
+
+			public void setUp(Map<String, Integer> values) {
+				csc = values.get("csc"); //$NON-NLS-1$
+				trials = values.get("trials"); //$NON-NLS-1$
+			}
+
+			public Object run() {
+				//A CS on for csc timesteps each trial, its CSC grown on the first
+				CueList cue = new CueList("A", 0.3, 0.875); //$NON-NLS-1$
+				for(int trial = 0; trial < trials; trial++) {
+					cue.restart();
+					for(int step = 0; step < csc; step++) {
+						cue.nextCue().setActive(true);
+						cue.update(step == csc - 1 ? 1 : 0.01, 0.9, 0.95);
+					}
+					cue.store();
+				}
+				return cue;
+			}
+		});
+		benchmarks.add(new Benchmark("timing.build", "csc", "trials") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			private TimingConfiguration timings;
+			private ITIConfig iti;
+			private TimingTable table;
+			private List<String> sequence;
+
+			public void setUp(Map<String, Integer> values) {
+				int csc = values.get("csc"); //$NON-NLS-1$
+				int trials = values.get("trials"); //$NON-NLS-1$
+				timings = timings(csc, true);
+				iti = new ITIConfig(csc, csc, trials, false, Distributions.EXPONENTIAL);
+				timings.setTimestep(1);
+				timings.setTrials(trials);
+				iti.setTimestep(1);
+				iti.setTrials(trials);
+				table = new TimingTable(timings, iti, 1);
+				sequence = new ArrayList<String>();
+				for(int i = 0; i < trials; i++) {
+					sequence.add(i % 2 == 0 ? "AB+" : "A-"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+
+			public Object run() {
+				timings.reset();
+				iti.reset();
+				table.build(sequence);
+				return table;
+			}
+		});
+		benchmarks.add(new Benchmark("distribution.build", "csc", "trials") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			private int csc, trials;
+
+			public void setUp(Map<String, Integer> values) {
+				csc = values.get("csc"); //$NON-NLS-1$
+				trials = values.get("trials"); //$NON-NLS-1$
+			}
+
+			public Object run() {
+				//A new seed, so the sequence is generated rather than shared
+				VariableDistribution.newRandomSeed();
+				VariableDistribution distribution = Distributions.getDistribution(Distributions.EXPONENTIAL, csc, SEED, trials, false);
+				distribution.setTimestep(1);
+				distribution.build();
+				return distribution;
+			}
+		});
+		benchmarks.add(new Benchmark("distribution.regenerate", "csc", "trials") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			private VariableDistribution distribution;
+
+			public void setUp(Map<String, Integer> values) {
+				distribution = Distributions.getDistribution(Distributions.EXPONENTIAL, values.get("csc"), SEED, values.get("trials"), false); //$NON-NLS-1$ //$NON-NLS-2$
+				distribution.setTimestep(1);
+				distribution.build();
+			}
+
+			public Object run() {
+				distribution.regenerate();
+				return distribution;
+			}
+		});
+		benchmarks.add(new Benchmark("export.table", "csc", "trials") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			private SimModel model;
+			private File file;
+			private long cells;
+
+			public void setUp(Map<String, Integer> values) throws Exception {
+				//Results of a compound design, exported as they would be after a run
+				SimPhase phase = design(values.get("trials") + "AB+", false, false, false, false, values.get("csc"), 1); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				phase.runSimulator();
+				model = phase.getGroup().getModel();
+				if(file == null) {
+					file = File.createTempFile("export", ".csv"); //$NON-NLS-1$ //$NON-NLS-2$
+					file.deleteOnExit();
+				}
+				cells = export().getRowsWritten()*SimTableExport.COLUMNS;
+			}
+
+			public Object run() throws Exception {
+				return export();
+			}
+
+			private ModelControl export() throws IOException {
+				ModelControl control = new ModelControl();
+				SimTableExport export = new SimTableExport(model, file, true);
+				export.setControl(control);
+				export.doExport();
+				return control;
+			}
+
+			public long getItems() {
+				return cells;
+			}
+
+			public String getItemName() {
+				return "cells"; //$NON-NLS-1$
+			}
+		});
+		benchmarks.add(new SpreadsheetBenchmark("export.xlsx", false)); //$NON-NLS-1$
+		benchmarks.add(new SpreadsheetBenchmark("export.xlsx.rows", true)); //$NON-NLS-1$
+		return benchmarks;
+	}
+
+	/**
+	 * Timings of cues A and B, A forward paired with the US.
+	 * @param csc mean CS duration in timesteps.
+	 * @param variable whether the duration of A varies.
+	 * @return the timings.
+	 */
+
+	private static TimingConfiguration timings(int csc, boolean variable) {
+		TimingConfiguration timings = new TimingConfiguration(1);
+		timings.setStimuli(Arrays.asList("A", "B")); //$NON-NLS-1$ //$NON-NLS-2$
+		if(variable) {
+			timings.addOnset("A", csc, csc/4f, SEED); //$NON-NLS-1$
+		} else {
+			timings.addOnset("A", csc); //$NON-NLS-1$
+		}
+		timings.addOnset("B", csc); //$NON-NLS-1$
+		timings.addUSConfig("A", Relationship.FORWARD, 0); //$NON-NLS-1$
+		timings.addUSConfig("B", Relationship.FORWARD, 0); //$NON-NLS-1$
+		timings.reset();
+		return timings;
+	}
+
+	/**
+	 * A model of one group with one phase, ready to run.
+	 * @param sequence trials of the phase.
+	 * @param random whether the trials are shuffled.
+	 * @param configurals whether compounds have configural cues.
+	 * @param context whether a context is used.
+	 * @param variable whether the duration of A varies.
+	 * @param csc mean CS duration in timesteps.
+	 * @param combinations random or variable combinations averaged.
+	 * @return the phase.
+	 */
+
+	static SimPhase design(String sequence, boolean random, boolean configurals, boolean context, boolean variable, int csc, int combinations) {
+		SimModel model = design(1, sequence, random, configurals, context, variable, csc, combinations);
+		return model.getGroups().values().iterator().next().getPhases().get(0);
+	}
+
+	/**
+	 * A model of several groups, each with the same one phase, ready to run.
+	 * @param groups number of groups.
+	 * @return the model.
+	 * @see #design(String, boolean, boolean, boolean, boolean, int, int)
+	 */
+
+	static SimModel design(int groups, String sequence, boolean random, boolean configurals, boolean context, boolean variable, int csc, int combinations) {
+		SimModel model = new SimModel();
+		model.setGroupNo(groups);
+		model.setPhaseNo(1);
+		model.setUseContext(context);
+		model.setVariableCombinationNo(combinations);
+		model.reinitialize();
+		for(int g = 1; g <= groups; g++) {
+			SimGroup group = new SimGroup("Group " + g, 1, combinations, model); //$NON-NLS-1$
+			ContextConfig contextConfig = context ? new ContextConfig(ContextConfig.Context.PHI, 0.1) : ContextConfig.EMPTY;
+			group.addPhase(sequence, random, 1, configurals, (TreeMap<String, String>) model.getConfigCuesNames(),
+					timings(csc, variable), new ITIConfig(csc, csc, 0, false, Distributions.EXPONENTIAL), contextConfig);
+			model.addGroupIntoMap(group.getNameOfGroup(), group);
+		}
+		model.addValuesIntoMap();
+		for(String cue : new ArrayList<String>(model.getCueNames())) {
+			if(cue.length() == 1) {
+				model.getValues().put(cue, 0.3);
+			}
+		}
+		model.getValues().put("lambda+ p1", 1.0); //$NON-NLS-1$
+		model.getValues().put("lambda- p1", 0.0); //$NON-NLS-1$
+		model.getValues().put("beta+ p1", 0.4); //$NON-NLS-1$
+		model.getValues().put("beta- p1", 0.2); //$NON-NLS-1$
+		model.getValues().put("gamma p1", 0.95); //$NON-NLS-1$
+		model.getValues().put("delta p1", 0.9); //$NON-NLS-1$
+		model.updateValuesOnGroups();
+		model.setUseContext(context);
+		model.setControl(new ModelControl());
+		return model;
+	}
+
+	/**
+	 * @param args options, then a pattern matching the cases to run.
+	 * @throws Exception if a case fails.
+	 */
+
+	public static void main(String[] args) throws Exception {
+		int warmups = 3;
+		int iterations = 5;
+		long millis = 1000;
+		boolean list = false;
+		Pattern pattern = Pattern.compile(""); //$NON-NLS-1$
+		Map<String, int[]> parameters = new LinkedHashMap<String, int[]>();
+		parameters.put("csc", new int[] {10, 50}); //$NON-NLS-1$
+		parameters.put("trials", new int[] {50}); //$NON-NLS-1$
+		parameters.put("combinations", new int[] {20}); //$NON-NLS-1$
+		try {
+			for(int i = 0; i < args.length; i++) {
+				if(args[i].equals("-wi")) { //$NON-NLS-1$
+					warmups = Integer.parseInt(args[++i]);
+				} else if(args[i].equals("-i")) { //$NON-NLS-1$
+					iterations = Math.max(1, Integer.parseInt(args[++i]));
+				} else if(args[i].equals("-t")) { //$NON-NLS-1$
+					millis = Long.parseLong(args[++i]);
+				} else if(args[i].equals("-p")) { //$NON-NLS-1$
+					String[] parameter = args[++i].split("=", 2); //$NON-NLS-1$
+					if(parameter.length != 2 || !parameters.containsKey(parameter[0])) {
+						usage("Expected -p csc|trials|combinations=value,... but got " + args[i]); //$NON-NLS-1$
+					}
+					String[] values = parameter[1].split(","); //$NON-NLS-1$
+					int[] parsed = new int[values.length];
+					for(int j = 0; j < values.length; j++) {
+						parsed[j] = Integer.parseInt(values[j].trim());
+					}
+					parameters.put(parameter[0], parsed);
+				} else if(args[i].equals("-l")) { //$NON-NLS-1$
+					list = true;
+				} else {
+					pattern = Pattern.compile(args[i]);
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			usage("Missing the value of " + args[args.length - 1]); //$NON-NLS-1$
+		} catch (NumberFormatException e) {
+			usage("Not a number: " + e.getMessage()); //$NON-NLS-1$
+		} catch (PatternSyntaxException e) {
+			usage(e.getMessage());
+		}
+		if(!list) {
+			System.out.println(String.format("%-24s %-36s %4s %14s    %12s  %s", //$NON-NLS-1$
+					"Benchmark", "Parameters", "Cnt", "Score", "Error", "Units")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		}
+		for(Benchmark benchmark : benchmarks()) {
+			if(!pattern.matcher(benchmark.getName()).find()) {
+				continue;
+			}
+			if(list) {
+				System.out.println(benchmark.getName() + " " + benchmark.getParameters()); //$NON-NLS-1$
+				continue;
+			}
+			for(Map<String, Integer> values : combinations(benchmark.getParameters(), parameters)) {
+				benchmark.setUp(values);
+				for(int i = 0; i < warmups; i++) {
+					benchmark.measure(millis);
+				}
+				double[] scores = new double[iterations];
+				for(int i = 0; i < iterations; i++) {
+					double nanos = benchmark.measure(millis);
+					scores[i] = benchmark.getItems() > 0 ? benchmark.getItems()*1e9/nanos : nanos/1000;
+				}
+				double mean = 0;
+				for(double score : scores) {
+					mean += score/iterations;
+				}
+				double variance = 0;
+				for(double score : scores) {
+					variance += (score - mean)*(score - mean)/Math.max(1, iterations - 1);
+				}
+				System.out.println(String.format("%-24s %-36s %4d %,14.3f +- %,12.3f  %s", //$NON-NLS-1$
+						benchmark.getName(), values.toString(), iterations, mean, Math.sqrt(variance),
+						benchmark.getItems() > 0 ? benchmark.getItemName() + "/s" : "us/op")); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Report a mistake in the options and exit.
+	 * @param message what was wrong.
+	 */
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println("Usage: SimulationBenchmarks [-wi warmups] [-i iterations] [-t millis] " //$NON-NLS-1$
+				+ "[-p parameter=value,...] [-l] [pattern]"); //$NON-NLS-1$
+		System.exit(2);
+	}
+
+	/**
+	 * @param names parameters a case depends on.
+	 * @param parameters values of every parameter.
+	 * @return every combination of the values of the named parameters.
+	 */
+
+	private static List<Map<String, Integer>> combinations(List<String> names, Map<String, int[]> parameters) {
+		List<Map<String, Integer>> combinations = new ArrayList<Map<String, Integer>>();
+		combinations.add(new LinkedHashMap<String, Integer>());
+		for(String name : names) {
+			List<Map<String, Integer>> extended = new ArrayList<Map<String, Integer>>();
+			for(Map<String, Integer> combination : combinations) {
+				for(int value : parameters.get(name)) {
+					Map<String, Integer> values = new LinkedHashMap<String, Integer>(combination);
+					values.put(name, value);
+					extended.add(values);
+				}
+			}
+			combinations = extended;
+		}
+		return combinations;
+	}
+}
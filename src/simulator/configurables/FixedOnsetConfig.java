@@ -73,4 +73,12 @@ public class FixedOnsetConfig implements StimulusOnsetConfig, Serializable  {
 		// Does nothing here
 		
 	}
+
+	/* (non-Javadoc)
+	 * @see simulator.configurables.StimulusOnsetConfig#reseed(long)
+	 */
+	@Override
+	public void reseed(long seed) {
+		// Does nothing here
+	}
 }
@@ -149,10 +149,21 @@ public class ITIConfig implements Serializable {
 		varied.build();
 	}
 
+	public void setTimestep(double timestep) {
+		varied.setTimestep(timestep);
+	}
+
 	public void reset() {
 		varied.build();
 		varied.setIndex(0);
 	}
+
+	/**
+	 * @param seed seed for reshuffling the intervals.
+	 */
+	public void reseed(long seed) {
+		varied.reseed(seed);
+	}
 	
 	/**
 	 * @return the type of mean in use.
@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.TreeMap;
 
 import simulator.util.Distributions;
@@ -173,6 +174,19 @@ public class OnsetConfig implements Serializable {
 		}
 	}
 
+	/**
+	 * 
+	 * @param timestep length of a timestep in the model using these onsets.
+	 */
+	
+	public void setTimestep(double timestep) {
+		for(StimulusOnsetConfig onset : onsets.values()) {
+			if(!onset.isFixed()) {
+				((VariableOnsetConfig)onset).setTimestep(timestep);
+			}
+		}
+	}
+
 	/**
 	 * @return the type of mean in use.
 	 */
@@ -258,6 +272,16 @@ public class OnsetConfig implements Serializable {
 		}
 	}
 
+	/**
+	 * Give every stimulus its own stream of reshuffles.
+	 * @param random source of the seeds, drawn in stimulus order.
+	 */
+	public void reseed(Random random) {
+		for(StimulusOnsetConfig onset : onsets.values()) {
+			onset.reseed(random.nextLong());
+		}
+	}
+
 	/**
 	 * @return
 	 */
@@ -43,4 +43,10 @@ public interface StimulusOnsetConfig {
 	 * Reshuffle the durations.
 	 */
 	public void regenerate();
+
+	/**
+	 * Start a new stream of reshuffles.
+	 * @param seed seed for the reshuffles.
+	 */
+	public void reseed(long seed);
 }
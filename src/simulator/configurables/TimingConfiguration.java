@@ -5,7 +5,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.Random;
 
 import simulator.Simulator;
 import simulator.configurables.ContextConfig.Context;
@@ -132,6 +132,10 @@ public class TimingConfiguration implements Serializable {
 		durations.setTrials(trials);
 	}
 
+	public void setTimestep(double timestep) {
+		durations.setTimestep(timestep);
+	}
+
 	public Double next(String cue) {
 		return durations.next(cue);
 	}
@@ -141,16 +145,17 @@ public class TimingConfiguration implements Serializable {
 	}
 	
 	/**
-	 * Produce a map of timings for stimuli & US given the set of constraints on
-	 * CS relationships to US.
-	 * @param set Cues to produce timings for.
-	 * @return a map of cues -> start/end timestep.
+	 * Produce the timings for a trial given the set of constraints on
+	 * CS relationships to US, and write them into a row of a timing table.
+	 * Contexts are present for the whole trial.
+	 * @param cues names of the cues present in the trial.
+	 * @param multiplier length of a timestep in seconds.
+	 * @param row array to write the timings into.
+	 * @param offset start of the row in the array.
 	 */
 	
-	public Map<String, int[]> makeTimings(Set<Character> set) {
-		Map<String, int[]> timings = new HashMap<String, int[]>();
-		
-		double multiplier = Simulator.getController().getModel().getTimestepSize();
+	void fillTimings(String cues, double multiplier, int[] row, int offset) {
+		int base = offset + TimingTable.CUES;
 		
 		//Relative positions about t0
 		double start;
@@ -159,7 +164,18 @@ public class TimingConfiguration implements Serializable {
 		double maxStart = Double.NEGATIVE_INFINITY;
 		double maxEnd = Double.NEGATIVE_INFINITY;
 		double minEnd = Double.POSITIVE_INFINITY;
-		for(Character cue : set) {
+		double meanOfMeans = 0;
+		int count = 0;
+		for(int y = 0; y < cues.length(); y++) {
+			char cue = cues.charAt(y);
+			//Repeated cues share the timings of their first occurrence
+			if(cues.indexOf(cue) < y) {
+				continue;
+			}
+			if(durations.getMap().containsKey(cue + "")) {
+				meanOfMeans += durations.getMean(cue + "");
+				count++;
+			}
 			//Non-configurals only
 			if(Character.isUpperCase(cue) && !Context.isContext(cue+"")) {
 				USConfiguration relation = relations.get(cue + "");
@@ -180,47 +196,96 @@ public class TimingConfiguration implements Serializable {
 				}
 				start = Math.round(start/multiplier);
 				end = Math.round(end/multiplier);
-				timings.put(cue + "", new int[]{(int) start, (int) end});
+				row[base + 2*y] = (int) start;
+				row[base + 2*y + 1] = (int) end;
 				minStart = Math.min(start, minStart);
 				maxStart = Math.max(start, maxStart);
 				maxEnd = Math.max(maxEnd, end);
 				minEnd = Math.min(minEnd, end);
 			}
 		}
-		double meanOfMeans = 0;
-		int count = 0;
-		for(Character lookup : set) {
-			try {
-				meanOfMeans += durations.getMean(lookup + "");
-				count++;
-			} catch (NullPointerException e) {
-				//Ignore omega having no duration.
-			}
-		}
 		meanOfMeans /= count;
 		meanOfMeans = Math.round(meanOfMeans/multiplier);
-		//Configurals
-		for(Character cue : set) {
-			if (Character.isLowerCase(cue)) {
-				timings.put(cue + "", new int[]{(int) maxStart, (int) minEnd});
+		for(int y = 0; y < cues.length(); y++) {
+			char cue = cues.charAt(y);
+			int first = cues.indexOf(cue);
+			if(first < y) {
+				row[base + 2*y] = row[base + 2*first];
+				row[base + 2*y + 1] = row[base + 2*first + 1];
+			} else if(Context.isContext(cue+"")) {
+				row[base + 2*y] = 0;
+				row[base + 2*y + 1] = Integer.MAX_VALUE;
+			} else {
+				//Configurals
+				if (Character.isLowerCase(cue)) {
+					row[base + 2*y] = (int) maxStart;
+					row[base + 2*y + 1] = (int) minEnd;
+				}
+				//Shift so to start from t0
+				row[base + 2*y] += -minStart;
+				row[base + 2*y + 1] += -minStart;
 			}
 		}
-				
-		//Shift so to start from t0
-		for(int[] timing : timings.values()) {
-			timing[0] += -minStart;
-			timing[1] += -minStart;
-		}
 		//Add total cs length
-		timings.put("CS_Total", new int[]{0,(int) (-minStart+maxEnd)});
+		row[offset + TimingTable.CS_TOTAL] = (int) (-minStart+maxEnd);
 		maxEnd = Math.max(getUsDuration(), maxEnd);
-		timings.put(Simulator.OMEGA+"", new int[]{0, (int) meanOfMeans});
+		row[offset + TimingTable.CONTEXT] = (int) meanOfMeans;
 		//Add US timings
-		timings.put("US", new int[]{(int) -minStart, (int) Math.round(-minStart+(getUsDuration()/multiplier))});
+		row[offset + TimingTable.US_ONSET] = (int) -minStart;
+		row[offset + TimingTable.US_OFFSET] = (int) Math.round(-minStart+(getUsDuration()/multiplier));
 		//Add total length
-		timings.put("Total", new int[]{0,(int) (-minStart+maxEnd)});
-		
-		return timings;
+		row[offset + TimingTable.TOTAL] = (int) (-minStart+maxEnd);
+	}
+
+	/**
+	 * Work out the expected start and end of the CS period and the total
+	 * trial length using the mean durations of the configured stimuli.
+	 * @return an array holding the mean CS length and mean trial length in seconds.
+	 */
+	
+	private double[] meanLengths() {
+		double minStart = 0;
+		double maxEnd = 0;
+		for(Entry<String, USConfiguration> entry : relations.entrySet()) {
+			String cue = entry.getKey();
+			if(!durations.getMap().containsKey(cue) || Context.isContext(cue)) {
+				continue;
+			}
+			USConfiguration relation = entry.getValue();
+			double mean = durations.getMap().get(cue).getMean();
+			double start;
+			switch(relation.getType()) {
+			case FORWARD:
+				start = -relation.getOffset();
+				break;
+			case BACKWARD:
+				start = relation.getOffset() + getUsDuration();
+				break;
+			case SIMULTANEOUS:
+			default:
+				start = -relation.getOffset();
+				break;
+			}
+			minStart = Math.min(minStart, start);
+			maxEnd = Math.max(maxEnd, start + mean);
+		}
+		return new double[]{maxEnd - minStart, Math.max(maxEnd, getUsDuration()) - minStart};
+	}
+	
+	/**
+	 * @return the expected length in seconds of the CS period of a trial.
+	 */
+	
+	public double meanCSLength() {
+		return meanLengths()[0];
+	}
+	
+	/**
+	 * @return the expected length in seconds of a trial, excluding the ITI.
+	 */
+	
+	public double meanTrialLength() {
+		return meanLengths()[1];
 	}
 
 	/**
@@ -324,6 +389,15 @@ public class TimingConfiguration implements Serializable {
 		reset();
 	}
 
+	/**
+	 * Seed the reshuffles of every variable duration.
+	 * @param random source of the seeds.
+	 */
+	
+	public void reseed(Random random) {
+		durations.reseed(random);
+	}
+
 	/**
 	 * @return
 	 */
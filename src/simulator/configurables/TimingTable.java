@@ -0,0 +1,146 @@
+package simulator.configurables;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timings for every trial of a phase in timesteps, packed into a single int
+ * array with one row per trial. A row holds the US window, CS total, trial
+ * total, context length and ITI, followed by the onset and offset of each
+ * cue in the order they appear in the trial's name.
+ *
+ * When no duration is variable the timings of a trial depend only on its
+ * cues, so rows are worked out once per trial type and reused for every
+ * combination the table is built for.
+ */
+public class TimingTable {
+	/** Row layout. **/
+	static final int US_ONSET = 0, US_OFFSET = 1, CS_TOTAL = 2, TOTAL = 3, CONTEXT = 4, ITI = 5, CUES = 6;
+	/** Timing configuration rows are generated from. **/
+	private final TimingConfiguration timings;
+	/** ITI configuration. **/
+	private final ITIConfig itis;
+	/** Length of a timestep in seconds. **/
+	private final double timestepSize;
+	/** Rows of fixed duration trials by trial name, null if durations are variable. **/
+	private final Map<String, int[]> fixedRows;
+	/** Packed rows. **/
+	private int[] table = new int[0];
+	/** Width of a row. **/
+	private int stride;
+
+	/**
+	 * @param timings timing configuration of the phase.
+	 * @param itis ITI configuration of the phase.
+	 * @param timestepSize length of a timestep in seconds.
+	 */
+
+	public TimingTable(TimingConfiguration timings, ITIConfig itis, double timestepSize) {
+		this.timings = timings;
+		this.itis = itis;
+		this.timestepSize = timestepSize;
+		fixedRows = timings.hasVariableDurations() ? null : new HashMap<String, int[]>();
+	}
+
+	/**
+	 * Fill in the timings for a sequence of trials, drawing the next
+	 * durations and ITIs from the configurations.
+	 * @param sequence trial names, including the trailing reinforcement sign.
+	 */
+
+	public void build(List<String> sequence) {
+		int maxCues = 0;
+		for(String trial : sequence) {
+			maxCues = Math.max(maxCues, trial.length() - 1);
+		}
+		stride = CUES + 2*maxCues;
+		if(table.length < stride*sequence.size()) {
+			table = new int[stride*sequence.size()];
+		}
+		int row = 0;
+		for(String trial : sequence) {
+			table[row + ITI] = (int) Math.round(itis.next()/timestepSize);
+			String cueNames = trial.substring(0, trial.length() - 1);
+			if(fixedRows == null) {
+				timings.fillTimings(cueNames, timestepSize, table, row);
+			} else {
+				int[] fixed = fixedRows.get(cueNames);
+				if(fixed == null) {
+					fixed = new int[CUES + 2*cueNames.length()];
+					timings.fillTimings(cueNames, timestepSize, fixed, 0);
+					fixedRows.put(cueNames, fixed);
+				}
+				System.arraycopy(fixed, US_ONSET, table, row, ITI);
+				System.arraycopy(fixed, CUES, table, row + CUES, fixed.length - CUES);
+			}
+			row += stride;
+		}
+	}
+
+	/**
+	 * @param trial trial index from 0
+	 * @return the first timestep of the US.
+	 */
+	public int getUSOnset(int trial) {
+		return table[trial*stride + US_ONSET];
+	}
+
+	/**
+	 * @param trial trial index from 0
+	 * @return the timestep after the US ends.
+	 */
+	public int getUSOffset(int trial) {
+		return table[trial*stride + US_OFFSET];
+	}
+
+	/**
+	 * @param trial trial index from 0
+	 * @return the number of timesteps from the first CS onset to the last CS offset.
+	 */
+	public int getCSTotal(int trial) {
+		return table[trial*stride + CS_TOTAL];
+	}
+
+	/**
+	 * @param trial trial index from 0
+	 * @return the length of the trial in timesteps, not including the ITI.
+	 */
+	public int getTotal(int trial) {
+		return table[trial*stride + TOTAL];
+	}
+
+	/**
+	 * @param trial trial index from 0
+	 * @return the number of timesteps before the context restarts.
+	 */
+	public int getContextLength(int trial) {
+		return table[trial*stride + CONTEXT];
+	}
+
+	/**
+	 * @param trial trial index from 0
+	 * @return the ITI following the trial in timesteps.
+	 */
+	public int getITI(int trial) {
+		return table[trial*stride + ITI];
+	}
+
+	/**
+	 * @param trial trial index from 0
+	 * @param cue position of the cue in the trial's name
+	 * @return the first timestep the cue is present.
+	 */
+	public int getOnset(int trial, int cue) {
+		return table[trial*stride + CUES + 2*cue];
+	}
+
+	/**
+	 * @param trial trial index from 0
+	 * @param cue position of the cue in the trial's name
+	 * @return the timestep after the cue ends.
+	 */
+	public int getOffset(int trial, int cue) {
+		return table[trial*stride + CUES + 2*cue + 1];
+	}
+}
@@ -111,6 +111,10 @@ public class VariableOnsetConfig implements StimulusOnsetConfig,Serializable  {
 		varDist.setTrials(trials);
 	}
 
+	public void setTimestep(double timestep) {
+		varDist.setTimestep(timestep);
+	}
+
 	/**
 	 * @return the isGeometric
 	 */
@@ -148,4 +152,12 @@ public class VariableOnsetConfig implements StimulusOnsetConfig,Serializable  {
 		varDist.regenerate();
 	}
 
+	/* (non-Javadoc)
+	 * @see simulator.configurables.StimulusOnsetConfig#reseed(long)
+	 */
+	@Override
+	public void reseed(long seed) {
+		varDist.reseed(seed);
+	}
+
 }
@@ -0,0 +1,138 @@
+package simulator.events;
+
+/**
+ * Marks the stretches of work the engine does, a model run down to the
+ * timings of one pass through a phase and the sheets of an export, so that
+ * profilers can tell them apart from other worker pool time. Each method
+ * starts a span that is ended when the work is done:
+ * <pre>
+ * EngineEvents.Span span = EngineEvents.get().phaseRun(group, phase, trials, random, timesteps, csc);
+ * try {
+ *     ...
+ * } finally {
+ *     span.end();
+ * }
+ * </pre>
+ * On a JVM with JDK Flight Recorder the spans are recorded as events in the
+ * <code>Simulator</code> category, see
+ * <code>simulator.events.jfr.FlightRecorderEvents</code> in src-jfr.
+ * Elsewhere, or in a build without that class, nothing is recorded and a
+ * span costs no more than a call.
+ */
+
+public class EngineEvents {
+	/** Name of the class recording to the flight recorder. **/
+	private static final String FLIGHT_RECORDER = "simulator.events.jfr.FlightRecorderEvents"; //$NON-NLS-1$
+
+	private static final EngineEvents instance = load();
+
+	/**
+	 * A stretch of work being recorded.
+	 */
+
+	public static class Span {
+		/** Span that records nothing. **/
+		public static final Span NONE = new Span();
+
+		protected Span() {}
+
+		/**
+		 * The work is done.
+		 */
+
+		public void end() {}
+	}
+
+	protected EngineEvents() {}
+
+	/**
+	 * @return the events of this JVM, recording to the flight recorder when
+	 * there is one.
+	 */
+
+	public static EngineEvents get() {
+		return instance;
+	}
+
+	private static EngineEvents load() {
+		try {
+			Class.forName("jdk.jfr.FlightRecorder"); //$NON-NLS-1$
+			return (EngineEvents) Class.forName(FLIGHT_RECORDER).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			return new EngineEvents();
+		} catch (LinkageError e) {
+			//Recorder classes built for a later JVM than this one
+			return new EngineEvents();
+		}
+	}
+
+	/**
+	 * @param groups groups in the model.
+	 * @param phases phases in all the groups.
+	 * @param timesteps timesteps the run is estimated to simulate.
+	 * @return the span of a run of a model.
+	 */
+
+	public Span modelRun(int groups, int phases, long timesteps) {
+		return Span.NONE;
+	}
+
+	/**
+	 * @param group name of the group.
+	 * @param phases phases in the group.
+	 * @return the span of a run of a group's phases.
+	 */
+
+	public Span groupRun(String group, int phases) {
+		return Span.NONE;
+	}
+
+	/**
+	 * @param group name of the phase's group.
+	 * @param phase number of the phase, from 1.
+	 * @param trials trials in the phase.
+	 * @param random whether trials are run in random order.
+	 * @param timesteps timesteps the phase is estimated to simulate.
+	 * @param csc mean CS length in timesteps, the size of a CSC.
+	 * @return the span of a run of a phase, over all its combinations.
+	 */
+
+	public Span phaseRun(String group, int phase, int trials, boolean random, long timesteps, int csc) {
+		return Span.NONE;
+	}
+
+	/**
+	 * @param group name of the phase's group.
+	 * @param phase number of the phase, from 1.
+	 * @param combination number of the pass through the phase, from 1.
+	 * @param trials trials in the phase.
+	 * @return the span of one pass through a phase's trials.
+	 */
+
+	public Span combinationRun(String group, int phase, int combination, int trials) {
+		return Span.NONE;
+	}
+
+	/**
+	 * @param group name of the phase's group.
+	 * @param phase number of the phase, from 1.
+	 * @param trials trials the timings are made for.
+	 * @param variable whether any durations are drawn from distributions.
+	 * @return the span of making the timings of a pass through a phase.
+	 */
+
+	public Span timingGeneration(String group, int phase, int trials, boolean variable) {
+		return Span.NONE;
+	}
+
+	/**
+	 * @param format kind of export.
+	 * @param group name of the group exported.
+	 * @param phases phases in the group.
+	 * @return the span of exporting a group's results.
+	 */
+
+	public Span exportSheet(String format, String group, int phases) {
+		return Span.NONE;
+	}
+}
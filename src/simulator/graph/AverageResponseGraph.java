@@ -3,13 +3,6 @@
  */
 package simulator.graph;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.jfree.data.xy.XYSeries;
-
-import simulator.CueList;
-import simulator.SimCue;
 import simulator.SimModel;
 
 /**
@@ -29,31 +22,7 @@ public class AverageResponseGraph extends SimGraph {
 	 */
 	public AverageResponseGraph(String s, SimModel m, int phase,
 			boolean compound) {
-		super(s, m, phase, compound);
-	}
-	
-	/**
-	 * Plot the average response of a list of cues.
-	 */
-	
-	public XYSeries plot(String name, CueList alfa, int maxDuration) {
-		XYSeries tempXYSeries = new XYSeries(name);
-		try {
-			int vectorSize = alfa.getTrialCount();
-			for(int y = 0; y < vectorSize; y++) {
-				tempXYSeries.add(y+1, alfa.averageResponse(y));
-			}
-	} catch (NullPointerException e) {
-		
-	}
-		return tempXYSeries;
-	}
-	
-	public List<String> getLabel() {
-		List<String> labels = new ArrayList<String>();
-		labels.add("Response");
-		labels.add("Trial");
-		return labels;
+		super(s, m, phase, compound, GraphType.AVERAGE_RESPONSE);
 	}
 
 }
@@ -0,0 +1,177 @@
+package simulator.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+import javax.swing.SwingUtilities;
+
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.Simulator;
+
+/**
+ * Values behind the graphs of a model, built on the simulator's worker pool
+ * and kept for the graphs opened later. A graph is identified by its model,
+ * phase, type and whether it shows compounds; opening one that has been
+ * built before does not read the results again, as long as the results of
+ * the phase have not changed since in any group (see
+ * {@link simulator.SimPhase#getResultsVersion()}). Models are held weakly,
+ * so the data of a model that has been replaced goes with it. Only used on
+ * the event thread, graphs are told their data there too.
+ */
+
+public final class GraphCache {
+
+	/**
+	 * Series and the groups and cues they belong to for one graph. The
+	 * values are shared between the graphs showing them and not changed.
+	 */
+
+	static class Data {
+		/** Values of each series by series name, in drawing order. **/
+		final Map<String, double[]> series = new LinkedHashMap<String, double[]>();
+		/** Groups that take part in the phase. **/
+		final TreeSet<String> groups = new TreeSet<String>();
+		/** Interface names of the cues shown. **/
+		final TreeSet<String> cues = new TreeSet<String>();
+	}
+
+	/**
+	 * Identifies a graph of a model.
+	 */
+
+	private static class Key {
+		private final int phase;
+		private final GraphType type;
+		private final boolean compound;
+
+		Key(int phase, GraphType type, boolean compound) {
+			this.phase = phase;
+			this.type = type;
+			this.compound = compound;
+		}
+
+		public boolean equals(Object other) {
+			if(other instanceof Key) {
+				Key key = (Key) other;
+				return key.phase == phase && key.type == type && key.compound == compound;
+			}
+			return false;
+		}
+
+		public int hashCode() {
+			return (phase*31 + type.hashCode())*2 + (compound ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Data of a graph, or the graphs waiting for it while it is built.
+	 */
+
+	private static class Entry {
+		/** Versions of the phase's results in each group it was built from. **/
+		private final long[] versions;
+		private Data data;
+		private List<SimGraph> waiting = new ArrayList<SimGraph>();
+
+		Entry(long[] versions) {
+			this.versions = versions;
+		}
+	}
+
+	/** Graphs of each model, by the model. **/
+	private static final Map<SimModel, Map<Key, Entry>> models = new WeakHashMap<SimModel, Map<Key, Entry>>();
+
+	private GraphCache() {}
+
+	/**
+	 * Hand a graph its data, straight away if it has been built before from
+	 * the same results, otherwise once a worker has built it. Graphs asking
+	 * for data that is still being built wait for the same build.
+	 * @param graph graph to give the data to.
+	 * @param model model the results are from.
+	 * @param phase index of the phase.
+	 * @param compound whether compounds are shown.
+	 * @param type kind of graph.
+	 */
+
+	static void request(SimGraph graph, final SimModel model, final int phase, final boolean compound, final GraphType type) {
+		final Key key = new Key(phase, type, compound);
+		Map<Key, Entry> graphs = models.get(model);
+		if(graphs == null) {
+			graphs = new HashMap<Key, Entry>();
+			models.put(model, graphs);
+		}
+		final Map<Key, Entry> entries = graphs;
+		long[] versions = versions(model, phase);
+		final Entry found = entries.get(key);
+		if(found != null && Arrays.equals(found.versions, versions)) {
+			if(found.data != null) {
+				graph.dataReady(found.data);
+			} else {
+				found.waiting.add(graph);
+			}
+			return;
+		}
+		final Entry entry = new Entry(versions);
+		entry.waiting.add(graph);
+		entries.put(key, entry);
+		Simulator.fjPool.execute(new Runnable() {
+			public void run() {
+				Data built = null;
+				try {
+					built = type.buildData(model, phase, compound);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+				final Data data = built;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if(data == null || models.get(model) != entries || entries.get(key) != entry) {
+							//Failed or cleared while building, do not keep it
+							if(entries.get(key) == entry) {
+								entries.remove(key);
+							}
+						} else {
+							entry.data = data;
+						}
+						for(SimGraph waiting : entry.waiting) {
+							waiting.dataReady(data);
+						}
+						entry.waiting = null;
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * @param model a model.
+	 * @param phase index of a phase.
+	 * @return the versions of the phase's results in each group.
+	 */
+
+	private static long[] versions(SimModel model, int phase) {
+		long[] versions = new long[model.getGroups().size()];
+		int i = 0;
+		for(SimGroup group : model.getGroups().values()) {
+			versions[i++] = group.getPhases().get(phase).getResultsVersion();
+		}
+		return versions;
+	}
+
+	/**
+	 * Forget the data of every graph, when the model it was built from is
+	 * replaced.
+	 */
+
+	public static void clear() {
+		models.clear();
+	}
+}
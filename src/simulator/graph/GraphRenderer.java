@@ -0,0 +1,172 @@
+package simulator.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import simulator.ModelControl;
+import simulator.SimModel;
+import simulator.Simulator;
+import simulator.util.io.ExperimentReader;
+import extra166y.Ops;
+import extra166y.ParallelArray;
+
+/**
+ * Draws every graph of a model that has been run to PNG files, the same
+ * graphs the windows show for each phase, without opening any windows so it
+ * works under java.awt.headless. The graphs are drawn in parallel on the
+ * simulator's worker pool, each to its own file named by phase and graph,
+ * such as <code>phase02-trial.png</code>.
+ * <p>
+ * Run on its own it reads experiment files, runs them and draws the graphs
+ * of each into a directory named after the file:
+ * <pre>
+ * java -Djava.awt.headless=true simulator.graph.GraphRenderer figures a.tdx b.tdx
+ * </pre>
+ */
+
+public class GraphRenderer {
+	public static final int DEFAULT_WIDTH = 800;
+	public static final int DEFAULT_HEIGHT = 500;
+
+	/**
+	 * One graph to draw.
+	 */
+
+	private static class Job {
+		private final int phase;
+		private final GraphType type;
+
+		Job(int phase, GraphType type) {
+			this.phase = phase;
+			this.type = type;
+		}
+	}
+
+	private final File directory;
+	private final int width;
+	private final int height;
+
+	/**
+	 * @param directory directory to write the images to, made if missing.
+	 * @param width width of the images in pixels.
+	 * @param height height of the images in pixels.
+	 */
+
+	public GraphRenderer(File directory, int width, int height) {
+		this.directory = directory;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @param directory directory to write the images to, made if missing.
+	 */
+
+	public GraphRenderer(File directory) {
+		this(directory, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	/**
+	 * Draw the graphs of every phase of a model.
+	 * @param model model that has been run.
+	 * @param compound whether compounds are shown.
+	 * @return the files written, by phase and then graph.
+	 * @throws IOException if the directory cannot be made or an image
+	 * cannot be written.
+	 */
+
+	public List<File> render(final SimModel model, final boolean compound) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot make " + directory); //$NON-NLS-1$
+		}
+		List<Job> jobs = new ArrayList<Job>();
+		for(int phase = 0; phase < model.getPhaseNo(); phase++) {
+			for(GraphType type : GraphType.shownFor(model)) {
+				jobs.add(new Job(phase, type));
+			}
+		}
+		ParallelArray<Job> pool = ParallelArray.createEmpty(jobs.size(), Job.class, Simulator.fjPool);
+		pool.asList().addAll(jobs);
+		ParallelArray<Object> drawn = pool.withMapping(new Ops.Op<Job, Object>() {
+			public Object op(Job job) {
+				try {
+					return render(model, job.phase, job.type, compound);
+				} catch (IOException e) {
+					return e;
+				}
+			}
+		}).all(Object.class);
+		List<File> files = new ArrayList<File>(jobs.size());
+		for(Object result : drawn.asList()) {
+			if(result instanceof IOException) {
+				throw (IOException) result;
+			}
+			files.add((File) result);
+		}
+		return files;
+	}
+
+	/**
+	 * Draw one graph of a phase.
+	 * @param model model that has been run.
+	 * @param phase index of the phase.
+	 * @param type graph to draw.
+	 * @param compound whether compounds are shown.
+	 * @return the file written.
+	 * @throws IOException if the image cannot be written.
+	 */
+
+	public File render(SimModel model, int phase, GraphType type, boolean compound) throws IOException {
+		GraphCache.Data data = type.buildData(model, phase, compound);
+		XYSeriesCollection series = new XYSeriesCollection();
+		for(Map.Entry<String, double[]> values : data.series.entrySet()) {
+			SampledSeries sampled = new SampledSeries(values.getKey(), values.getValue());
+			sampled.sample(1, sampled.size(), width);
+			series.addSeries(sampled);
+		}
+		JFreeChart chart = SimGraph.createChart(type, series, data.groups, data.cues, compound);
+		XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) chart.getXYPlot().getRenderer();
+		for(int i = 0; i < series.getSeriesCount(); i++) {
+			renderer.setSeriesShapesVisible(i, series.getSeries(i).getItemCount() * SimGraph.SHAPE_SPACING <= width);
+		}
+		File file = new File(directory, String.format("phase%02d-%s.png", phase + 1, type.getFileName())); //$NON-NLS-1$
+		ChartUtilities.saveChartAsPNG(file, chart, width, height);
+		return file;
+	}
+
+	/**
+	 * @param args directory to draw into, then the experiment files to run.
+	 * @throws IOException if an experiment cannot be read or a graph written.
+	 */
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("Usage: GraphRenderer directory experiment..."); //$NON-NLS-1$
+			System.exit(1);
+		}
+		File directory = new File(args[0]);
+		for(int i = 1; i < args.length; i++) {
+			File experiment = new File(args[i]);
+			ExperimentReader reader = new ExperimentReader();
+			SimModel model = reader.read(experiment);
+			model.setControl(new ModelControl());
+			long start = System.currentTimeMillis();
+			model.startCalculations();
+			long ran = System.currentTimeMillis();
+			String name = experiment.getName().replaceFirst("\\.[^.]*$", ""); //$NON-NLS-1$ //$NON-NLS-2$
+			List<File> files = new GraphRenderer(new File(directory, name))
+					.render(model, Boolean.parseBoolean(reader.getSettings().get("compounds"))); //$NON-NLS-1$
+			System.out.println(experiment + ": ran in " + (ran - start) + " ms, drew " + files.size() //$NON-NLS-1$ //$NON-NLS-2$
+					+ " graphs in " + (System.currentTimeMillis() - ran) + " ms"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		System.exit(0);
+	}
+}
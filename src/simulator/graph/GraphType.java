@@ -0,0 +1,205 @@
+package simulator.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import simulator.CueList;
+import simulator.SimCue;
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.SimPhase;
+
+/**
+ * The kinds of graph drawn for a phase, and how each reads its series from
+ * the results. Nothing here touches Swing, so the data can be built on any
+ * thread and drawn into a window or straight to a file.
+ */
+
+public enum GraphType {
+	/** Mean CS values per trial. **/
+	TRIAL("trial", "Mean Associative Strength", "Trial") {
+		double[] values(CueList alfa, int maxDuration, double threshold) {
+			int vectorSize = alfa.getTrialCount();
+			double[] values = new double[vectorSize];
+			int y = 0;
+			try {
+				for(; y < vectorSize; y++) {
+					values[y] = alfa.averageAssoc(y);
+				}
+			} catch (NullPointerException e) {
+				return Arrays.copyOf(values, y);
+			}
+			return values;
+		}
+	},
+	/** CS values per component at the end of the phase. **/
+	COMPONENT("component", "Associative Strength", "Component") {
+		boolean drawStimulus(boolean compound, String cue) {
+			return super.drawStimulus(compound, cue) && !cue.contains("ω");
+		}
+
+		double[] values(CueList cues, int maxDuration, double threshold) {
+			double[] values = new double[Math.max(0, Math.min(cues.size(), maxDuration))];
+			int y = 0;
+			try {
+				for (; y < values.length; y ++) {
+					SimCue cue = cues.get(y);
+					values[y] = cue.getAssocValueAt(cue.numTrials()-2);
+				}
+			} catch (NullPointerException e) {
+				return Arrays.copyOf(values, y);
+			}
+			return values;
+		}
+	},
+	/** Simulated response over time. **/
+	RESPONSE("response", "Response", "Time") {
+		double[] values(CueList cues, int maxDuration, double threshold) {
+			double[] values = new double[Math.max(0, Math.min(cues.size(), maxDuration))];
+			int y = 0;
+			try {
+				for (; y < values.length; y ++) {
+					values[y] = cues.getResponse(threshold, y);
+				}
+			} catch (NullPointerException e) {
+				return Arrays.copyOf(values, y);
+			}
+			return values;
+		}
+	},
+	/** Average simulated response per trial. **/
+	AVERAGE_RESPONSE("average-response", "Response", "Trial") {
+		double[] values(CueList alfa, int maxDuration, double threshold) {
+			int vectorSize = alfa.getTrialCount();
+			double[] values = new double[vectorSize];
+			int y = 0;
+			try {
+				for(; y < vectorSize; y++) {
+					values[y] = alfa.averageResponse(y);
+				}
+			} catch (NullPointerException e) {
+				return Arrays.copyOf(values, y);
+			}
+			return values;
+		}
+	};
+
+	/** Separates group and cue in series names. **/
+	static final String CUE_SEP = " - ";
+
+	private final String fileName;
+	private final String rangeLabel;
+	private final String domainLabel;
+
+	private GraphType(String fileName, String rangeLabel, String domainLabel) {
+		this.fileName = fileName;
+		this.rangeLabel = rangeLabel;
+		this.domainLabel = domainLabel;
+	}
+
+	/**
+	 * @return a short name for files holding this graph.
+	 */
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return the range and domain axis labels.
+	 */
+
+	public List<String> getLabel() {
+		List<String> labels = new ArrayList<String>();
+		labels.add(rangeLabel);
+		labels.add(domainLabel);
+		return labels;
+	}
+
+	/**
+	 * @param model a model that has been run.
+	 * @return the graphs that are drawn for its phases.
+	 */
+
+	public static List<GraphType> shownFor(SimModel model) {
+		List<GraphType> types = new ArrayList<GraphType>();
+		types.add(TRIAL);
+		if(model.showResponse() && model.isCSC()) {
+			types.add(RESPONSE);
+			types.add(AVERAGE_RESPONSE);
+		}
+		if(model.isCSC()) {
+			types.add(COMPONENT);
+		}
+		return types;
+	}
+
+	/**
+	 * @param compound whether compounds are shown.
+	 * @param cue cue symbol.
+	 * @return true if the cue has a series in this graph.
+	 */
+
+	boolean drawStimulus(boolean compound, String cue) {
+		return (compound || (!compound && cue.length()==1));
+	}
+
+	/**
+	 * Values to plot for a cue.
+	 * @param cues results of the cue.
+	 * @param maxDuration longest trial of the phase.
+	 * @param threshold response threshold of the model.
+	 * @return the values, plotted from x = 1.
+	 */
+
+	abstract double[] values(CueList cues, int maxDuration, double threshold);
+
+	/**
+	 * Read the series, groups and cues of the graph of a phase from the
+	 * results.
+	 * @param m the experiment's model.
+	 * @param phase index of the phase.
+	 * @param compound whether compounds are shown.
+	 * @return the graph's data.
+	 */
+
+	GraphCache.Data buildData(SimModel m, int phase, boolean compound) {
+		GraphCache.Data data = new GraphCache.Data();
+		Map<String,SimGroup> groupMap = m.getGroups();
+		TreeSet<String> cueMap = new TreeSet<String>(); // all the cues in all the groups in all the phases
+
+		// Alberto Fernandez Nov-2011: iterate first cues, then groups, so as to keep the same colors along different groups
+		for (String cueName: m.getListAllCues()) {
+			String interfaceName = m.cueName2InterfaceName(cueName);
+			for (SimGroup group : groupMap.values()) {
+				SimPhase thisPhase = group.getPhases().get(phase);
+				if (!thisPhase.intialSequence().equals("0")) { // AF Oct-2011
+					data.groups.add(group.getNameOfGroup());
+					if (thisPhase.isCueInStimuli(cueName)) {
+						String seriesName = group.getNameOfGroup() + CUE_SEP + interfaceName;
+						if (drawStimulus(compound, cueName) && !data.series.containsKey(seriesName)) {
+							CueList alfa = thisPhase.getResults().get(cueName);
+							data.series.put(seriesName, alfa == null ? new double[0]
+									: values(alfa, thisPhase.getMaxDuration(), m.getThreshold()));
+						}
+						cueMap.add(cueName);
+					}
+				}
+			}
+		}
+
+		// selectedCues only with the cues that are taking part in the phase
+		for (SimGroup group : groupMap.values()) {
+			SimPhase pha = group.getPhases().get(phase);
+			for (String cue: cueMap) {
+				if (pha.isCueInStimuli(cue) && drawStimulus(compound, cue)) {
+					data.cues.add(m.cueName2InterfaceName(cue));
+				}
+			}
+		}
+		return data;
+	}
+}
@@ -0,0 +1,223 @@
+package simulator.graph;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JFrame;
+import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import simulator.ResultSink;
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.util.SnapshotRing;
+
+/**
+ * Window showing the mean CS values per trial while the model runs, one tab
+ * per phase. It is the model's result sink for the run: each group passes
+ * on at most one trial every {@link #INTERVAL} milliseconds, through a
+ * lock-free ring, so the simulation threads never wait on the interface.
+ * Whatever has arrived is added to the charts in one go on the event
+ * thread. Phases that average several runs only report their trials once
+ * the phase is done, and some of those are skipped; the full results are
+ * in the usual graphs once the run has finished.
+ */
+
+public class LiveGraph extends JFrame implements ResultSink {
+	private static final long serialVersionUID = 7628347163310552098L;
+	/** Least milliseconds between two trials shown for a group. **/
+	public static final long INTERVAL = 50;
+	/** Trials that may wait to be drawn. **/
+	private static final int CAPACITY = 1 << 14;
+	private static final String CUE_SEP = " - "; //$NON-NLS-1$
+
+	/**
+	 * Mean CS value of a cue after a trial.
+	 */
+
+	private static class Point {
+		private final SimGroup group;
+		private final int phase;
+		private final String cue;
+		private final int trial;
+		private final double weight;
+
+		Point(SimGroup group, int phase, String cue, int trial, double weight) {
+			this.group = group;
+			this.phase = phase;
+			this.cue = cue;
+			this.trial = trial;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Which trial a group is on and whether it is passed on, only used by
+	 * the thread running the group.
+	 */
+
+	private static class GroupClock {
+		private int phase;
+		private int trial;
+		private boolean shown;
+		private long last;
+	}
+
+	private final SimModel model;
+	private final boolean compound;
+	private final SnapshotRing<Point> ring = new SnapshotRing<Point>(CAPACITY);
+	private final Map<SimGroup, GroupClock> clocks = new ConcurrentHashMap<SimGroup, GroupClock>();
+	/** Whether a drain is waiting on the event thread. **/
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final Runnable drain = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+	private volatile boolean closed;
+
+	//Used on the event thread only
+	private final JTabbedPane tabs = new JTabbedPane();
+	private final Map<Integer, JFreeChart> charts = new HashMap<Integer, JFreeChart>();
+	private final Map<String, XYSeries> series = new HashMap<String, XYSeries>();
+	private final List<Point> points = new ArrayList<Point>();
+
+	/**
+	 * @param title frame's title.
+	 * @param model model about to be run.
+	 * @param compound true to show compound cues too.
+	 */
+
+	public LiveGraph(String title, SimModel model, boolean compound) {
+		super(title);
+		this.model = model;
+		this.compound = compound;
+		getContentPane().setLayout(new BorderLayout());
+		getContentPane().add(tabs, BorderLayout.CENTER);
+		tabs.setPreferredSize(new Dimension(500, 300));
+	}
+
+	public void trialStored(SimGroup group, int phase, String cue, int trial, double weight, double response) {
+		if(closed || !(compound || cue.length() == 1)) {
+			return;
+		}
+		GroupClock clock = clocks.get(group);
+		if(clock == null) {
+			clock = new GroupClock();
+			clocks.put(group, clock);
+		}
+		if(clock.phase != phase || clock.trial != trial) {
+			long now = System.currentTimeMillis();
+			clock.shown = clock.phase != phase || trial == 1 || now - clock.last >= INTERVAL;
+			if(clock.shown) {
+				clock.last = now;
+			}
+			clock.phase = phase;
+			clock.trial = trial;
+		}
+		if(clock.shown) {
+			ring.offer(new Point(group, phase, cue, trial, weight));
+			if(scheduled.compareAndSet(false, true)) {
+				SwingUtilities.invokeLater(drain);
+			}
+		}
+	}
+
+	/**
+	 * Draw whatever is left once the run is over.
+	 */
+
+	public void finish() {
+		closed = true;
+		if(scheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(drain);
+		}
+	}
+
+	public void dispose() {
+		closed = true;
+		super.dispose();
+	}
+
+	/**
+	 * Add the trials that have arrived to their series, redrawing each
+	 * chart once.
+	 */
+
+	private void drain() {
+		scheduled.set(false);
+		ring.drainTo(points);
+		List<JFreeChart> changedCharts = new ArrayList<JFreeChart>();
+		Set<XYSeries> changedSeries = new LinkedHashSet<XYSeries>();
+		for(Point point : points) {
+			JFreeChart chart = chart(point.phase);
+			if(chart.isNotify()) {
+				chart.setNotify(false);
+				changedCharts.add(chart);
+			}
+			XYSeries line = series(chart, point);
+			line.add(point.trial, point.weight, false);
+			changedSeries.add(line);
+		}
+		points.clear();
+		for(XYSeries line : changedSeries) {
+			line.fireSeriesChanged();
+		}
+		for(JFreeChart chart : changedCharts) {
+			chart.setNotify(true);
+		}
+	}
+
+	private JFreeChart chart(int phase) {
+		JFreeChart chart = charts.get(phase);
+		if(chart == null) {
+			chart = ChartFactory.createXYLineChart("", "Trial", "Mean Associative Strength", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					new XYSeriesCollection(), PlotOrientation.VERTICAL, true, true, false);
+			XYPlot plot = chart.getXYPlot();
+			((NumberAxis) plot.getDomainAxis()).setStandardTickUnits(NumberAxis.createIntegerTickUnits());
+			plot.setBackgroundPaint(null);
+			plot.setDomainGridlinePaint(Color.black);
+			plot.setRangeGridlinePaint(Color.black);
+			//Keep the tabs in phase order whichever phase reports first
+			int index = 0;
+			for(int other : charts.keySet()) {
+				if(other < phase) {
+					index++;
+				}
+			}
+			charts.put(phase, chart);
+			tabs.insertTab("Phase " + phase, null, new ChartPanel(chart), null, index); //$NON-NLS-1$
+		}
+		return chart;
+	}
+
+	private XYSeries series(JFreeChart chart, Point point) {
+		String name = point.group.getNameOfGroup() + CUE_SEP + point.group.interfaceName(point.cue, model.getConfigCuesNames());
+		String key = point.phase + CUE_SEP + name;
+		XYSeries found = series.get(key);
+		if(found == null) {
+			found = new XYSeries(name, false, true);
+			series.put(key, found);
+			((XYSeriesCollection) chart.getXYPlot().getDataset()).addSeries(found);
+		}
+		return found;
+	}
+}
@@ -0,0 +1,132 @@
+package simulator.graph;
+
+import org.jfree.data.xy.XYSeries;
+
+/**
+ * A chart series over trials or components that keeps all of its values but
+ * only shows as many points as the chart can draw. The values are plotted
+ * at x = 1, 2, ... n. The points shown for a domain range are picked with
+ * largest-triangle-three-buckets downsampling, which keeps the peaks and
+ * turns of the curve, and the first and last values are always kept so the
+ * series reports the same bounds however it is sampled.
+ */
+
+public class SampledSeries extends XYSeries {
+	private static final long serialVersionUID = 59672874677465609L;
+	/** Points shown before the chart knows its width. **/
+	public static final int DEFAULT_POINTS = 1024;
+
+	/** Every value of the series, the point at x is values[x-1]. **/
+	private final double[] values;
+	/** Window and number of points last sampled. **/
+	private int from = -1, to = -1, points = -1;
+
+	/**
+	 * @param key name of the series.
+	 * @param values values to plot from x = 1.
+	 */
+
+	public SampledSeries(Comparable<?> key, double[] values) {
+		super(key, false, true);
+		this.values = values;
+		sample(1, values.length, DEFAULT_POINTS);
+	}
+
+	/**
+	 * @return the number of values in the series, shown or not.
+	 */
+
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Show the values between two x values, downsampled to a number of
+	 * points, with a single change event for the lot. One value either side
+	 * of the range is included so lines run to the edges of the plot.
+	 * @param lower lowest x to show.
+	 * @param upper highest x to show.
+	 * @param points number of points to show in the range.
+	 * @return true if the points shown changed.
+	 */
+
+	public boolean sample(double lower, double upper, int points) {
+		int n = values.length;
+		int first = (int) Math.max(0, Math.min(n, Math.floor(lower) - 2));
+		int last = (int) Math.max(first, Math.min(n, Math.ceil(upper) + 1));
+		if(first == from && last == to && points == this.points) {
+			return false;
+		}
+		from = first;
+		to = last;
+		this.points = points;
+		setNotify(false);
+		clear();
+		if(first > 0) {
+			add(1, values[0], false);
+		}
+		for(int i : lttb(values, first, last, points)) {
+			add(i + 1, values[i], false);
+		}
+		if(last < n) {
+			add(n, values[n - 1], false);
+		}
+		setNotify(true);
+		return true;
+	}
+
+	/**
+	 * Largest-triangle-three-buckets: split the values into buckets and
+	 * from each keep the one that makes the largest triangle with the value
+	 * kept from the bucket before and the average of the bucket after.
+	 * @param values values, at x equal to their index.
+	 * @param from first index to sample.
+	 * @param to index after the last to sample.
+	 * @param threshold number of indices to keep, the first and last included.
+	 * @return the kept indices in increasing order.
+	 */
+
+	public static int[] lttb(double[] values, int from, int to, int threshold) {
+		int count = to - from;
+		if(threshold >= count || threshold < 3) {
+			int[] all = new int[Math.max(count, 0)];
+			for(int i = 0; i < all.length; i++) {
+				all[i] = from + i;
+			}
+			return all;
+		}
+		int[] kept = new int[threshold];
+		double every = (double) (count - 2) / (threshold - 2);
+		int a = from;
+		kept[0] = from;
+		for(int i = 0; i < threshold - 2; i++) {
+			//Average of the next bucket
+			int avgStart = from + (int) Math.floor((i + 1) * every) + 1;
+			int avgEnd = Math.min(from + (int) Math.floor((i + 2) * every) + 1, to);
+			double avgX = 0;
+			double avgY = 0;
+			for(int j = avgStart; j < avgEnd; j++) {
+				avgX += j;
+				avgY += values[j];
+			}
+			avgX /= avgEnd - avgStart;
+			avgY /= avgEnd - avgStart;
+			//Point of this bucket with the largest triangle
+			int start = from + (int) Math.floor(i * every) + 1;
+			int end = from + (int) Math.floor((i + 1) * every) + 1;
+			double max = -1;
+			int next = start;
+			for(int j = start; j < end; j++) {
+				double area = Math.abs((a - avgX) * (values[j] - values[a]) - (a - j) * (avgY - values[a]));
+				if(area > max) {
+					max = area;
+					next = j;
+				}
+			}
+			kept[i + 1] = next;
+			a = next;
+		}
+		kept[threshold - 1] = to - 1;
+		return kept;
+	}
+}
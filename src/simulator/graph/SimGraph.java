@@ -34,10 +34,10 @@ import java.awt.Paint;
 import java.awt.Shape;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.io.File;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
@@ -45,7 +45,9 @@ import java.util.TreeSet;
 import javax.swing.ImageIcon;
 import javax.swing.JCheckBox;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingConstants;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -53,17 +55,17 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.LegendItem;
 import org.jfree.chart.LegendItemCollection;
 import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.xy.XYDataset;
+import org.jfree.data.Range;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
-import simulator.CueList;
-import simulator.SimGroup;
+import simulator.Messages;
 import simulator.SimModel;
-import simulator.SimPhase;
 
 /**
  * SimGraph produces a new frame with the experiments graph line presentation. 
@@ -80,7 +82,9 @@ import simulator.SimPhase;
 public class SimGraph extends JFrame implements ActionListener{
 
 	private static final int LINE_WIDTH = 2;    	
-	private static final String CUE_SEP = " - ";
+	private static final String CUE_SEP = GraphType.CUE_SEP;
+	/** Pixels per point below which shapes are not drawn. **/
+	static final int SHAPE_SPACING = 6;
 
     private Container cp;
     private SimGraphPanel gp;
@@ -89,11 +93,16 @@ public class SimGraph extends JFrame implements ActionListener{
     
     private XYSeriesCollection xyseriescollection;
     
-    private TreeSet<String>                          cueMap;     
     private TreeSet<String>          selectedGroups, selectedCues;
     Object                           groupNames[],   cueNames[];
+    /** Shown until the graph's data is ready. **/
+    private JLabel placeholder;
+    private boolean disposed;
     protected int phase;
+    protected boolean compound;
     protected double threshold;
+    /** Kind of graph shown. **/
+    protected GraphType type;
     /** Mapping from series name to colours & shapes. **/
     private static Map<String, SeriesImage> seriesImageMap = new HashMap<String, SeriesImage>();
 
@@ -107,7 +116,7 @@ public class SimGraph extends JFrame implements ActionListener{
     *
      */
     
-    private class SeriesImage {
+    private static class SeriesImage {
     	/** Colour of this combination. **/
     	private Paint colour;
     	/** Shape of the combination. **/
@@ -172,142 +181,86 @@ public class SimGraph extends JFrame implements ActionListener{
     }
     
     /**
-     * SimGraph's Constructor method.
+     * SimGraph's Constructor method. The frame shows a placeholder until
+     * the graph's data has been built on a worker thread, unless it was
+     * built for an earlier window.
      * @param s frame's title.
      * @param m the experiment's model to use.
      * @param phase
      * @param compound
-     * @param configuralCompoundsMapping
      */
     public SimGraph(String s, SimModel m, int phase, boolean compound) {
+        this(s, m, phase, compound, GraphType.TRIAL);
+    }
+    
+    /**
+     * @param s frame's title.
+     * @param m the experiment's model to use.
+     * @param phase
+     * @param compound
+     * @param type kind of graph to show.
+     */
+    protected SimGraph(String s, SimModel m, int phase, boolean compound, GraphType type) {
         super(s);
         threshold = m.getThreshold();
         this.phase = phase;
-        Map<String,SimGroup> groupMap = m.getGroups(); // to not lose the actual model and not update with a new one
-                       
-        // selectedGroups = new TreeSet<String>(groupMap.keySet()); // AF Oct-2011
-        selectedGroups = new TreeSet<String>();
-        selectedCues   = new TreeSet<String>();
+        this.compound = compound;
+        this.type = type;
         
-        xyseriescollection = new XYSeriesCollection();
-        cueMap = new TreeSet<String>(); // all the cues in all the groups in all the phases
-
-        // Alberto Fernandez Nov-2011: iterate first cues, then groups, so as to keep the same colors along different groups
-        
-    	List<String> cues = m.getListAllCues();
-    	for (String cueName: cues) {
-
-	        Iterator<SimGroup> itergroup = groupMap.values().iterator();
-	        while (itergroup.hasNext()) {
-	   	     	// for all groups
-	        	SimGroup group = itergroup.next();
-	        	
-	        	if (!group.getPhases().get(this.phase).intialSequence().equals("0")) { // AF Oct-2011
-	        		
-	        		selectedGroups.add(group.getNameOfGroup()); // AF Oct-2011
-	        		
-	        		// Alberto Fernandez Nov-2011:
-	        		// 
-		        	// TreeMap<String,SimCue> cues = group.getCuesMap();
-	        		
-		        	//ArrayList<String> cues = m.getListAllCues();
-	        		
-		        	//Iterator itercues = cues.iterator();
-		        	
-		        	// Alberto Fernandez Nov-2011
-		        	//Iterator itercues = cues.values().iterator();
-		            //while (itercues.hasNext()) {
-		            //for (String cueName: cues) {
-		            	// for all cues of the group (to keep the colors similar for each group and cue in every phase)
-	        		
-		            	// Alberto Fernandez Nov-2011
-		            	//SimCue tempCue = (SimCue)itercues.next();
-		            	
-		            	// Alberto Fernandez Nov-2011
-		            	// Alberto Fern·ndez August-2011
-		            	//String cueName = tempCue.getSymbol();
-		            	
-		            	//if (!Character.isLowerCase(cueName.charAt(0))) { // don't draw configural cues 
-			            	String interfaceName = m.cueName2InterfaceName(cueName);
-	    	            	
-			            	//String seriesName = group.getNameOfGroup() + CUE_SEP + tempCue.getSymbol() + "";
-			            	String seriesName = group.getNameOfGroup() + CUE_SEP + interfaceName + "";
-			            	
-			            	XYSeries tempXYSeries = new XYSeries(seriesName);
-			                   
-			            	// Alberto Fernandez Nov-2011
-			            	//if (((SimPhase)group.getPhases().get(this.phase)).isCueInStimuli(tempCue.getSymbol())) {                		
-				            //if (((SimPhase)group.getPhases().get(this.phase)).isCueInStimuli(cueName)) {                		
-			            		// looking for the data in results of the phase
-			            		// Alberto Fernandez Nov-2011
-			            		//SimCue alfa = (SimCue) ((SimPhase)group.getPhases().get(this.phase)).getResults().get(tempCue.getSymbol());
-				            	//Modified for CSC cues. J Gray
-				            	SimPhase thisPhase = (SimPhase) group.getPhases().get(this.phase);
-			            		CueList alfa = thisPhase.getResults().get(cueName);
-			                 	//if (compound || (!compound && alfa.get(0).getSymbol().length()==1)){
-			                 		// Add values from the experiments results on the canvas in X, Y coordinates.
-			                 		/*for (int y = 1; y < alfa.size() && y < thisPhase.getMaxDuration(); y ++) { 
-			                 			SimCue cue = alfa.get(y-1);
-			                 			//tempXYSeries.add(y, cue.getLastAssocValue().floatValue());	
-			                 			tempXYSeries.add(y, cue.getLastAssocValue().floatValue()/*response(0.035));
-			                 		}*/
-			                 		
-			                 	//}
-			            	//}
-			            		//if(alfa != null) {
-			            		if (thisPhase.isCueInStimuli(cueName)) {
-			            			if (drawStimulus(compound, cueName)) {
-			            				xyseriescollection.addSeries(plot(seriesName, alfa, thisPhase.getMaxDuration()));
-			            			}
-			            		
-			            	// Alberto Fernandez Nov-2011
-			            	//cueMap.add(tempCue.getSymbol()+"");
-			            			cueMap.add(cueName+"");
-			            		}
-			            		//}
-		            	//}
-		            }   
-	        	}
-	        }
-
-        // selectedCues only with the cues that are taking part in the phase
-        Iterator<SimGroup> itergr = groupMap.values().iterator();
-        while (itergr.hasNext()) {
-   	     	// for all groups
-        	SimGroup group = (SimGroup)itergr.next();
-        	SimPhase pha = (SimPhase)group.getPhases().get(this.phase);
+        cp = this.getContentPane();
+        cp.setLayout(new BorderLayout());
+        placeholder = new JLabel(Messages.getString("SimGraph.preparing"), SwingConstants.CENTER); //$NON-NLS-1$
+        placeholder.setPreferredSize(new Dimension(640, 340));
+        cp.add(placeholder, BorderLayout.CENTER);
         
-        	for (String cue: cueMap){
-        		if (pha.isCueInStimuli(cue) ) {
-        		 	if (drawStimulus(compound, cue))
-                        //selectedCues.add(cue); 
-        		 		selectedCues.add(m.cueName2InterfaceName(cue)); 
-                }
-        	}
+        GraphCache.request(this, m, phase, compound, type);
+    }
+    
+    /**
+     * Replace the placeholder with the graph once its data is ready.
+     * @param data the graph's data, or null if it could not be built.
+     */
+    
+    void dataReady(GraphCache.Data data) {
+    	if (disposed) {
+    		return;
+    	}
+    	if (data == null) {
+    		placeholder.setText(Messages.getString("SimGraph.buildError")); //$NON-NLS-1$
+    		return;
+    	}
+        xyseriescollection = new XYSeriesCollection();
+        for (Map.Entry<String, double[]> series : data.series.entrySet()) {
+        	xyseriescollection.addSeries(new SampledSeries(series.getKey(), series.getValue()));
         }
-                
+        selectedGroups = new TreeSet<String>(data.groups);
+        selectedCues = new TreeSet<String>(data.cues);
+        
         // for buttons
         groupNames = selectedGroups.toArray();
         cueNames = selectedCues.toArray();
         
         gp = new SimGraphPanel(xyseriescollection,selectedGroups,selectedCues, compound); // para que tenga todas en cuenta en el constructor
         
-        
-        cp = this.getContentPane();
-        cp.setLayout(new BorderLayout());
+        cp.remove(placeholder);
+        placeholder = null;
         cp.add(gp, BorderLayout.CENTER);
-        
         cp.add(createGroupPanel(), BorderLayout.WEST);
         cp.add(createCuePanel(), BorderLayout.SOUTH);
-
-        groupMap = null;
+        pack();
+        validate();
+        repaint();
     }
 
     
     public void dispose() {
     	super.dispose();
-    	cp.remove(gp);
+    	disposed = true;
+    	if (gp != null) {
+    		cp.remove(gp);
+    	}
         gp = null;
+        placeholder = null;
         groupPanel=null;
         cuePanel = null;
         groupButtons = null;
@@ -315,7 +268,6 @@ public class SimGraph extends JFrame implements ActionListener{
         
         xyseriescollection = null;
         
-        cueMap = null;     
         selectedGroups = null;
         selectedCues = null;
         groupNames = null;
@@ -323,17 +275,6 @@ public class SimGraph extends JFrame implements ActionListener{
     	
     }
     
-    /**
-     * 
-     * @param compound
-     * @param cue
-     * @return
-     */
-    
-    protected boolean drawStimulus(boolean compound, String cue) {
-    	return (compound || (!compound && cue.length()==1));
-    }
-    
     /** Returns an ImageIcon, or null if the path was invalid. */
     private ImageIcon createImageIcon(String path, String description) {
         java.net.URL imgURL =  this.getClass().getResource(path);
@@ -345,27 +286,6 @@ public class SimGraph extends JFrame implements ActionListener{
         }
     }
     
-    /**
-     * Plot the average weight of a cue against trials.
-     * @param name
-     * @param alfa
-     * @return
-     */
-    
-    public XYSeries plot(String name, CueList alfa, int maxDuration) {
-    	XYSeries tempXYSeries = new XYSeries(name);
-    	try {
-    			int vectorSize = alfa.getTrialCount();
-    			for(int y = 0; y < vectorSize; y++) {
-    				tempXYSeries.add(y+1, alfa.averageAssoc(y));
-    			}
-    	} catch (NullPointerException e) {
-    		
-    	}
-    	return tempXYSeries;
-    }
-
-    
     /**
      * Creates JCheckbox on the left of the frame so the user will
      * have the flexibility to choose between the groups. The only thing 
@@ -455,6 +375,11 @@ public class SimGraph extends JFrame implements ActionListener{
     	private static final int LINE_WIDTH = 2;    	
 		private XYLineAndShapeRenderer renderer;
         private XYSeriesCollection xyseriescollection;
+        private JFreeChart jfreechart;
+        private ChartPanel chartpanel;
+        private NumberAxis domainAxis;
+        /** Whether the series are being resampled. **/
+        private boolean sampling;
 
         /**
          * SimGraphPanel's Constructor method.
@@ -463,81 +388,57 @@ public class SimGraph extends JFrame implements ActionListener{
         public SimGraphPanel(XYSeriesCollection xy, TreeSet<String> groups, TreeSet<String> cues, boolean compound) {
             super(new BorderLayout());
             xyseriescollection = xy;
-            JFreeChart jfreechart = createChart(xyseriescollection);  
-            setColorShapeCombination(jfreechart);
-            
-            
-            // X = domainsAxis
+            jfreechart = createChart(type, xyseriescollection, groups, cues, compound);
             XYPlot plot = jfreechart.getXYPlot();
-            NumberAxis domainAxis = (NumberAxis) plot.getDomainAxis();
-            domainAxis.setAutoRange(false);
-            //domainAxis.setTickUnit(new NumberTickUnit(1.0));
-            domainAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits()); // AF Sept-2011
-            plot.setDomainAxis(domainAxis);
-            
-            plot.setBackgroundPaint(null);
-            plot.setDomainGridlinePaint(Color.black);
-            plot.setRangeGridlinePaint(Color.black);
-            
+            renderer = (XYLineAndShapeRenderer) plot.getRenderer();
+            domainAxis = (NumberAxis) plot.getDomainAxis();
             
-            // Removing the series that are not taking part in the phase from the legend
-            // With this solution, the Legend will not be reupdated according to the buttons
-            LegendItemCollection lcol = plot.getLegendItems();
-            LegendItemCollection newlcol = new LegendItemCollection();
-           	for (int l=0; l< lcol.getItemCount(); l++) {
-               	LegendItem litem = lcol.get(l);
-               	String label = litem.getLabel();
-               	String groupSerie = label.substring(0,label.indexOf(SimGraph.CUE_SEP));
-               	String cueSerie   = label.substring(label.indexOf(SimGraph.CUE_SEP)+SimGraph.CUE_SEP.length(),label.length());
-               	if (groups.contains(groupSerie) && cues.contains(cueSerie)) {
-               		// Alberto Fernandez August-2011
-               		//if (compound || (!compound && cueSerie.length()==1)){
-                   	if (compound || (!compound && (cueSerie.length()==1 || cueSerie.contains("(")))) {
-                   		// Alberto Fernandez Nov-2011
-               			//newlcol.add(litem);	
-                   		// new constructor with the goal of setting shapeVisible=true
-                   		LegendItem newLegend = new LegendItem(litem.getLabel(),
-								                   	          litem.getDescription(),
-								                   	          litem.getToolTipText(),
-								                   	          litem.getURLText(),
-								                   	          true, // shapeVisible
-								                   	          litem.getShape(),
-								                   	          litem.isShapeFilled(),
-								                   	          litem.getFillPaint(),
-								                   	          litem.isShapeOutlineVisible(),
-								                   	          litem.getOutlinePaint(),
-								                   	          litem.getOutlineStroke(),
-								                   	          litem.isLineVisible(),
-								                   	          litem.getLine(),
-								                   	          litem.getLineStroke(),
-								                   	          litem.getLinePaint());
-               			newlcol.add(newLegend);	
-               		}
-               	}
-           	}
-           	plot.setFixedLegendItems(newlcol);
-
-            //Making wider and markable
-            BasicStroke stro = new BasicStroke(LINE_WIDTH);
-            for (int i=0; i<xyseriescollection.getSeriesCount(); i++) {
-            	renderer.setSeriesStroke(i, stro); 
-            	renderer.setSeriesShapesVisible(i, true); 
-            	
-            	// Alberto Fernandez Sept-2011
-            	//String seriesName = xyseriescollection.getSeries(i).getName();
-            	//if (xyseriescollection.getSeries(i).getName().contains("(")) {
-               	if ( ((String)xyseriescollection.getSeries(i).getKey()).contains("(")) {
-                	renderer.setSeriesVisible(i, false);             	
-            	}
-            	else {
-                	renderer.setSeriesVisible(i, true);             	
-            	}
-            }                              
-            ChartPanel chartpanel = new ChartPanel(jfreechart);                         
+            chartpanel = new ChartPanel(jfreechart);                         
             add(chartpanel);
             chartpanel.setPreferredSize(new Dimension(500, 270));  
             
             chartpanel.setDefaultDirectoryForSaveAs(new File("."));
+            
+            // Show more detail as the user zooms in or widens the window
+            domainAxis.addChangeListener(new AxisChangeListener() {
+				public void axisChanged(AxisChangeEvent event) {
+					resample();
+				}
+            });
+            chartpanel.addComponentListener(new ComponentAdapter() {
+            	public void componentResized(ComponentEvent event) {
+            		resample();
+            	}
+            });
+            resample();
+        }
+        
+        /**
+         * Downsample every series to the visible domain and the width of the
+         * chart, redrawing the chart once afterwards. Shapes are only drawn
+         * on series sparse enough for them to be told apart.
+         */
+        
+        private void resample() {
+        	if (sampling) {
+        		return;
+        	}
+        	sampling = true;
+        	int width = chartpanel.getWidth() > 0 ? chartpanel.getWidth() : chartpanel.getPreferredSize().width;
+        	Range range = domainAxis.getRange();
+        	jfreechart.setNotify(false);
+        	try {
+        		for (int i=0; i<xyseriescollection.getSeriesCount(); i++) {
+        			XYSeries series = xyseriescollection.getSeries(i);
+        			if (series instanceof SampledSeries) {
+        				((SampledSeries) series).sample(range.getLowerBound(), range.getUpperBound(), width);
+        			}
+        			renderer.setSeriesShapesVisible(i, series.getItemCount() * SHAPE_SPACING <= width);
+        		}
+        	} finally {
+        		jfreechart.setNotify(true);
+        		sampling = false;
+        	}
         }
 
         /**
@@ -565,21 +466,6 @@ public class SimGraph extends JFrame implements ActionListener{
         }
 
         
-        /**
-         * Creates a chart from the coordinates that has been given. When the data has 
-         * been processed and put on the chart, it returns it.
-         * @param xydataset the data with the coordinates.
-         * @return the chart with the group's graph presentation.
-         */
-        private JFreeChart createChart(XYDataset xydataset) {
-			// the parameter after orientation specifies whether or not the legend is shown
-        	JFreeChart jfreechart = ChartFactory.createXYLineChart("", getLabel().get(1),getLabel().get(0),
-        			xydataset, PlotOrientation.VERTICAL, true, true, false);
-        	XYPlot xyplot = jfreechart.getXYPlot();
-            renderer = (XYLineAndShapeRenderer) xyplot.getRenderer(); 
-            return jfreechart;
-        }
-        
         /**
          * The ActionListeners assigned to every JCheckBox. 
          * @see java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
@@ -591,13 +477,101 @@ public class SimGraph extends JFrame implements ActionListener{
     
     }
     
+    /**
+     * Creates a chart of a graph's series, with the colours and shapes of
+     * each series kept across graphs and the series that are not taking part
+     * left out of the legend. Used for windows and for images alike.
+     * @param type kind of graph.
+     * @param xyseriescollection the series.
+     * @param groups groups taking part in the phase.
+     * @param cues cues taking part in the phase.
+     * @param compound whether compounds are shown.
+     * @return the chart.
+     */
+    
+    static JFreeChart createChart(GraphType type, XYSeriesCollection xyseriescollection, TreeSet<String> groups, TreeSet<String> cues, boolean compound) {
+        // the parameter after orientation specifies whether or not the legend is shown
+        JFreeChart jfreechart = ChartFactory.createXYLineChart("", type.getLabel().get(1), type.getLabel().get(0),
+        		xyseriescollection, PlotOrientation.VERTICAL, true, true, false);
+        XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) jfreechart.getXYPlot().getRenderer();
+        setColorShapeCombination(jfreechart);
+        
+        
+        // X = domainsAxis
+        XYPlot plot = jfreechart.getXYPlot();
+        NumberAxis domainAxis = (NumberAxis) plot.getDomainAxis();
+        domainAxis.setAutoRange(false);
+        //domainAxis.setTickUnit(new NumberTickUnit(1.0));
+        domainAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits()); // AF Sept-2011
+        plot.setDomainAxis(domainAxis);
+        
+        plot.setBackgroundPaint(null);
+        plot.setDomainGridlinePaint(Color.black);
+        plot.setRangeGridlinePaint(Color.black);
+        
+        
+        // Removing the series that are not taking part in the phase from the legend
+        // With this solution, the Legend will not be reupdated according to the buttons
+        LegendItemCollection lcol = plot.getLegendItems();
+        LegendItemCollection newlcol = new LegendItemCollection();
+       	for (int l=0; l< lcol.getItemCount(); l++) {
+       	LegendItem litem = lcol.get(l);
+       	String label = litem.getLabel();
+       	String groupSerie = label.substring(0,label.indexOf(SimGraph.CUE_SEP));
+       	String cueSerie   = label.substring(label.indexOf(SimGraph.CUE_SEP)+SimGraph.CUE_SEP.length(),label.length());
+       	if (groups.contains(groupSerie) && cues.contains(cueSerie)) {
+       		// Alberto Fernandez August-2011
+       		//if (compound || (!compound && cueSerie.length()==1)){
+               	if (compound || (!compound && (cueSerie.length()==1 || cueSerie.contains("(")))) {
+               		// Alberto Fernandez Nov-2011
+       			//newlcol.add(litem);	
+               		// new constructor with the goal of setting shapeVisible=true
+               		LegendItem newLegend = new LegendItem(litem.getLabel(),
+								                   	          litem.getDescription(),
+								                   	          litem.getToolTipText(),
+								                   	          litem.getURLText(),
+								                   	          true, // shapeVisible
+								                   	          litem.getShape(),
+								                   	          litem.isShapeFilled(),
+								                   	          litem.getFillPaint(),
+								                   	          litem.isShapeOutlineVisible(),
+								                   	          litem.getOutlinePaint(),
+								                   	          litem.getOutlineStroke(),
+								                   	          litem.isLineVisible(),
+								                   	          litem.getLine(),
+								                   	          litem.getLineStroke(),
+								                   	          litem.getLinePaint());
+       			newlcol.add(newLegend);	
+       		}
+       	}
+       	}
+       	plot.setFixedLegendItems(newlcol);
+
+        //Making wider and markable
+        BasicStroke stro = new BasicStroke(LINE_WIDTH);
+        for (int i=0; i<xyseriescollection.getSeriesCount(); i++) {
+        	renderer.setSeriesStroke(i, stro); 
+        	
+        	// Alberto Fernandez Sept-2011
+        	//String seriesName = xyseriescollection.getSeries(i).getName();
+        	//if (xyseriescollection.getSeries(i).getName().contains("(")) {
+       	if ( ((String)xyseriescollection.getSeries(i).getKey()).contains("(")) {
+            	renderer.setSeriesVisible(i, false);             	
+        	}
+        	else {
+            	renderer.setSeriesVisible(i, true);             	
+        	}
+        }
+        return jfreechart;
+    }
+    
     /**
      * Helper function to make sure that each series has a unique colour-shape combination across
      * graphs and forcibly darken very light yellow to something visible.
      * @param chart
      */
     
-    private void setColorShapeCombination(JFreeChart chart) {
+    private static synchronized void setColorShapeCombination(JFreeChart chart) {
     	int count = chart.getXYPlot().getDataset().getSeriesCount();
     	String name;
     	for(int i = 0; i < count; i++) {
@@ -626,9 +600,6 @@ public class SimGraph extends JFrame implements ActionListener{
     }
 
 	public List<String> getLabel() {
-		List<String> labels = new ArrayList<String>();
-		labels.add("Mean Associative Strength");
-		labels.add("Trial");
-		return labels;
+		return type.getLabel();
 	}
 }
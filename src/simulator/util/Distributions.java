@@ -20,7 +20,8 @@ public final class Distributions implements Serializable {
 	private static final long serialVersionUID = 6118011662481327634L;
 	public static int UNIFORM = 1;
 	public static int EXPONENTIAL = 0;
-	private static long SEED = System.currentTimeMillis();
+	/** Seed of distributions without one of their own, which then follow the global seed alone. **/
+	private static final long SEED = 0;
 	
 	private Distributions() {}
 	
@@ -0,0 +1,154 @@
+package simulator.util;
+
+import java.io.Serializable;
+
+/**
+ * Unsynchronized SplitMix64 random number generator with a ziggurat
+ * sampler for exponential variates (Marsaglia &amp; Tsang, 2000). Meant for
+ * filling whole arrays of samples from a single thread; instances must not
+ * be shared between threads.
+ */
+
+public class FastRandom implements Serializable {
+	private static final long serialVersionUID = 4108532751467302136L;
+	/** Golden ratio increment of the SplitMix64 sequence. **/
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+	/** Right hand edge of the base strip of the ziggurat. **/
+	private static final double R = 7.697117470131487;
+	/** Ziggurat tables for the 256 strips. **/
+	private static final long[] KE = new long[256];
+	private static final double[] WE = new double[256];
+	private static final double[] FE = new double[256];
+	static {
+		final double m2 = 4294967296d;
+		final double ve = 3.949659822581572e-3;
+		double de = R;
+		double te = R;
+		double q = ve/Math.exp(-de);
+		KE[0] = (long) ((de/q)*m2);
+		KE[1] = 0;
+		WE[0] = q/m2;
+		WE[255] = de/m2;
+		FE[0] = 1;
+		FE[255] = Math.exp(-de);
+		for(int i = 254; i >= 1; i--) {
+			de = -Math.log(ve/de + Math.exp(-de));
+			KE[i+1] = (long) ((de/te)*m2);
+			te = de;
+			FE[i] = Math.exp(-de);
+			WE[i] = de/m2;
+		}
+	}
+
+	/** Generator state. **/
+	private long state;
+
+	/**
+	 * @param seed seed for the sequence, equal seeds give equal sequences.
+	 */
+
+	public FastRandom(long seed) {
+		state = seed;
+	}
+
+	/**
+	 * @return the next 64 random bits.
+	 */
+
+	public long nextLong() {
+		long z = (state += GAMMA);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return a uniform double in [0, 1).
+	 */
+
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * @param n exclusive upper bound, must be positive.
+	 * @return a uniform int in [0, n).
+	 */
+
+	public int nextInt(int n) {
+		return (int) (((nextLong() >>> 33) * n) >>> 31);
+	}
+
+	/**
+	 * @return an exponentially distributed double with mean 1.
+	 */
+
+	public double nextExponential() {
+		long jz = nextLong() >>> 32;
+		int iz = (int) (jz & 255);
+		if(jz < KE[iz]) {
+			return jz*WE[iz];
+		}
+		while(true) {
+			if(iz == 0) {
+				//Tail beyond the base strip
+				return R - Math.log(1 - nextDouble());
+			}
+			double x = jz*WE[iz];
+			if(FE[iz] + nextDouble()*(FE[iz-1] - FE[iz]) < Math.exp(-x)) {
+				return x;
+			}
+			jz = nextLong() >>> 32;
+			iz = (int) (jz & 255);
+			if(jz < KE[iz]) {
+				return jz*WE[iz];
+			}
+		}
+	}
+
+	/**
+	 * Fill part of an array with exponential samples.
+	 * @param values array to fill
+	 * @param from first index to fill
+	 * @param to index after the last to fill
+	 * @param mean mean of the distribution
+	 */
+
+	public void fillExponential(double[] values, int from, int to, double mean) {
+		for(int i = from; i < to; i++) {
+			values[i] = mean*nextExponential();
+		}
+	}
+
+	/**
+	 * Fill part of an array with uniform samples.
+	 * @param values array to fill
+	 * @param from first index to fill
+	 * @param to index after the last to fill
+	 * @param low inclusive lower bound
+	 * @param high exclusive upper bound
+	 */
+
+	public void fillUniform(double[] values, int from, int to, double low, double high) {
+		double range = high - low;
+		for(int i = from; i < to; i++) {
+			values[i] = low + range*nextDouble();
+		}
+	}
+
+	/**
+	 * Shuffle part of an array in place (Fisher-Yates).
+	 * @param values array to shuffle
+	 * @param from first index to shuffle
+	 * @param to index after the last to shuffle
+	 */
+
+	public void shuffle(double[] values, int from, int to) {
+		for(int i = to - 1; i > from; i--) {
+			int j = from + nextInt(i - from + 1);
+			double swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+	}
+}
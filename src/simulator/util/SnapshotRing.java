@@ -0,0 +1,100 @@
+package simulator.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free ring of the latest items offered by any number of threads, read
+ * by a single consumer. Offering never waits: when the consumer falls more
+ * than the capacity behind, the oldest items are overwritten and skipped.
+ * Meant for observing a computation without slowing it down, where losing
+ * some items is acceptable.
+ * @param <T> type of the items.
+ */
+
+public class SnapshotRing<T> {
+	/** Marks a slot while it is being written. **/
+	private static final long WRITING = -1;
+
+	private final AtomicReferenceArray<T> items;
+	/** Sequence number of the item held by each slot. **/
+	private final AtomicLongArray sequences;
+	private final int mask;
+	/** Sequence number of the next item to offer. **/
+	private final AtomicLong tail = new AtomicLong();
+	/** Sequence number of the next item to read, consumer only. **/
+	private long head;
+	/** Items skipped by the consumer, consumer only. **/
+	private long dropped;
+
+	/**
+	 * @param capacity number of items held, rounded up to a power of two.
+	 */
+
+	public SnapshotRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		items = new AtomicReferenceArray<T>(size);
+		sequences = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++) {
+			sequences.set(i, i - size);
+		}
+		mask = size - 1;
+	}
+
+	/**
+	 * Add an item, overwriting the oldest if the ring is full.
+	 * @param item item to add.
+	 */
+
+	public void offer(T item) {
+		long sequence = tail.getAndIncrement();
+		int slot = (int) (sequence & mask);
+		sequences.set(slot, WRITING);
+		items.set(slot, item);
+		sequences.set(slot, sequence);
+	}
+
+	/**
+	 * Move the items offered since the last drain to a collection, oldest
+	 * first. Items overwritten before they were read are skipped. Only one
+	 * thread may drain.
+	 * @param to collection to add the items to.
+	 * @return number of items added.
+	 */
+
+	public int drainTo(Collection<? super T> to) {
+		long end = tail.get();
+		if(end - head > mask + 1) {
+			dropped += end - (mask + 1) - head;
+			head = end - (mask + 1);
+		}
+		int count = 0;
+		while(head < end) {
+			int slot = (int) (head & mask);
+			long before = sequences.get(slot);
+			if(before == WRITING || before < head) {
+				//Still being written, read it next time
+				break;
+			}
+			T item = items.get(slot);
+			if(before == head && sequences.get(slot) == head) {
+				to.add(item);
+				count++;
+			} else {
+				dropped++;
+			}
+			head++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of items skipped because they were overwritten.
+	 */
+
+	public long getDropped() {
+		return dropped;
+	}
+}
@@ -35,16 +35,20 @@ public class UniformVariableDistribution extends VariableDistribution {
 	}
 	
 	/**
-	 * Get the next onset in this variable distribution.
-	 * Onsets are selected from an exponential distribution with the given mean.
+	 * Fill an array with random durations.
+	 * Onsets are selected uniformly from half to one and a half times the mean.
 	 * Variable distributions configured with the same mean & sd will
 	 * give the same sequence of onsets.
-	 * @return an integer indicating the next duration.
+	 * @param random generator to draw from.
+	 * @param values array to fill.
+	 * @param lowerBound unused, non-positive durations are set to 1.
 	 */
 	
-	protected double nextRandom() {
-		double next = (random.nextDouble()+0.5) * getMean();
-		return next > 0 ? next : 1;//(int) /*Math.round(-1*mean*Math.log(random.nextDouble()));*/Math.round(mean+random.nextGaussian()*sd);
+	protected void sample(FastRandom random, double[] values, double lowerBound) {
+		random.fillUniform(values, 0, values.length, 0.5*getMean(), 1.5*getMean());
+		for(int i = 0; i < values.length; i++) {
+			values[i] = values[i] > 0 ? values[i] : 1;
+		}
 	}
 
 }
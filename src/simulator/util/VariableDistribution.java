@@ -1,10 +1,8 @@
 package simulator.util;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Random;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import simulator.Simulator;
 
@@ -30,14 +28,24 @@ public class VariableDistribution implements Serializable {
 	private static final long serialVersionUID = -4932520581988365938L;
 	/** Lazily initialized random seed for variable distributions. **/
 	private static long randomSeed = 0;
+	/** Most sequences kept for sharing at once. **/
+	private static final int MAX_SEQUENCES = 64;
+	/** Standardized sequences shared by identically configured distributions, least recently used first. **/
+	private static final Map<SequenceKey, double[]> sequences = new LinkedHashMap<SequenceKey, double[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<SequenceKey, double[]> eldest) {
+			return size() > MAX_SEQUENCES;
+		}
+	};
 	/** Mean for this distribution. **/
 	private double mean;
 	/** Standard deviation for this distribution. **/
 	private float sd;
-	/** List of onsets. **/
-	private List<Double> onsets;
-	/** Random generator for variable onsets. **/
-	protected Random random;
+	/** Standardized onsets in the order of the current combination. **/
+	private double[] samples;
+	/** Random generator for reshuffling onsets between combinations. **/
+	private transient FastRandom generator;
 	/** Random seed. **/
 	private long seed;
 	/** Trial index. **/
@@ -50,6 +58,8 @@ public class VariableDistribution implements Serializable {
 	
 	/** Total number of trials. **/
 	private int trials;
+	/** Length of a timestep, or 0 to use the running model's. **/
+	private double timestep;
 	
 	/**
 	 * Creates a new variable distribution with the specified mean and standard deviation
@@ -62,11 +72,10 @@ public class VariableDistribution implements Serializable {
 		this.setSd(sd);
 		this.mean = mean;
 		seed = randomSeed();
-		random = new Random(randomSeed());
 		index = 0;
 		this.trials = trials;
 		meanType = false;
-		onsets = new ArrayList<Double>();
+		samples = new double[0];
 		isChanged = false;
 	}
 	
@@ -80,7 +89,7 @@ public class VariableDistribution implements Serializable {
 	
 	public VariableDistribution(final double mean2, final float sd, long seed, int trials, boolean meanType) {
 		this(mean2, sd, trials);
-		random.setSeed(seed);
+		this.seed = seed;
 		this.meanType = meanType;
 	}
 	
@@ -91,7 +100,7 @@ public class VariableDistribution implements Serializable {
 	 */
 	
 	public double getOnset(final int trial) {
-		return onsets.get(trial);
+		return samples[trial];
 	}
 
 	/**
@@ -148,64 +157,103 @@ public class VariableDistribution implements Serializable {
 	
 	public static void newRandomSeed() {
 		randomSeed = System.currentTimeMillis();
+		//Sequences for the old seed will not be asked for again
+		synchronized(sequences) {
+			sequences.clear();
+		}
 	}
-	
+
 	/**
-	 * Transform a list of random numbers into one standardized about
-	 * an exact mean.
-	 * @return a standardized list of numbers.
+	 * Use a fixed seed for every distribution built from now on, so runs
+	 * can be repeated exactly.
+	 * @param seed the seed to use, not 0.
+	 */
+
+	public static void setRandomSeed(long seed) {
+		randomSeed = seed;
+		synchronized(sequences) {
+			sequences.clear();
+		}
+	}
+
+	/**
+	 * Transform an array of random numbers in place into one standardized
+	 * about an exact mean.
+	 * @param values the numbers to standardize.
+	 * @param lowerBound smallest value allowed after standardizing.
 	 */
 	
-	private List<Double> standardize() {
-		List<Double> standardized = new ArrayList<Double>();
-		
-		double actualMean = meanType ? geometricMean(onsets) : arithmeticMean(onsets);
-		
-		for(double onset : onsets) {
-			double shifted = onset - actualMean;
-			shifted += mean;
-			shifted = Math.max(shifted, Simulator.getController().getModel().getTimestepSize()); //Make lower bound 1 timestep
-			standardized.add(shifted);
+	private void standardize(double[] values, double lowerBound) {
+		double shift = mean - (meanType ? geometricMean(values) : arithmeticMean(values));
+		for(int i = 0; i < values.length; i++) {
+			//Make lower bound 1 timestep
+			values[i] = Math.max(values[i] + shift, lowerBound);
 		}
-		
-		
-		return standardized;
 	}
 	
 	/**
-	 * Get the next onset in this variable distribution.
+	 * Fill an array with random durations.
 	 * Onsets are selected from an exponential distribution with the given mean.
 	 * Variable distributions configured with the same mean & sd will
 	 * give the same sequence of onsets.
-	 * @return an integer indicating the next duration.
+	 * @param random generator to draw from.
+	 * @param values array to fill.
+	 * @param lowerBound smallest duration allowed, one timestep.
 	 */
 	
-	protected double nextRandom() {
-		double next = -1*mean*Math.log(random.nextDouble());
-		return Math.max(next, Simulator.getController().getModel().getTimestepSize());
+	protected void sample(FastRandom random, double[] values, double lowerBound) {
+		random.fillExponential(values, 0, values.length, mean);
+		for(int i = 0; i < values.length; i++) {
+			values[i] = Math.max(values[i], lowerBound);
+		}
 	}
 	
 	/**
-	 * Build the standardized list of onsets.
+	 * Build the standardized list of onsets. The sequence is shared with every
+	 * distribution of the same type, mean, mean type, length and seed, under
+	 * the same global seed; this
+	 * distribution keeps its own copy to permute between combinations.
 	 */
 	
 	public void build() {
 		index = 0;
-		if(isChanged) {
-			onsets.clear();
-			random = new Random(randomSeed());
-			for(int i = 0; i < trials; i++) {
-				onsets.add(nextRandom());
-			}
-			onsets = standardize();
+		if(isChanged || samples == null) {
+			samples = standardized(timestep > 0 ? timestep : Simulator.getController().getModel().getTimestepSize()).clone();
 			isChanged = false;
 		}
 	}
 	
+	/**
+	 * Get the shared standardized sequence for this configuration, generating
+	 * it if no identical distribution has done so yet.
+	 * @param timestep length of a timestep, the smallest duration allowed.
+	 * @return the shared sequence, which must not be modified.
+	 */
+	
+	private double[] standardized(double timestep) {
+		SequenceKey key = new SequenceKey(getClass(), mean, meanType, trials, randomSeed()*31 + seed, timestep);
+		double[] shared;
+		synchronized(sequences) {
+			shared = sequences.get(key);
+		}
+		if(shared == null) {
+			shared = new double[trials];
+			sample(new FastRandom(key.seed), shared, timestep);
+			standardize(shared, timestep);
+			synchronized(sequences) {
+				double[] existing = sequences.get(key);
+				if(existing != null) {
+					shared = existing;
+				} else {
+					sequences.put(key, shared);
+				}
+			}
+		}
+		return shared;
+	}
+	
 	public double next() {
-		double next = onsets.get(index);
-		index++;
-		return next;
+		return samples[index++];
 	}
 	
 	public void setIndex(int num) {
@@ -216,34 +264,43 @@ public class VariableDistribution implements Serializable {
 		trials = numTrials;
 		isChanged = true;
 	}
+
+	/**
+	 * @param timestep length of a timestep in the model this distribution is
+	 * used by, the smallest duration it gives.
+	 */
+	public void setTimestep(double timestep) {
+		if(timestep != this.timestep) {
+			this.timestep = timestep;
+			isChanged = true;
+		}
+	}
 	
 	/**
-	 * @param onsets2 a list of integers.
-	 * @return the arithmetic mean of the list of numbers given.
+	 * @param values an array of numbers.
+	 * @return the arithmetic mean of the numbers given.
 	 */
 	
-	private double arithmeticMean(List<Double> onsets2) {
+	private static double arithmeticMean(double[] values) {
 		double actualMean = 0;
-		for(double onset : onsets2) {
-			actualMean += onset;
+		for(double value : values) {
+			actualMean += value;
 		}
-		actualMean /= onsets2.size();
-		return actualMean;
+		return actualMean / values.length;
 	}
 	
 	/**
-	 * 
-	 * @param onsets2 a list of integers.
-	 * @return the geometric mean of the list of numbers
+	 * Worked out from the mean of the logs so long sequences do not overflow.
+	 * @param values an array of numbers.
+	 * @return the geometric mean of the numbers given.
 	 */
 	
-	private double geometricMean(List<Double> onsets2) {
-		double actualMean = 1;
-		for(double onset : onsets2) {
-			actualMean *= onset;
+	private static double geometricMean(double[] values) {
+		double logSum = 0;
+		for(double value : values) {
+			logSum += Math.log(value);
 		}
-		actualMean = Math.pow(actualMean, 1d/onsets2.size());
-		return actualMean;
+		return Math.exp(logSum / values.length);
 	}
 
 	/**
@@ -261,11 +318,64 @@ public class VariableDistribution implements Serializable {
 		isChanged = true;
 	}
 
+	/**
+	 * Start a new stream of reshuffles for this distribution. Each distribution
+	 * in a run should be given its own, so that identically configured ones
+	 * are not permuted in step.
+	 * @param shuffleSeed seed for the reshuffles.
+	 */
+	public void reseed(long shuffleSeed) {
+		generator = new FastRandom(shuffleSeed);
+	}
+
 	/**
 	 * Reshuffle the onsets list.
 	 */
 	public void regenerate() {
-		Collections.shuffle(onsets);
+		if(generator == null) {
+			generator = new FastRandom(randomSeed()*31 + seed);
+		}
+		if(samples != null) {
+			generator.shuffle(samples, 0, samples.length);
+		}
+	}
+
+	/**
+	 * Identity of a standardized sequence.
+	 */
+	
+	private static final class SequenceKey {
+		private final Class<?> type;
+		private final double mean;
+		private final boolean geometric;
+		private final int trials;
+		private final long seed;
+		private final double timestep;
+		
+		SequenceKey(Class<?> type, double mean, boolean geometric, int trials, long seed, double timestep) {
+			this.type = type;
+			this.mean = mean;
+			this.geometric = geometric;
+			this.trials = trials;
+			this.seed = seed;
+			this.timestep = timestep;
+		}
+		
+		public boolean equals(Object other) {
+			if(!(other instanceof SequenceKey)) {
+				return false;
+			}
+			SequenceKey key = (SequenceKey) other;
+			return type == key.type && Double.compare(mean, key.mean) == 0
+					&& geometric == key.geometric && trials == key.trials
+					&& seed == key.seed && Double.compare(timestep, key.timestep) == 0;
+		}
+		
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(mean)*31 + Double.doubleToLongBits(timestep);
+			bits = bits*31 + seed;
+			return type.hashCode() ^ (int) (bits ^ (bits >>> 32)) ^ (trials*31 + (geometric ? 1 : 0));
+		}
 	}
 
 }
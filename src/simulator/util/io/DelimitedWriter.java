@@ -0,0 +1,227 @@
+package simulator.util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes delimited text records to a channel through a reusable byte
+ * buffer. Numbers are formatted straight into the buffer without going
+ * through intermediate strings.
+ */
+
+public class DelimitedWriter implements Closeable {
+	/** Encoding of text fields. **/
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/** Significant digits written for doubles. **/
+	private static final int SIGNIFICANT = 12;
+	/** Powers of ten that fit in a long. **/
+	private static final long[] POW10 = new long[19];
+	static {
+		POW10[0] = 1;
+		for(int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i-1]*10;
+		}
+	}
+
+	/** Channel written to. **/
+	private final WritableByteChannel channel;
+	/** Field separator. **/
+	private final byte separator;
+	/** Staging buffer. **/
+	private final byte[] bytes;
+	private final ByteBuffer buffer;
+	/** Next free position in the buffer. **/
+	private int position;
+	/** True until the first field of a record is written. **/
+	private boolean firstField = true;
+	/** Scratch space for digits, written backwards. **/
+	private final byte[] digits = new byte[24];
+
+	/**
+	 * @param channel channel to write to.
+	 * @param separator field separator, ',' or '\t'.
+	 * @param bufferSize size of the staging buffer in bytes.
+	 */
+
+	public DelimitedWriter(WritableByteChannel channel, char separator, int bufferSize) {
+		this.channel = channel;
+		this.separator = (byte) separator;
+		bytes = new byte[Math.max(bufferSize, 256)];
+		buffer = ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * Write a text field, quoting it if it holds the separator, a quote
+	 * or a line break.
+	 * @param text field value.
+	 * @throws IOException
+	 */
+
+	public void writeString(String text) throws IOException {
+		startField();
+		boolean quote = text.indexOf(separator) >= 0 || text.indexOf('"') >= 0
+				|| text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0;
+		if(quote) {
+			text = '"' + text.replace("\"", "\"\"") + '"';
+		}
+		byte[] encoded = text.getBytes(UTF8);
+		if(encoded.length > bytes.length - position) {
+			flush();
+		}
+		if(encoded.length > bytes.length) {
+			channel.write(ByteBuffer.wrap(encoded));
+		} else {
+			System.arraycopy(encoded, 0, bytes, position, encoded.length);
+			position += encoded.length;
+		}
+	}
+
+	/**
+	 * Write an empty field.
+	 * @throws IOException
+	 */
+
+	public void writeEmpty() throws IOException {
+		startField();
+	}
+
+	/**
+	 * @param value integer field value.
+	 * @throws IOException
+	 */
+
+	public void writeLong(long value) throws IOException {
+		startField();
+		if(value < 0) {
+			if(value == Long.MIN_VALUE) {
+				writeAscii(Long.toString(value));
+				return;
+			}
+			bytes[position++] = '-';
+			value = -value;
+		}
+		int length = 0;
+		do {
+			digits[length++] = (byte) ('0' + value%10);
+			value /= 10;
+		} while(value != 0);
+		while(length > 0) {
+			bytes[position++] = digits[--length];
+		}
+	}
+
+	/**
+	 * Write a double to twelve significant digits, trailing zeros removed.
+	 * Very large or small magnitudes fall back to Double.toString.
+	 * @param value field value.
+	 * @throws IOException
+	 */
+
+	public void writeDouble(double value) throws IOException {
+		startField();
+		if(value == 0) {
+			bytes[position++] = '0';
+			return;
+		}
+		double magnitude = Math.abs(value);
+		if(!(magnitude >= 1e-4 && magnitude < 1e12)) {
+			writeAscii(Double.toString(value));
+			return;
+		}
+		if(value < 0) {
+			bytes[position++] = '-';
+		}
+		//Decimal places giving the wanted number of significant digits
+		int decimals = SIGNIFICANT;
+		for(double bound = 1; magnitude >= bound*10 && decimals > 0; bound *= 10) {
+			decimals--;
+		}
+		for(double bound = 1; magnitude < bound && decimals < SIGNIFICANT + 4; bound /= 10) {
+			decimals++;
+		}
+		decimals--;
+		long scaled = Math.round(magnitude*POW10[decimals]);
+		//Drop trailing zeros of the fraction
+		while(decimals > 0 && scaled%10 == 0) {
+			scaled /= 10;
+			decimals--;
+		}
+		int length = 0;
+		do {
+			digits[length++] = (byte) ('0' + scaled%10);
+			scaled /= 10;
+			if(length == decimals) {
+				digits[length++] = '.';
+			}
+		} while(scaled != 0 || length <= decimals);
+		if(digits[length-1] == '.') {
+			digits[length++] = '0';
+		}
+		while(length > 0) {
+			bytes[position++] = digits[--length];
+		}
+	}
+
+	/**
+	 * End the current record.
+	 * @throws IOException
+	 */
+
+	public void endRecord() throws IOException {
+		reserve(1);
+		bytes[position++] = '\n';
+		firstField = true;
+	}
+
+	/**
+	 * Write out everything buffered so far.
+	 * @throws IOException
+	 */
+
+	public void flush() throws IOException {
+		buffer.clear();
+		buffer.limit(position);
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		position = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Write the separator if this is not the first field of the record, and
+	 * make room for a number.
+	 */
+
+	private void startField() throws IOException {
+		reserve(digits.length + 2);
+		if(!firstField) {
+			bytes[position++] = separator;
+		}
+		firstField = false;
+	}
+
+	private void writeAscii(String text) throws IOException {
+		reserve(text.length());
+		for(int i = 0; i < text.length(); i++) {
+			bytes[position++] = (byte) text.charAt(i);
+		}
+	}
+
+	private void reserve(int length) throws IOException {
+		if(bytes.length - position < length) {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,473 @@
+package simulator.util.io;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import simulator.SimCue.Trace;
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.Simulator;
+import simulator.configurables.ContextConfig;
+import simulator.configurables.ContextConfig.Context;
+import simulator.configurables.FixedOnsetConfig;
+import simulator.configurables.ITIConfig;
+import simulator.configurables.TimingConfiguration;
+import simulator.configurables.USConfiguration;
+import simulator.configurables.USConfiguration.Relationship;
+import simulator.configurables.VariableOnsetConfig;
+import simulator.util.Distributions;
+import extra166y.Ops;
+import extra166y.ParallelArray;
+
+/**
+ * Reads an experiment file into a model ready to run, without a view.
+ * The file is read a line at a time and the model built as it goes.
+ *
+ * An experiment file is UTF-8 text. The first line is "TDX" and the
+ * format version. Every other line is a record: a type and its fields,
+ * separated by tabs, with tabs, line breaks and backslashes in fields
+ * escaped by a backslash. Lines starting "#schema" name the fields of a
+ * record type in order, so fields can be added or moved in later
+ * versions; other lines starting "#" are comments, and records of types
+ * a reader does not know are skipped. Records come in this order:
+ * <ul>
+ * <li>settings, a name and a value,</li>
+ * <li>per group, a group record, then per phase a phase record followed
+ * by its context, timing, onset and US records and its ITI,</li>
+ * <li>the parameter values by name.</li>
+ * </ul>
+ */
+
+public class ExperimentReader {
+	/** First field of an experiment file. **/
+	public static final String MAGIC = "TDX"; //$NON-NLS-1$
+	/** Current format version. **/
+	public static final int VERSION = 1;
+	/** Encoding of experiment files. **/
+	public static final Charset CHARSET = Charset.forName("UTF-8"); //$NON-NLS-1$
+	/** Start of a line naming the fields of a record type. **/
+	static final String SCHEMA_PREFIX = "#schema\t"; //$NON-NLS-1$
+	/** Record types and their fields as written by this version. **/
+	static final String[][] SCHEMA = {
+		{"setting", "name", "value"}, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		{"group", "name"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"phase", "index", "random", "sequence"}, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		{"context", "context", "alpha"}, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		{"timing", "usDuration", "reinforced"}, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		{"onset", "cue", "kind", "mean", "seed"}, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		{"us", "cue", "relationship", "offset"}, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		{"iti", "minimum", "mean"}, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		{"value", "name", "value"} //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	};
+	/** Record types that describe the phase before them. **/
+	private static final List<String> PHASE_RECORDS = Arrays.asList("context", "timing", "onset", "us", "iti"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+	/** Field positions by record type and field name. **/
+	private final Map<String, Map<String, Integer>> schema = new HashMap<String, Map<String, Integer>>();
+	/** Settings read, including those the model does not hold. **/
+	private final Map<String, String> settings = new LinkedHashMap<String, String>();
+	private String source;
+	private int line;
+	private SimModel model;
+	/** Group being read and whether all groups have been read. **/
+	private SimGroup group;
+	private boolean groupsDone;
+	/** Phase being read. **/
+	private int phaseIndex;
+	private boolean random;
+	private String sequence;
+	private ContextConfig context;
+	private TimingConfiguration timing;
+	private ITIConfig iti;
+
+	public ExperimentReader() {
+		for(String[] fields : SCHEMA) {
+			declare(fields);
+		}
+	}
+
+	/**
+	 * @param file file to look at.
+	 * @return true if the file starts as an experiment file does, false for
+	 * older saved experiments.
+	 * @throws IOException if the file cannot be read.
+	 */
+
+	public static boolean isExperimentFile(File file) throws IOException {
+		byte[] magic = MAGIC.getBytes(CHARSET);
+		byte[] start = new byte[magic.length];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(start);
+		} catch (EOFException e) {
+			return false;
+		} finally {
+			in.close();
+		}
+		return Arrays.equals(magic, start);
+	}
+
+	/**
+	 * Read several experiment files at once on the worker pool.
+	 * @param files files to read.
+	 * @return the models, in the order of the files.
+	 * @throws IOException if any file cannot be read.
+	 */
+
+	public static List<SimModel> readAll(List<File> files) throws IOException {
+		ParallelArray<File> pool = ParallelArray.createEmpty(files.size(), File.class, Simulator.fjPool);
+		pool.asList().addAll(files);
+		ParallelArray<Object> read = pool.withMapping(new Ops.Op<File, Object>() {
+			public Object op(File file) {
+				try {
+					return new ExperimentReader().read(file);
+				} catch (IOException e) {
+					return e;
+				}
+			}
+		}).all(Object.class);
+		List<SimModel> models = new ArrayList<SimModel>(files.size());
+		for(Object result : read.asList()) {
+			if(result instanceof IOException) {
+				throw (IOException) result;
+			}
+			models.add((SimModel) result);
+		}
+		return models;
+	}
+
+	/**
+	 * @param file experiment file to read.
+	 * @return a model set up with the experiment, ready to run.
+	 * @throws IOException if the file cannot be read or is not valid.
+	 */
+
+	public SimModel read(File file) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(file), CHARSET);
+		try {
+			return read(in, file.getPath());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @param in experiment to read, left open.
+	 * @param source name of the experiment for error messages.
+	 * @return a model set up with the experiment, ready to run.
+	 * @throws IOException if the experiment cannot be read or is not valid.
+	 */
+
+	public SimModel read(Reader in, String source) throws IOException {
+		this.source = source;
+		BufferedReader lines = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+		model = new SimModel();
+		String header = lines.readLine();
+		line = 1;
+		String[] fields = header == null ? new String[0] : split(header);
+		if(fields.length < 2 || !fields[0].equals(MAGIC)) {
+			throw error("not an experiment file"); //$NON-NLS-1$
+		}
+		if(parseInt(fields[1]) > VERSION) {
+			throw error("written by a newer version (" + fields[1] + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		for(String text = lines.readLine(); text != null; text = lines.readLine()) {
+			line++;
+			if(text.startsWith(SCHEMA_PREFIX)) {
+				declare(split(text.substring(SCHEMA_PREFIX.length())));
+			} else if(text.length() > 0 && text.charAt(0) != '#') {
+				record(split(text));
+			}
+		}
+		finishGroups();
+		model.updateValuesOnGroups();
+		//Reinitializing the model clears the context cue
+		model.setUseContext(model.isUseContext());
+		SimModel result = model;
+		model = null;
+		return result;
+	}
+
+	/**
+	 * @return the settings read, by name, including any the model does not
+	 * hold such as display options.
+	 */
+	public Map<String, String> getSettings() {
+		return Collections.unmodifiableMap(settings);
+	}
+
+	private void declare(String[] fields) {
+		Map<String, Integer> positions = new HashMap<String, Integer>();
+		for(int i = 1; i < fields.length; i++) {
+			positions.put(fields[i], i);
+		}
+		schema.put(fields[0], positions);
+	}
+
+	private void record(String[] fields) throws IOException {
+		String type = fields[0];
+		if(type.equals("setting")) { //$NON-NLS-1$
+			setting(get(fields, "name"), get(fields, "value")); //$NON-NLS-1$ //$NON-NLS-2$
+		} else if(type.equals("group")) { //$NON-NLS-1$
+			startGroup(get(fields, "name")); //$NON-NLS-1$
+		} else if(type.equals("phase")) { //$NON-NLS-1$
+			finishPhase();
+			if(group == null) {
+				throw error("phase outside a group"); //$NON-NLS-1$
+			}
+			phaseIndex = parseInt(get(fields, "index")); //$NON-NLS-1$
+			random = Boolean.parseBoolean(get(fields, "random")); //$NON-NLS-1$
+			sequence = get(fields, "sequence").replaceAll("\\s", ""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			context = ContextConfig.EMPTY;
+			timing = new TimingConfiguration();
+			timing.getDurations().setType(distributionType());
+			timing.getDurations().setGeo(model.isGeometricMean());
+			iti = null;
+		} else if(sequence == null && PHASE_RECORDS.contains(type)) {
+			throw error(type + " record outside a phase"); //$NON-NLS-1$
+		} else if(type.equals("context")) { //$NON-NLS-1$
+			Context symbol = parseEnum(Context.class, get(fields, "context")); //$NON-NLS-1$
+			context = symbol == Context.EMPTY ? ContextConfig.EMPTY
+					: new ContextConfig(symbol, parseDouble(get(fields, "alpha"))); //$NON-NLS-1$
+		} else if(type.equals("timing")) { //$NON-NLS-1$
+			timing.setUsDuration(parseDouble(get(fields, "usDuration"))); //$NON-NLS-1$
+			if(!Boolean.parseBoolean(get(fields, "reinforced"))) { //$NON-NLS-1$
+				timing.setReinforced(false);
+			}
+		} else if(type.equals("onset")) { //$NON-NLS-1$
+			String cue = get(fields, "cue"); //$NON-NLS-1$
+			double mean = parseDouble(get(fields, "mean")); //$NON-NLS-1$
+			//Straight into the map, the shared defaults are only for the editors
+			if(get(fields, "kind").equals("fixed")) { //$NON-NLS-1$ //$NON-NLS-2$
+				timing.getDurations().getMap().put(cue, new FixedOnsetConfig(mean));
+			} else {
+				timing.getDurations().getMap().put(cue, new VariableOnsetConfig(mean,
+						parseLong(get(fields, "seed")), 0, distributionType(), model.isGeometricMean())); //$NON-NLS-1$
+			}
+		} else if(type.equals("us")) { //$NON-NLS-1$
+			timing.addUSConfig(get(fields, "cue"), new USConfiguration( //$NON-NLS-1$
+					parseEnum(Relationship.class, get(fields, "relationship")), parseDouble(get(fields, "offset")))); //$NON-NLS-1$ //$NON-NLS-2$
+		} else if(type.equals("iti")) { //$NON-NLS-1$
+			iti = new ITIConfig(parseDouble(get(fields, "minimum")), (float) parseDouble(get(fields, "mean")), //$NON-NLS-1$ //$NON-NLS-2$
+					0, model.isGeometricMean(), distributionType());
+		} else if(type.equals("value")) { //$NON-NLS-1$
+			finishGroups();
+			String value = get(fields, "value"); //$NON-NLS-1$
+			model.getValues().put(get(fields, "name"), value.length() == 0 ? null : parseDouble(value)); //$NON-NLS-1$
+		}
+	}
+
+	private void setting(String name, String value) throws IOException {
+		settings.put(name, value);
+		if(name.equals("groups")) { //$NON-NLS-1$
+			model.setGroupNo(parseInt(value));
+		} else if(name.equals("phases")) { //$NON-NLS-1$
+			model.setPhaseNo(parseInt(value));
+		} else if(name.equals("combinations")) { //$NON-NLS-1$
+			model.setCombinationNo(parseInt(value));
+		} else if(name.equals("variableCombinations")) { //$NON-NLS-1$
+			model.setVariableCombinationNo(parseInt(value));
+		} else if(name.equals("timestep")) { //$NON-NLS-1$
+			model.setTimestepSize(parseDouble(value));
+		} else if(name.equals("threshold")) { //$NON-NLS-1$
+			model.setThreshold(parseDouble(value));
+		} else if(name.equals("showResponse")) { //$NON-NLS-1$
+			model.setShowResponse(Boolean.parseBoolean(value));
+		} else if(name.equals("useContext")) { //$NON-NLS-1$
+			model.setUseContext(Boolean.parseBoolean(value));
+		} else if(name.equals("contextAcrossPhase")) { //$NON-NLS-1$
+			model.setContextAcrossPhase(Boolean.parseBoolean(value));
+		} else if(name.equals("contextAlpha")) { //$NON-NLS-1$
+			model.setContextAlpha(parseDouble(value));
+		} else if(name.equals("geometric")) { //$NON-NLS-1$
+			model.setIsGeometricMean(Boolean.parseBoolean(value));
+		} else if(name.equals("exponential")) { //$NON-NLS-1$
+			model.setIsExponential(Boolean.parseBoolean(value));
+		} else if(name.equals("trace")) { //$NON-NLS-1$
+			model.setTraceType(parseEnum(Trace.class, value));
+		} else if(name.equals("csc")) { //$NON-NLS-1$
+			model.setCSC(Boolean.parseBoolean(value));
+		}
+	}
+
+	private void startGroup(String name) throws IOException {
+		if(groupsDone) {
+			throw error("group after the values"); //$NON-NLS-1$
+		}
+		if(group == null) {
+			model.reinitialize();
+		} else {
+			finishGroup();
+		}
+		group = new SimGroup(name, model.getPhaseNo(), model.getCombinationNo(), model);
+	}
+
+	/**
+	 * Add the phase read so far to its group, as the controller does when
+	 * building groups from the phase table.
+	 */
+
+	private void finishPhase() throws IOException {
+		if(sequence == null) {
+			return;
+		}
+		if(iti == null) {
+			throw error("phase " + phaseIndex + " of " + group.getNameOfGroup() + " has no ITI"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		timing.setConfigured(true);
+		timing.reset();
+		timing.checkFilled(sequence);
+		if(!timing.isConfigured()) {
+			throw error("phase " + phaseIndex + " of " + group.getNameOfGroup() + " has cues without timings"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		ContextConfig phaseContext = model.isUseContext() ? context : ContextConfig.EMPTY;
+		if(!group.addPhase(sequence, random, phaseIndex, configurals(),
+				(TreeMap<String, String>) model.getConfigCuesNames(), timing, iti, phaseContext)) {
+			throw error("phase " + phaseIndex + " of " + group.getNameOfGroup() + " has an error"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		sequence = null;
+	}
+
+	private void finishGroup() throws IOException {
+		finishPhase();
+		model.addGroupIntoMap(group.getNameOfGroup(), group);
+	}
+
+	private void finishGroups() throws IOException {
+		if(groupsDone) {
+			return;
+		}
+		if(group == null) {
+			throw error("no groups"); //$NON-NLS-1$
+		}
+		finishGroup();
+		model.addValuesIntoMap();
+		groupsDone = true;
+	}
+
+	private boolean configurals() {
+		return Boolean.parseBoolean(settings.get("configurals")); //$NON-NLS-1$
+	}
+
+	private int distributionType() {
+		return model.isExponential() ? Distributions.EXPONENTIAL : Distributions.UNIFORM;
+	}
+
+	/**
+	 * @return the named field of a record.
+	 */
+
+	private String get(String[] fields, String name) throws IOException {
+		Map<String, Integer> positions = schema.get(fields[0]);
+		Integer position = positions == null ? null : positions.get(name);
+		if(position == null || position >= fields.length) {
+			throw error(fields[0] + " record has no " + name); //$NON-NLS-1$
+		}
+		return fields[position];
+	}
+
+	private int parseInt(String text) throws IOException {
+		try {
+			return Integer.parseInt(text);
+		} catch (NumberFormatException e) {
+			throw error("not a whole number: " + text); //$NON-NLS-1$
+		}
+	}
+
+	private long parseLong(String text) throws IOException {
+		try {
+			return Long.parseLong(text);
+		} catch (NumberFormatException e) {
+			throw error("not a whole number: " + text); //$NON-NLS-1$
+		}
+	}
+
+	private <E extends Enum<E>> E parseEnum(Class<E> type, String text) throws IOException {
+		try {
+			return Enum.valueOf(type, text);
+		} catch (IllegalArgumentException e) {
+			throw error("not a " + type.getSimpleName() + ": " + text); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private double parseDouble(String text) throws IOException {
+		try {
+			return Double.parseDouble(text);
+		} catch (NumberFormatException e) {
+			throw error("not a number: " + text); //$NON-NLS-1$
+		}
+	}
+
+	private IOException error(String message) {
+		return new IOException(source + ":" + line + ": " + message); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Split a line into fields, undoing the escapes.
+	 */
+
+	static String[] split(String text) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c == '\t') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if(c == '\\' && i + 1 < text.length()) {
+				char next = text.charAt(++i);
+				field.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	/**
+	 * Escape a field so it can be written on a line.
+	 */
+
+	static String escape(String field) {
+		if(field.indexOf('\\') < 0 && field.indexOf('\t') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+			return field;
+		}
+		StringBuilder escaped = new StringBuilder(field.length() + 8);
+		for(int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			switch(c) {
+			case '\\':
+				escaped.append("\\\\"); //$NON-NLS-1$
+				break;
+			case '\t':
+				escaped.append("\\t"); //$NON-NLS-1$
+				break;
+			case '\n':
+				escaped.append("\\n"); //$NON-NLS-1$
+				break;
+			case '\r':
+				escaped.append("\\r"); //$NON-NLS-1$
+				break;
+			default:
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+}
@@ -0,0 +1,143 @@
+package simulator.util.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.SimPhase;
+import simulator.configurables.ContextConfig;
+import simulator.configurables.FixedOnsetConfig;
+import simulator.configurables.ITIConfig;
+import simulator.configurables.StimulusOnsetConfig;
+import simulator.configurables.TimingConfiguration;
+import simulator.configurables.USConfiguration;
+import simulator.configurables.VariableOnsetConfig;
+
+/**
+ * Writes the design of an experiment to an experiment file, see
+ * {@link ExperimentReader} for the format. The design is taken from a
+ * model whose groups have been set up, so a file can be written without
+ * the view.
+ */
+
+public class ExperimentWriter {
+	/** Settings to write besides or instead of the model's. **/
+	private final Map<String, Object> extra = new LinkedHashMap<String, Object>();
+
+	/**
+	 * Add a setting that is not part of the model, such as a display option,
+	 * or replace one taken from the model. Readers that do not know a
+	 * setting ignore it.
+	 * @param name name of the setting.
+	 * @param value its value.
+	 */
+
+	public void setSetting(String name, Object value) {
+		extra.put(name, value);
+	}
+
+	/**
+	 * @param model model with its groups set up.
+	 * @param file file to write.
+	 * @throws IOException
+	 */
+
+	public void write(SimModel model, File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ExperimentReader.CHARSET));
+		try {
+			write(model, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param model model with its groups set up.
+	 * @param out writer to write to, left open.
+	 * @throws IOException
+	 */
+
+	public void write(SimModel model, Writer out) throws IOException {
+		record(out, ExperimentReader.MAGIC, ExperimentReader.VERSION);
+		for(String[] schema : ExperimentReader.SCHEMA) {
+			out.write(ExperimentReader.SCHEMA_PREFIX);
+			record(out, (Object[]) schema);
+		}
+		Map<String, Object> settings = new LinkedHashMap<String, Object>();
+		settings.put("groups", model.getGroupNo()); //$NON-NLS-1$
+		settings.put("phases", model.getPhaseNo()); //$NON-NLS-1$
+		settings.put("combinations", model.getCombinationNo()); //$NON-NLS-1$
+		settings.put("variableCombinations", model.getVariableCombinationNo()); //$NON-NLS-1$
+		settings.put("timestep", model.getTimestepSize()); //$NON-NLS-1$
+		settings.put("threshold", model.getThreshold()); //$NON-NLS-1$
+		settings.put("showResponse", model.showResponse()); //$NON-NLS-1$
+		settings.put("useContext", model.isUseContext()); //$NON-NLS-1$
+		settings.put("contextAcrossPhase", model.contextAcrossPhase()); //$NON-NLS-1$
+		settings.put("contextAlpha", model.getContextAlpha()); //$NON-NLS-1$
+		settings.put("geometric", model.isGeometricMean()); //$NON-NLS-1$
+		settings.put("exponential", model.isExponential()); //$NON-NLS-1$
+		settings.put("trace", model.getTraceType().name()); //$NON-NLS-1$
+		settings.put("csc", model.isCSC()); //$NON-NLS-1$
+		settings.put("configurals", !model.getConfigCuesNames().isEmpty()); //$NON-NLS-1$
+		settings.putAll(extra);
+		for(Entry<String, Object> setting : settings.entrySet()) {
+			record(out, "setting", setting.getKey(), setting.getValue()); //$NON-NLS-1$
+		}
+		for(SimGroup group : model.getGroups().values()) {
+			record(out, "group", group.getNameOfGroup()); //$NON-NLS-1$
+			int index = 1;
+			for(SimPhase phase : group.getPhases()) {
+				writePhase(out, index++, phase);
+			}
+		}
+		for(Entry<String, Double> value : model.getValues().entrySet()) {
+			record(out, "value", value.getKey(), value.getValue() == null ? "" : value.getValue()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		out.flush();
+	}
+
+	private void writePhase(Writer out, int index, SimPhase phase) throws IOException {
+		record(out, "phase", index, phase.isRandom(), phase.intialSequence()); //$NON-NLS-1$
+		ContextConfig context = phase.getContextConfig();
+		record(out, "context", context.getContext().name(), context.getAlpha()); //$NON-NLS-1$
+		TimingConfiguration timing = phase.getTimingConfig();
+		record(out, "timing", timing.getUsDuration(), timing.isReinforced()); //$NON-NLS-1$
+		for(Entry<String, StimulusOnsetConfig> onset : timing.getDurations().getMap().entrySet()) {
+			StimulusOnsetConfig config = onset.getValue();
+			if(config instanceof FixedOnsetConfig) {
+				record(out, "onset", onset.getKey(), "fixed", config.getMean(), ""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			} else {
+				record(out, "onset", onset.getKey(), "variable", config.getMean(), //$NON-NLS-1$ //$NON-NLS-2$
+						((VariableOnsetConfig) config).getSeed());
+			}
+		}
+		for(Entry<String, USConfiguration> relation : timing.getRelations().entrySet()) {
+			record(out, "us", relation.getKey(), relation.getValue().getType().name(), //$NON-NLS-1$
+					relation.getValue().getOffset());
+		}
+		ITIConfig iti = phase.getITI();
+		record(out, "iti", iti.getMinimum(), iti.getMean()); //$NON-NLS-1$
+	}
+
+	/**
+	 * Write one line of tab separated fields.
+	 */
+
+	private void record(Writer out, Object... fields) throws IOException {
+		for(int i = 0; i < fields.length; i++) {
+			if(i > 0) {
+				out.write('\t');
+			}
+			out.write(ExperimentReader.escape(String.valueOf(fields[i])));
+		}
+		out.write('\n');
+	}
+}
@@ -0,0 +1,172 @@
+package simulator.util.io;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import simulator.GroupListener;
+import simulator.ModelControl;
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.Simulator;
+
+/**
+ * Exports groups while the rest of the model is still being simulated.
+ * Groups are queued as they finish and written by a single export thread,
+ * so a run takes about as long as the slower of simulating and exporting
+ * rather than both. The queue is bounded: when export falls behind, the
+ * simulation threads wait for room rather than keeping every finished
+ * group's results waiting in memory. Exported groups can have their
+ * results released straight away.
+ */
+
+public class ExportPipeline implements GroupListener {
+	/** Marks the end of the queue. **/
+	private static final Object END = new Object();
+
+	private final GroupExporter exporter;
+	/** Finished groups waiting to be exported. **/
+	private final BlockingQueue<Object> queue;
+	/** Whether exported groups release their results. **/
+	private final boolean release;
+	/** Thread writing the groups, for the run under way. **/
+	private Thread consumer;
+	/** First failure of the exporter. **/
+	private volatile IOException failure;
+	private ModelControl control;
+
+	/**
+	 * @param exporter export to write the groups to.
+	 * @param capacity number of finished groups that may wait for export.
+	 * @param release true to drop each group's results once exported, when
+	 * they will not be looked at afterwards.
+	 */
+
+	public ExportPipeline(GroupExporter exporter, int capacity, boolean release) {
+		this.exporter = exporter;
+		this.release = release;
+		queue = new ArrayBlockingQueue<Object>(Math.max(capacity, 1));
+	}
+
+	/**
+	 * @param exporter export to write the groups to.
+	 * @param release true to drop each group's results once exported.
+	 */
+
+	public ExportPipeline(GroupExporter exporter, boolean release) {
+		this(exporter, Simulator.fjPool.getParallelism(), release);
+	}
+
+	/**
+	 * Simulate a model and export its groups as they finish.
+	 * @param model model to run.
+	 * @param control message passing object for the run, or null for a new one.
+	 * @throws IOException if the export failed.
+	 */
+
+	public void run(SimModel model, ModelControl control) throws IOException {
+		this.control = control == null ? new ModelControl() : control;
+		model.setControl(this.control);
+		if(exporter instanceof ResultExporter) {
+			//Rows written count towards the run
+			((ResultExporter) exporter).setControl(this.control);
+		}
+		failure = null;
+		exporter.begin();
+		model.setGroupListener(this);
+		consumer = new Thread(new Runnable() {
+			public void run() {
+				consume();
+			}
+		}, "Export pipeline"); //$NON-NLS-1$
+		consumer.start();
+		try {
+			model.startCalculations();
+		} finally {
+			model.setGroupListener(null);
+			finish();
+		}
+	}
+
+	/**
+	 * Queue a finished group, waiting while the queue is full. Groups are
+	 * dropped once the export has failed or the run has been cancelled.
+	 */
+
+	public void groupFinished(SimGroup group) {
+		try {
+			while(failure == null && !control.isCancelled()) {
+				if(queue.offer(group, 100, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Wait for the queued groups to be written and close the export.
+	 */
+
+	private void finish() throws IOException {
+		boolean interrupted = false;
+		boolean ended = false;
+		while(!ended) {
+			try {
+				queue.put(END);
+				ended = true;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		while(consumer.isAlive()) {
+			try {
+				consumer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if(failure != null) {
+			throw failure;
+		}
+	}
+
+	private void consume() {
+		try {
+			for(Object next = queue.take(); next != END; next = queue.take()) {
+				SimGroup group = (SimGroup) next;
+				if(failure == null && !control.isCancelled()) {
+					try {
+						exporter.exportGroup(group);
+					} catch (IOException e) {
+						failure = e;
+					} catch (RuntimeException e) {
+						//Keep the thread alive to drain the queue
+						failure = new IOException(e.toString(), e);
+					}
+					if(release) {
+						group.releaseResults();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			exporter.finish();
+		} catch (IOException e) {
+			if(failure == null) {
+				failure = e;
+			}
+		} catch (RuntimeException e) {
+			if(failure == null) {
+				failure = new IOException(e.toString(), e);
+			}
+		}
+	}
+}
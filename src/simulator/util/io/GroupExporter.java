@@ -0,0 +1,32 @@
+package simulator.util.io;
+
+import java.io.IOException;
+
+import simulator.SimGroup;
+
+/**
+ * An export that can be written one group at a time, in whatever order
+ * the groups are handed to it.
+ */
+
+public interface GroupExporter {
+
+	/**
+	 * Open the output and write anything that comes before the groups.
+	 * @throws IOException
+	 */
+	public void begin() throws IOException;
+
+	/**
+	 * @param group group to write, with its results complete.
+	 * @throws IOException
+	 */
+	public void exportGroup(SimGroup group) throws IOException;
+
+	/**
+	 * Write anything that comes after the groups and close the output,
+	 * removing it if the export was cancelled.
+	 * @throws IOException
+	 */
+	public void finish() throws IOException;
+}
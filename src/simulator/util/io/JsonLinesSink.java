@@ -0,0 +1,248 @@
+package simulator.util.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simulator.ResultSink;
+import simulator.SimGroup;
+
+/**
+ * Writes trial results as JSON lines while the model runs, one object per
+ * group, phase, cue and trial:
+ * <pre>
+ * {"group":"Group 1","phase":1,"cue":"A","trial":3,"weight":0.12,"response":0.0}
+ * </pre>
+ * Lines are formatted on the simulation threads and written by a single
+ * writer thread, a batch at a time. The queue between them is bounded
+ * rather than buffering the whole run. When the writer falls behind the
+ * simulation waits for it, so the file is complete; a sink made to drop
+ * lines instead, for a display that only needs to keep up, counts them
+ * and never holds the simulation up. The results kept in the model are
+ * complete either way. Readers can follow the file as it grows.
+ */
+
+public class JsonLinesSink implements ResultSink {
+	/** Marks the end of the queue. **/
+	private static final String END = new String();
+	/** Lines the writer takes from the queue at a time. **/
+	private static final int BATCH = 1024;
+
+	private final Writer out;
+	/** Formatted lines waiting to be written. **/
+	private final BlockingQueue<String> queue;
+	private final Thread writer;
+	/** First failure of the writer. **/
+	private volatile IOException failure;
+	/** Whether lines are dropped rather than waited for when the queue is full. **/
+	private final boolean dropping;
+	/** Lines dropped because the queue was full. **/
+	private final AtomicLong dropped = new AtomicLong();
+	private boolean closed;
+
+	/**
+	 * @param file file to write every result to.
+	 * @throws IOException if the file cannot be opened.
+	 */
+
+	public JsonLinesSink(File file) throws IOException {
+		this(new OutputStreamWriter(new FileOutputStream(file), ExperimentReader.CHARSET), 1 << 16, false);
+	}
+
+	/**
+	 * @param out writer to write the results to, closed with the sink.
+	 * @param capacity number of lines that may wait to be written.
+	 * @param dropping true to drop lines when the writer falls behind,
+	 * false to wait for it.
+	 */
+
+	public JsonLinesSink(Writer out, int capacity, boolean dropping) {
+		this.out = new BufferedWriter(out, 1 << 16);
+		this.dropping = dropping;
+		queue = new ArrayBlockingQueue<String>(Math.max(capacity, 1));
+		writer = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, "JSON lines sink"); //$NON-NLS-1$
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public void trialStored(SimGroup group, int phase, String cue, int trial, double weight, double response) {
+		if(failure != null) {
+			return;
+		}
+		StringBuilder line = new StringBuilder(96);
+		line.append("{\"group\":"); //$NON-NLS-1$
+		string(line, group.getNameOfGroup());
+		line.append(",\"phase\":").append(phase); //$NON-NLS-1$
+		line.append(",\"cue\":"); //$NON-NLS-1$
+		string(line, group.interfaceName(cue, group.getModel().getConfigCuesNames()));
+		line.append(",\"trial\":").append(trial); //$NON-NLS-1$
+		line.append(",\"weight\":"); //$NON-NLS-1$
+		number(line, weight);
+		line.append(",\"response\":"); //$NON-NLS-1$
+		number(line, response);
+		line.append("}\n"); //$NON-NLS-1$
+		if(dropping) {
+			if(!queue.offer(line.toString())) {
+				dropped.incrementAndGet();
+			}
+			return;
+		}
+		try {
+			//A failed writer discards what it takes, so this cannot wait forever
+			while(!queue.offer(line.toString(), 100, TimeUnit.MILLISECONDS)) {
+				if(failure != null) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			dropped.incrementAndGet();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the number of lines dropped so far because the writer could
+	 * not keep up, or a waiting simulation thread was interrupted.
+	 */
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Wait for the queued lines to be written, then close the output.
+	 * @throws IOException if any line could not be written.
+	 */
+
+	public synchronized void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		boolean interrupted = false;
+		boolean ended = false;
+		while(!ended) {
+			try {
+				queue.put(END);
+				ended = true;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		while(writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			if(failure == null) {
+				failure = e;
+			}
+		}
+		if(failure != null) {
+			throw failure;
+		}
+	}
+
+	private void drain() {
+		List<String> batch = new ArrayList<String>(BATCH);
+		try {
+			boolean end = false;
+			while(!end) {
+				batch.add(queue.take());
+				queue.drainTo(batch, BATCH - 1);
+				for(String line : batch) {
+					if(line == END) {
+						end = true;
+					} else if(failure == null) {
+						out.write(line);
+					}
+				}
+				batch.clear();
+				//Let readers following the file see whole batches
+				if(failure == null) {
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+			//Keep taking lines so the simulation is not held up
+			drainAfterFailure();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void drainAfterFailure() {
+		try {
+			while(queue.take() != END) {
+				//Discard
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void string(StringBuilder line, String value) {
+		line.append('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch(c) {
+			case '"':
+				line.append("\\\""); //$NON-NLS-1$
+				break;
+			case '\\':
+				line.append("\\\\"); //$NON-NLS-1$
+				break;
+			case '\n':
+				line.append("\\n"); //$NON-NLS-1$
+				break;
+			case '\r':
+				line.append("\\r"); //$NON-NLS-1$
+				break;
+			case '\t':
+				line.append("\\t"); //$NON-NLS-1$
+				break;
+			default:
+				if(c < 0x20) {
+					line.append(String.format("\\u%04x", (int) c)); //$NON-NLS-1$
+				} else {
+					line.append(c);
+				}
+			}
+		}
+		line.append('"');
+	}
+
+	/**
+	 * JSON has no NaN or infinities, they are written as null.
+	 */
+
+	private static void number(StringBuilder line, double value) {
+		if(Double.isNaN(value) || Double.isInfinite(value)) {
+			line.append("null"); //$NON-NLS-1$
+		} else {
+			line.append(value);
+		}
+	}
+}
@@ -0,0 +1,572 @@
+package simulator.util.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeMap;
+
+import simulator.CueList;
+import simulator.SimCue;
+import simulator.SimCue.Trace;
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.SimPhase;
+
+/**
+ * Read access to a result archive written by {@link ResultArchiveWriter}.
+ * The header and index are read when the archive is opened, the results
+ * of a cue are memory-mapped and turned into a CueList the first time
+ * they are asked for. The lists in those CueLists are read-only views
+ * of the mapped file.
+ *
+ * An archive is laid out, big-endian, as:
+ * <ul>
+ * <li>magic number, format version and, from version 2, a flags byte,</li>
+ * <li>model configuration: timestep, combinations, threshold, context
+ * alpha, flags, trace type and the parameter values by name,</li>
+ * <li>one block per group, phase and cue: list lengths, then trial
+ * averages, mean responses, largest component per trial, and each
+ * component's weights and responses, all aligned to eight bytes; in a
+ * compressed archive the columns of doubles are {@link WeightCodec}
+ * streams instead and nothing is aligned,</li>
+ * <li>an index of groups, phases and cues giving each block's offset,</li>
+ * <li>the offset of the index and the magic number again.</li>
+ * </ul>
+ */
+
+public class ResultArchive implements Closeable {
+	/** Identifies a result archive, "TDRA". **/
+	public static final int MAGIC = 0x54445241;
+	/** Current format version. **/
+	public static final short VERSION = 2;
+	/** Flag set when columns of doubles are compressed. **/
+	static final int COMPRESSED = 1;
+	/** Bytes after the index: its offset and the magic number. **/
+	private static final int FOOTER = 12;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final short version;
+	private final boolean compressed;
+	private double timestepSize;
+	private int combinationNo;
+	private int variableCombinationNo;
+	private double threshold;
+	private double contextAlpha;
+	private boolean useContext;
+	private boolean contextAcrossPhase;
+	private boolean showResponse;
+	private boolean geometricMean;
+	private boolean exponential;
+	private Trace traceType;
+	/** Parameter values by name. **/
+	private final Map<String, Double> values = new TreeMap<String, Double>();
+	/** Phases of each group, by group name in archive order. **/
+	private final Map<String, List<Phase>> groups = new LinkedHashMap<String, List<Phase>>();
+
+	/**
+	 * Open an archive, reading its header and index.
+	 * @param path archive to open.
+	 * @throws IOException if the file cannot be read or is not an archive.
+	 */
+
+	public ResultArchive(File path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		channel = file.getChannel();
+		try {
+			DataInputStream in = stream(0);
+			if(in.readInt() != MAGIC) {
+				throw new IOException(path + " is not a result archive");
+			}
+			version = in.readShort();
+			if(version > VERSION) {
+				throw new IOException(path + " was written by a newer version (" + version + ")");
+			}
+			compressed = version > 1 && (in.readByte() & COMPRESSED) != 0;
+			readConfiguration(in);
+			ByteBuffer footer = ByteBuffer.allocate(FOOTER);
+			channel.read(footer, channel.size() - FOOTER);
+			footer.flip();
+			long indexOffset = footer.getLong();
+			if(footer.getInt() != MAGIC) {
+				throw new IOException(path + " is incomplete");
+			}
+			readIndex(stream(indexOffset));
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	private DataInputStream stream(long position) throws IOException {
+		channel.position(position);
+		return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+	}
+
+	private void readConfiguration(DataInputStream in) throws IOException {
+		timestepSize = in.readDouble();
+		combinationNo = in.readInt();
+		variableCombinationNo = in.readInt();
+		threshold = in.readDouble();
+		contextAlpha = in.readDouble();
+		useContext = in.readBoolean();
+		contextAcrossPhase = in.readBoolean();
+		showResponse = in.readBoolean();
+		geometricMean = in.readBoolean();
+		exponential = in.readBoolean();
+		traceType = Trace.valueOf(in.readUTF());
+		int count = in.readInt();
+		for(int i = 0; i < count; i++) {
+			String name = in.readUTF();
+			double value = in.readDouble();
+			values.put(name, Double.isNaN(value) ? null : value);
+		}
+	}
+
+	private void readIndex(DataInputStream in) throws IOException {
+		int groupCount = in.readInt();
+		for(int g = 0; g < groupCount; g++) {
+			String name = in.readUTF();
+			int phaseCount = in.readInt();
+			List<Phase> phases = new ArrayList<Phase>(phaseCount);
+			for(int p = 0; p < phaseCount; p++) {
+				Phase phase = new Phase(in.readUTF(), in.readBoolean(), in.readInt(), in.readInt());
+				int cueCount = in.readInt();
+				for(int c = 0; c < cueCount; c++) {
+					String cue = in.readUTF();
+					phase.entries.put(cue, new CueEntry(cue, in.readDouble(), in.readInt(), in.readLong(), in.readLong()));
+				}
+				phases.add(phase);
+			}
+			groups.put(name, Collections.unmodifiableList(phases));
+		}
+	}
+
+	/**
+	 * Map a cue's block and build a CueList over it.
+	 */
+
+	private synchronized CueList load(CueEntry entry) throws IOException {
+		MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.length);
+		int averageCount = block.getInt();
+		int responseCount = block.getInt();
+		int maxCueCount = block.getInt();
+		int components = block.getInt();
+		int[] lengths = new int[components*2];
+		for(int i = 0; i < lengths.length; i++) {
+			lengths[i] = block.getInt();
+		}
+		CueList cues = new CueList(entry.name, entry.alpha, threshold, traceType);
+		if(compressed) {
+			loadEncoded(block, cues, lengths, maxCueCount, entry);
+		} else {
+			loadColumns(block, cues, lengths, averageCount, responseCount, maxCueCount, entry);
+		}
+		cues.setTrialCount(entry.trialCount);
+		return cues;
+	}
+
+	private void loadColumns(ByteBuffer block, CueList cues, int[] lengths, int averageCount,
+			int responseCount, int maxCueCount, CueEntry entry) {
+		int position = align(block.position());
+		cues.setAverageWeights(new DoubleColumn(block, position, averageCount));
+		position += averageCount*8;
+		cues.setAverageResponse(new DoubleColumn(block, position, responseCount));
+		position += responseCount*8;
+		cues.setMaxCueList(new IntColumn(block, position, maxCueCount));
+		position = align(position + maxCueCount*4);
+		for(int x = 0; x < lengths.length/2; x++) {
+			SimCue cue = new SimCue(entry.name, entry.alpha, traceType);
+			cue.setAssocValueVector(new DoubleColumn(block, position, lengths[2*x]));
+			position += lengths[2*x]*8;
+			cue.setResponses(new DoubleColumn(block, position, lengths[2*x + 1]));
+			position += lengths[2*x + 1]*8;
+			cues.add(cue);
+		}
+	}
+
+	private void loadEncoded(ByteBuffer block, CueList cues, int[] lengths, int maxCueCount,
+			CueEntry entry) throws IOException {
+		int position = block.position();
+		WeightCodec.Column column = new WeightCodec.Column(block, position);
+		cues.setAverageWeights(column);
+		position += column.byteLength();
+		column = new WeightCodec.Column(block, position);
+		cues.setAverageResponse(column);
+		position += column.byteLength();
+		cues.setMaxCueList(new IntColumn(block, position, maxCueCount));
+		position += maxCueCount*4;
+		for(int x = 0; x < lengths.length/2; x++) {
+			SimCue cue = new SimCue(entry.name, entry.alpha, traceType);
+			column = new WeightCodec.Column(block, position);
+			cue.setAssocValueVector(column);
+			position += column.byteLength();
+			column = new WeightCodec.Column(block, position);
+			cue.setResponses(column);
+			position += column.byteLength();
+			cues.add(cue);
+		}
+	}
+
+	private static int align(int position) {
+		return (position + 7) & ~7;
+	}
+
+	/**
+	 * Put the archived results into the phases of a model, which can then
+	 * be shown, graphed and exported as if it had just been run. Every cue
+	 * is mapped on the way, so the archive may be closed afterwards.
+	 * @param model model with the configuration, groups and phase sequences
+	 * the archive was written from.
+	 * @throws IOException if the model's configuration, groups or phases
+	 * differ from the archive's, or a cue cannot be read.
+	 */
+	public void restore(SimModel model) throws IOException {
+		checkConfiguration(model);
+		if(!new ArrayList<String>(model.getGroups().keySet()).equals(new ArrayList<String>(groups.keySet()))) {
+			throw new IOException("The archive has groups " + groups.keySet() + ", not " + model.getGroups().keySet());
+		}
+		for(SimGroup group : model.getGroups().values()) {
+			List<Phase> archived = groups.get(group.getNameOfGroup());
+			List<SimPhase> phases = group.getPhases();
+			if(phases.size() != archived.size()) {
+				throw new IOException("The archive has " + archived.size() + " phases in " + group.getNameOfGroup());
+			}
+			for(int i = 0; i < phases.size(); i++) {
+				if(!phases.get(i).intialSequence().equals(archived.get(i).intialSequence())) {
+					throw new IOException("Phase " + (i+1) + " of " + group.getNameOfGroup() + " is "
+							+ archived.get(i).intialSequence() + " in the archive");
+				}
+			}
+		}
+		for(SimGroup group : model.getGroups().values()) {
+			List<Phase> archived = groups.get(group.getNameOfGroup());
+			for(int i = 0; i < archived.size(); i++) {
+				Phase phase = archived.get(i);
+				try {
+					group.getPhases().get(i).restoreResults(phase.getResults(), phase.getMaxDuration());
+				} catch (IllegalStateException e) {
+					throw new IOException(e.getMessage(), e.getCause());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check the settings the results depend on against the model's.
+	 */
+
+	private void checkConfiguration(SimModel model) throws IOException {
+		check("timestep", timestepSize, model.getTimestepSize());
+		check("threshold", threshold, model.getThreshold());
+		check("trace", traceType, model.getTraceType());
+		check("combinations", combinationNo, model.getCombinationNo());
+		check("variable combinations", variableCombinationNo, model.getVariableCombinationNo());
+		check("context", useContext, model.isUseContext());
+		check("context across phases", contextAcrossPhase, model.contextAcrossPhase());
+		check("context alpha", contextAlpha, model.getContextAlpha());
+		check("geometric mean", geometricMean, model.isGeometricMean());
+		check("exponential", exponential, model.isExponential());
+		Map<String, Double> current = new TreeMap<String, Double>(model.getValues());
+		for(String name : values.keySet()) {
+			check(name, values.get(name), current.get(name));
+		}
+		for(String name : current.keySet()) {
+			if(!values.containsKey(name)) {
+				throw new IOException("The archive has no value for " + name);
+			}
+		}
+	}
+
+	private static void check(String setting, Object archived, Object current) throws IOException {
+		if(archived == null ? current != null : !archived.equals(current)) {
+			throw new IOException("The archive was run with " + setting + " " + archived + ", not " + current);
+		}
+	}
+
+	/**
+	 * @return the names of the groups in the archive, in order.
+	 */
+	public Set<String> getGroupNames() {
+		return Collections.unmodifiableSet(groups.keySet());
+	}
+
+	/**
+	 * @param group name of a group
+	 * @return the phases of the group, in order.
+	 */
+	public List<Phase> getPhases(String group) {
+		return groups.get(group);
+	}
+
+	/**
+	 * @return the format version the archive was written in.
+	 */
+	public short getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return true if weights and responses are stored compressed.
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	public double getTimestepSize() {
+		return timestepSize;
+	}
+
+	public int getCombinationNo() {
+		return combinationNo;
+	}
+
+	public int getVariableCombinationNo() {
+		return variableCombinationNo;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public double getContextAlpha() {
+		return contextAlpha;
+	}
+
+	public boolean isUseContext() {
+		return useContext;
+	}
+
+	public boolean contextAcrossPhase() {
+		return contextAcrossPhase;
+	}
+
+	public boolean showResponse() {
+		return showResponse;
+	}
+
+	public boolean isGeometricMean() {
+		return geometricMean;
+	}
+
+	public boolean isExponential() {
+		return exponential;
+	}
+
+	public Trace getTraceType() {
+		return traceType;
+	}
+
+	/**
+	 * @return the model's parameter values by name.
+	 */
+	public Map<String, Double> getValues() {
+		return Collections.unmodifiableMap(values);
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * A phase of an archived group.
+	 */
+
+	public class Phase {
+		private final String sequence;
+		private final boolean random;
+		private final int trials;
+		private final int maxDuration;
+		/** Index entries by cue name, in results order. **/
+		private final Map<String, CueEntry> entries = new TreeMap<String, CueEntry>();
+		/** Results built so far. **/
+		private final Map<String, CueList> loaded = new TreeMap<String, CueList>();
+		/** Lazy view of the results. **/
+		private final Map<String, CueList> results = new AbstractMap<String, CueList>() {
+			@Override
+			public CueList get(Object key) {
+				return key instanceof String ? getCue((String) key) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return entries.containsKey(key);
+			}
+
+			@Override
+			public Set<Entry<String, CueList>> entrySet() {
+				return new AbstractSet<Entry<String, CueList>>() {
+					@Override
+					public Iterator<Entry<String, CueList>> iterator() {
+						final Iterator<String> names = entries.keySet().iterator();
+						return new Iterator<Entry<String, CueList>>() {
+							public boolean hasNext() {
+								return names.hasNext();
+							}
+
+							public Entry<String, CueList> next() {
+								String name = names.next();
+								return new SimpleImmutableEntry<String, CueList>(name, getCue(name));
+							}
+
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return entries.size();
+					}
+				};
+			}
+		};
+
+		Phase(String sequence, boolean random, int trials, int maxDuration) {
+			this.sequence = sequence;
+			this.random = random;
+			this.trials = trials;
+			this.maxDuration = maxDuration;
+		}
+
+		/**
+		 * @param name cue name as used in the phase results
+		 * @return the cue's results, or null if the phase has no such cue.
+		 */
+
+		public CueList getCue(String name) {
+			CueEntry entry = entries.get(name);
+			if(entry == null) {
+				return null;
+			}
+			synchronized(loaded) {
+				CueList cues = loaded.get(name);
+				if(cues == null) {
+					try {
+						cues = load(entry);
+					} catch (IOException e) {
+						throw new IllegalStateException("Unable to read " + name + " from the archive", e);
+					}
+					loaded.put(name, cues);
+				}
+				return cues;
+			}
+		}
+
+		/**
+		 * @return a read-only map of the phase results, in the form
+		 * SimPhase.getResults gives them. Cues are read when first used.
+		 */
+		public Map<String, CueList> getResults() {
+			return results;
+		}
+
+		public String intialSequence() {
+			return sequence;
+		}
+
+		public boolean isRandom() {
+			return random;
+		}
+
+		public int getNoTrials() {
+			return trials;
+		}
+
+		public int getMaxDuration() {
+			return maxDuration;
+		}
+	}
+
+	/**
+	 * Index entry for a cue's block.
+	 */
+
+	private static class CueEntry {
+		final String name;
+		final double alpha;
+		final int trialCount;
+		final long offset;
+		final long length;
+
+		CueEntry(String name, double alpha, int trialCount, long offset, long length) {
+			this.name = name;
+			this.alpha = alpha;
+			this.trialCount = trialCount;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Read-only list view of doubles in a mapped block.
+	 */
+
+	private static class DoubleColumn extends AbstractList<Double> implements RandomAccess {
+		private final DoubleBuffer values;
+
+		DoubleColumn(ByteBuffer block, int position, int length) {
+			ByteBuffer slice = block.duplicate();
+			slice.position(position);
+			slice.limit(position + length*8);
+			values = slice.slice().asDoubleBuffer();
+		}
+
+		@Override
+		public Double get(int index) {
+			return values.get(index);
+		}
+
+		@Override
+		public int size() {
+			return values.limit();
+		}
+	}
+
+	/**
+	 * Read-only list view of ints in a mapped block.
+	 */
+
+	private static class IntColumn extends AbstractList<Integer> implements RandomAccess {
+		private final IntBuffer values;
+
+		IntColumn(ByteBuffer block, int position, int length) {
+			ByteBuffer slice = block.duplicate();
+			slice.position(position);
+			slice.limit(position + length*4);
+			values = slice.slice().asIntBuffer();
+		}
+
+		@Override
+		public Integer get(int index) {
+			return values.get(index);
+		}
+
+		@Override
+		public int size() {
+			return values.limit();
+		}
+	}
+}
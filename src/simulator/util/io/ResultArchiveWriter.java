@@ -0,0 +1,334 @@
+package simulator.util.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import simulator.CueList;
+import simulator.ModelControl;
+import simulator.SimCue;
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.SimPhase;
+import simulator.SimulationMonitor;
+
+/**
+ * Writes the results of a simulation to a result archive, see
+ * {@link ResultArchive} for the layout. Results are streamed group by
+ * group, phase by phase and cue by cue, and the index is written last.
+ * Weights and responses are compressed with {@link WeightCodec} unless
+ * asked otherwise. Groups can also be written one at a time as they
+ * finish, see {@link ExportPipeline}, or the whole model on its own
+ * thread as a {@link ResultExporter}.
+ */
+
+public class ResultArchiveWriter implements ResultExporter, GroupExporter {
+	/** Model and file being written. **/
+	private SimModel model;
+	private File file;
+	/** Output to the archive. **/
+	private DataOutputStream out;
+	/** Bytes written so far. **/
+	private CountingStream position;
+	/** Index built up while writing blocks. **/
+	private DataOutputStream index;
+	private ByteArrayOutputStream indexBytes;
+	/** Groups written so far. **/
+	private int groupCount;
+	/** Whether columns of doubles are compressed. **/
+	private boolean compressed = true;
+	private boolean success = true;
+	private ModelControl control;
+
+	/**
+	 * @param compressed false to store weights and responses as plain
+	 * doubles, which are larger on disk but read without decoding.
+	 */
+
+	public void setCompressed(boolean compressed) {
+		this.compressed = compressed;
+	}
+
+	public ResultArchiveWriter() {
+	}
+
+	/**
+	 * @param model model whose groups will be written.
+	 * @param file file to write.
+	 */
+
+	public ResultArchiveWriter(SimModel model, File file) {
+		this.model = model;
+		this.file = file;
+	}
+
+	/**
+	 * Write the configuration and results of a model to a file. A cancelled
+	 * write leaves no file behind.
+	 * @param model model that has been run.
+	 * @param file file to write.
+	 * @throws IOException
+	 */
+
+	public void write(SimModel model, File file) throws IOException {
+		this.model = model;
+		this.file = file;
+		begin();
+		try {
+			for(SimGroup group : model.getGroups().values()) {
+				if(isCancelled()) {
+					break;
+				}
+				writeGroup(group);
+				if(control != null) {
+					control.incrementProgress(1);
+				}
+			}
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+		finish();
+	}
+
+	private boolean isCancelled() {
+		return control != null && control.isCancelled();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		if(control != null) {
+			SimulationMonitor.get().watchExport(control);
+		}
+		try {
+			write(model, file);
+			if(control != null) {
+				control.setProgress(100);
+			}
+		} catch (IOException e) {
+			success = false;
+		}
+	}
+
+	/**
+	 * @return true if the archive was written.
+	 */
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 * @param control message passing object for progress and cancellation.
+	 */
+	public void setControl(ModelControl control) {
+		this.control = control;
+	}
+
+	/**
+	 * Open the file and write the header and configuration.
+	 * @throws IOException
+	 */
+
+	public void begin() throws IOException {
+		position = new CountingStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out = new DataOutputStream(position);
+		indexBytes = new ByteArrayOutputStream();
+		index = new DataOutputStream(indexBytes);
+		groupCount = 0;
+		try {
+			out.writeInt(ResultArchive.MAGIC);
+			out.writeShort(ResultArchive.VERSION);
+			out.writeByte(compressed ? ResultArchive.COMPRESSED : 0);
+			writeConfiguration(model);
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param group group to add to the archive.
+	 * @throws IOException
+	 */
+
+	public void exportGroup(SimGroup group) throws IOException {
+		writeGroup(group);
+	}
+
+	/**
+	 * Write the index and footer and close the file, or delete it if the
+	 * write has been cancelled.
+	 * @throws IOException
+	 */
+
+	public void finish() throws IOException {
+		if(isCancelled()) {
+			out.close();
+			file.delete();
+			return;
+		}
+		try {
+			pad();
+			long indexOffset = position.count;
+			out.writeInt(groupCount);
+			index.flush();
+			indexBytes.writeTo(out);
+			out.writeLong(indexOffset);
+			out.writeInt(ResultArchive.MAGIC);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeConfiguration(SimModel model) throws IOException {
+		out.writeDouble(model.getTimestepSize());
+		out.writeInt(model.getCombinationNo());
+		out.writeInt(model.getVariableCombinationNo());
+		out.writeDouble(model.getThreshold());
+		out.writeDouble(model.getContextAlpha());
+		out.writeBoolean(model.isUseContext());
+		out.writeBoolean(model.contextAcrossPhase());
+		out.writeBoolean(model.showResponse());
+		out.writeBoolean(model.isGeometricMean());
+		out.writeBoolean(model.isExponential());
+		out.writeUTF(model.getTraceType().name());
+		Map<String, Double> values = model.getValues();
+		out.writeInt(values.size());
+		for(Entry<String, Double> value : values.entrySet()) {
+			out.writeUTF(value.getKey());
+			out.writeDouble(value.getValue() == null ? Double.NaN : value.getValue());
+		}
+	}
+
+	private void writeGroup(SimGroup group) throws IOException {
+		groupCount++;
+		index.writeUTF(group.getNameOfGroup());
+		List<SimPhase> phases = group.getPhases();
+		index.writeInt(phases.size());
+		for(SimPhase phase : phases) {
+			index.writeUTF(phase.intialSequence());
+			index.writeBoolean(phase.isRandom());
+			index.writeInt(phase.getNoTrials());
+			index.writeInt(phase.getMaxDuration());
+			Map<String, CueList> results = phase.getResults();
+			index.writeInt(results.size());
+			for(Entry<String, CueList> cue : results.entrySet()) {
+				writeCue(cue.getKey(), cue.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Write a cue's block and its index entry. The block holds the list
+	 * lengths, then the trial averages, the largest component per trial and
+	 * each component's weights and responses as contiguous columns, or as
+	 * encoded streams if compressed.
+	 */
+
+	private void writeCue(String name, CueList cues) throws IOException {
+		pad();
+		long offset = position.count;
+		List<Double> averages = cues.getAverageWeights();
+		List<Double> responses = cues.getAverageResponse();
+		List<Integer> maxCues = cues.getMaxCueList();
+		out.writeInt(averages.size());
+		out.writeInt(responses.size());
+		out.writeInt(maxCues.size());
+		out.writeInt(cues.size());
+		for(SimCue cue : cues) {
+			out.writeInt(cue.getAssocValueVector().size());
+			out.writeInt(cue.getResponses().size());
+		}
+		if(compressed) {
+			encode(averages);
+			encode(responses);
+			for(Integer max : maxCues) {
+				out.writeInt(max);
+			}
+			for(SimCue cue : cues) {
+				encode(cue.getAssocValueVector());
+				encode(cue.getResponses());
+			}
+		} else {
+			writeColumns(cues, averages, responses, maxCues);
+		}
+		index.writeUTF(name);
+		index.writeDouble(cues.getAlpha());
+		index.writeInt(cues.getTrialCount());
+		index.writeLong(offset);
+		index.writeLong(position.count - offset);
+	}
+
+	private void writeColumns(CueList cues, List<Double> averages, List<Double> responses,
+			List<Integer> maxCues) throws IOException {
+		pad();
+		writeDoubles(averages);
+		writeDoubles(responses);
+		for(Integer max : maxCues) {
+			out.writeInt(max);
+		}
+		pad();
+		for(SimCue cue : cues) {
+			writeDoubles(cue.getAssocValueVector());
+			writeDoubles(cue.getResponses());
+		}
+	}
+
+	private void encode(List<Double> values) throws IOException {
+		WeightCodec.Encoder encoder = new WeightCodec.Encoder(out);
+		encoder.appendAll(values);
+		encoder.finish();
+	}
+
+	private void writeDoubles(List<Double> values) throws IOException {
+		for(Double value : values) {
+			out.writeDouble(value);
+		}
+	}
+
+	/**
+	 * Align the next write to eight bytes, so columns can be viewed as
+	 * doubles in place.
+	 */
+
+	private void pad() throws IOException {
+		while(position.count % 8 != 0) {
+			out.writeByte(0);
+		}
+	}
+
+	/**
+	 * Stream keeping a count of the bytes written, which may pass 2GB.
+	 */
+
+	private static class CountingStream extends FilterOutputStream {
+		long count;
+
+		CountingStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
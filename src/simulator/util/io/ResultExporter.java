@@ -0,0 +1,21 @@
+package simulator.util.io;
+
+import simulator.ModelControl;
+
+/**
+ * An export of simulation results that runs on its own thread, reporting
+ * progress per group through a ModelControl.
+ */
+
+public interface ResultExporter extends Runnable {
+	
+	/**
+	 * @param control message passing object for progress and cancellation.
+	 */
+	public void setControl(ModelControl control);
+
+	/**
+	 * @return true if the export succeeded
+	 */
+	public boolean isSuccess();
+}
@@ -27,14 +27,17 @@ package simulator.util.io;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
 import javax.swing.table.AbstractTableModel;
 
 import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
@@ -43,6 +46,8 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFFont;
@@ -53,7 +58,12 @@ import simulator.SimGroup;
 import simulator.SimModel;
 import simulator.SimPhase;
 import simulator.SimView;
+import simulator.SimulationMonitor;
+import simulator.Simulator;
 import simulator.configurables.ContextConfig.Context;
+import simulator.events.EngineEvents;
+import extra166y.Ops;
+import extra166y.ParallelArray;
 
 /**
  * Exports the results from the simulator to a spreadsheet. It uses the HSSF
@@ -64,7 +74,11 @@ import simulator.configurables.ContextConfig.Context;
  * that has a different sheet for every model's group. Every phase is represented
  * with a different table.
  */
-public class SimExport implements Runnable {
+public class SimExport implements ResultExporter, GroupExporter {
+	/** Rows kept in memory per sheet while streaming. **/
+	private static final int ROW_WINDOW = 100;
+	/** Header rows above the trials in the trials as rows layout. **/
+	private static final int HEADER_ROWS = 2;
     private Map<String, SimGroup> groups; 
     private Font groupFont, titleFont, tableTopFont, tableContFont;
     private Workbook wb;
@@ -72,11 +86,24 @@ public class SimExport implements Runnable {
     private Cell cell;
     private CellStyle cs1,cs2,cs3,cs4,cs5;
     private final SimModel model;
-    private SimView view;
+    /** Parameter tables shown at the top of each group's sheet. **/
+    private final AbstractTableModel csValues, usValues, otherValues;
+    /** Whether compound cues are exported. **/
+    private final boolean compounds;
     private String name;
 	private File file;
 	private boolean success;
 	private ModelControl control;
+	/** Whether trials are written as rows on separate sheets per phase. **/
+	private boolean trialsAsRows;
+	/** Sheets holding the phase results of the group this part renders. **/
+	private final List<Sheet> phaseSheets = new ArrayList<Sheet>();
+	/** First failure writing out this part's rows. **/
+	private IOException failure;
+	/** Sheet and part of each group, by name. **/
+	private Map<String, Sheet> sheets;
+	private Map<String, SimExport> parts;
+	private FileOutputStream fileOut;
         
     /**
      * SimExport's Constructor method.
@@ -85,45 +112,189 @@ public class SimExport implements Runnable {
      * @param directory the last chosen directory
      */
     public SimExport(SimView view, SimModel model, String name, File file) {
-    	this.view = view;
+    	this(model, view.getCSValuesTableModel(), view.getUSValuesTableModel(), view.getOtherValuesTableModel(),
+    			view.getIsSetCompound(), name, file);
+    }
+    
+    /**
+     * An export that takes its parameter tables from the caller rather than
+     * the view, for running without one.
+     * @param model the current model where that values will come from.
+     * @param csValues CS alphas by interface name, as the CS values table holds them.
+     * @param usValues US parameters, as the US values table holds them.
+     * @param otherValues other parameters, as the other values table holds them.
+     * @param compounds whether compound cues are exported.
+     * @param name title written at the top of each sheet.
+     * @param file file to write.
+     */
+    public SimExport(SimModel model, AbstractTableModel csValues, AbstractTableModel usValues,
+    		AbstractTableModel otherValues, boolean compounds, String name, File file) {
+    	this.csValues = csValues;
+    	this.usValues = usValues;
+    	this.otherValues = otherValues;
+    	this.compounds = compounds;
         this.model = model;
         this.file = file;
         this.name = name;
         success = true;
     }
+    
+    /**
+     * A part of an export rendering one group into a shared workbook, with
+     * its own row and cell cursors.
+     * @param parent export the part belongs to
+     */
+    
+    private SimExport(SimExport parent) {
+    	csValues = parent.csValues;
+    	usValues = parent.usValues;
+    	otherValues = parent.otherValues;
+    	compounds = parent.compounds;
+    	model = parent.model;
+    	file = parent.file;
+    	name = parent.name;
+    	wb = parent.wb;
+    	groups = parent.groups;
+    	cs1 = parent.cs1;
+    	cs2 = parent.cs2;
+    	cs3 = parent.cs3;
+    	cs4 = parent.cs4;
+    	cs5 = parent.cs5;
+    	control = parent.control;
+    	trialsAsRows = parent.trialsAsRows;
+    	success = true;
+    }
   
     public void doExport() throws IOException {
+    	begin();
+    	try {
+    		ParallelArray<SimGroup> groupPool = ParallelArray.createEmpty(groups.size(), SimGroup.class, Simulator.fjPool);
+    		groupPool.asList().addAll(groups.values());
+    		groupPool.apply(new Ops.Procedure<SimGroup>() {
+    			@Override
+    			public void op(SimGroup group) {
+    				if(control.isCancelled()) {
+    					return;
+    				}
+    				long estimatedCycle = System.currentTimeMillis();
+    				exportGroup(group);
+    				control.incrementProgress(1);
+    				control.setEstimatedCycleTime(System.currentTimeMillis()-estimatedCycle);
+    			}
+    		});
+    	} finally {
+    		finish();
+    	}
+        control.setProgress(100);
+    }
+    
+    /**
+     * Create the workbook and a sheet for every group, in the model's
+     * order whatever order the groups are exported in.
+     * @throws IOException
+     */
+    
+    public void begin() throws IOException {
+    	if(control == null) {
+    		control = new ModelControl();
+    	}
+        SimulationMonitor.get().watchExport(control);
         row = null;
         cell = null;
-    	wb = new SXSSFWorkbook();
+    	wb = new SXSSFWorkbook(ROW_WINDOW);
     	createStyles();        
-    	FileOutputStream fileOut = new FileOutputStream(file);
+    	fileOut = new FileOutputStream(file);
                 
     	groups = model.getGroups();
-        Set<String> setGroups = groups.keySet();
-        Iterator<String> iterGroups = setGroups.iterator();
-        
-        
-        //Generate iteration between groups.
-        while(iterGroups.hasNext() && !control.isCancelled()) {
-        	long estimatedCycle = System.currentTimeMillis();
-        	exportGroup(iterGroups.next(), name);
-        	control.incrementProgress(1);
-        	control.setEstimatedCycleTime(System.currentTimeMillis()-estimatedCycle);
-        }
-        if(!control.isCancelled()) {
-        	wb.write(fileOut);
-        }
-        fileOut.close();
-        control.setProgress(100);
+    	//Trials can only go across if the longest phase fits in a row
+    	trialsAsRows |= maxTrials() >= SpreadsheetVersion.EXCEL2007.getMaxColumns();
+    	
+    	//Group sheets are created in order, then each is rendered to its own
+    	//temporary part, concurrently or as the groups finish. The parts are
+    	//assembled on writing.
+    	sheets = new LinkedHashMap<String, Sheet>();
+    	parts = new LinkedHashMap<String, SimExport>();
+    	for(Entry<String, SimGroup> group : groups.entrySet()) {
+    		sheets.put(group.getKey(), wb.createSheet(group.getValue().getNameOfGroup()));
+    		parts.put(group.getKey(), new SimExport(this));
+    	}
+    }
+    
+    /**
+     * Render a group to its sheet. Groups may be exported concurrently.
+     * @param group group to export, with its results complete.
+     */
+    
+    public void exportGroup(SimGroup group) {
+    	String groupName = group.getNameOfGroup();
+    	SimExport part = parts.get(groupName);
+    	Sheet sheet = sheets.get(groupName);
+    	EngineEvents.Span span = EngineEvents.get().exportSheet("xlsx", groupName, group.getNoOfPhases()); //$NON-NLS-1$
+    	try {
+    		part.exportGroup(groupName, sheet, name);
+    	} finally {
+    		span.end();
+    	}
+    	control.addRowsWritten(part.rowsWritten(sheet));
     }
     
-    private void exportGroup(String groupName, String name) {
+    /**
+     * Order the sheets and write the workbook. A cancelled export leaves
+     * no file behind.
+     * @throws IOException
+     */
+    
+    public void finish() throws IOException {
+    	if(fileOut == null) {
+    		return;
+    	}
+    	try {
+    		//Keep each group's phase sheets after it
+    		if(trialsAsRows) {
+    			int index = 0;
+    			for(Entry<String, SimExport> part : parts.entrySet()) {
+    				wb.setSheetOrder(sheets.get(part.getKey()).getSheetName(), index++);
+    				for(Sheet phaseSheet : part.getValue().phaseSheets) {
+    					wb.setSheetOrder(phaseSheet.getSheetName(), index++);
+    				}
+    			}
+    		}
+    		for(SimExport part : parts.values()) {
+    			if(part.failure != null) {
+    				throw part.failure;
+    			}
+    		}
+    		if(!control.isCancelled()) {
+    			wb.write(fileOut);
+    		}
+    	} finally {
+    		fileOut.close();
+    		fileOut = null;
+    		if(control.isCancelled()) {
+    			file.delete();
+    		}
+    	}
+    }
+    
+    /**
+     * @param sheet the group's sheet.
+     * @return the rows this part has written, on the group's sheet and its
+     * phase sheets.
+     */
+    
+    private int rowsWritten(Sheet sheet) {
+    	int rows = sheet.getPhysicalNumberOfRows();
+    	for(Sheet phaseSheet : phaseSheets) {
+    		rows += phaseSheet.getPhysicalNumberOfRows();
+    	}
+    	return rows;
+    }
+    
+    private void exportGroup(String groupName, Sheet sheet, String name) {
 
     	int rowPos = 0;
     	int colPos = 0;
         final SimGroup group = groups.get(groupName);
-        final Sheet sheet = wb.createSheet(group.getNameOfGroup());
         
     	// Modified by Alberto Fern�ndez July-2011
        
@@ -216,7 +387,7 @@ public class SimExport implements Runnable {
     	
     	rowPos++;
     	
-        AbstractTableModel cstmv = view.getCSValuesTableModel();
+        AbstractTableModel cstmv = csValues;
         for (int r = 0; r < cstmv.getRowCount(); r++){
         	//if (group.getCuesMap().containsKey(cstmv.getValueAt(r,0))){
         	if (group.getCuesMap().containsKey(model.interfaceName2cueName((String)cstmv.getValueAt(r,0)))){
@@ -254,7 +425,7 @@ public class SimExport implements Runnable {
     	
     	rowPos++;
     	
-	    AbstractTableModel ustmv = view.getUSValuesTableModel();
+	    AbstractTableModel ustmv = usValues;
         for (int r = 0; r < ustmv.getRowCount(); r++){
         	Object ovalue = ustmv.getValueAt(r, 1);
         	row = sheet.createRow(rowPos);
@@ -278,7 +449,7 @@ public class SimExport implements Runnable {
     	//sheet.addMergedRegion(new Region(rowPos, (short)(colPos), rowPos, (short)(colPos + 1)));
     	
     	rowPos++;
-        AbstractTableModel otmv = view.getOtherValuesTableModel();
+        AbstractTableModel otmv = otherValues;
         for (int r = 0; r < otmv.getRowCount(); r++){
         	Object ovalue = otmv.getValueAt(r, 1);
         	row = sheet.createRow(rowPos);
@@ -417,6 +588,18 @@ public class SimExport implements Runnable {
         	cell.setCellStyle(cs4);
          	
          	rowPos += 2;
+         	
+         	if(trialsAsRows) {
+         		//Results go on their own sheets, one row per trial
+         		List<String> sheets = exportPhaseRows(group, i, curPhase);
+         		row = sheet.createRow(rowPos);
+         		cell = row.createCell(colPos);
+         		String list = sheets.toString();
+         		cell.setCellValue("Results on sheets: " + list.substring(1, list.length() - 1));
+         		cell.setCellStyle(cs2);
+         		rowPos++;
+         		continue;
+         	}
           	
          	// max = maximum number of trial of all the cues in the phase
          	int max = 0;
@@ -454,7 +637,7 @@ public class SimExport implements Runnable {
      		}
      		rowPos++;
      		// export compound Cues
-     		for (int y = 1; view.getIsSetCompound() && y < cueNames.length + 1; y++) {
+     		for (int y = 1; compounds && y < cueNames.length + 1; y++) {
      			String cueName = (String)cueNames[y-1];
      			if (cueName.length() > 1 && curPhase.isCueInStimuli(cueName)) {
      				rowPos = exportComponents(cueName, curPhase, sheet, rowPos, colPos, results);
@@ -489,7 +672,7 @@ public class SimExport implements Runnable {
      		}
      		rowPos++;
      		// export compound Cues
-     		for (int y = 1; view.getIsSetCompound() && y < cueNames.length + 1; y++) {
+     		for (int y = 1; compounds && y < cueNames.length + 1; y++) {
      			String cueName = (String)cueNames[y-1];
      			if (cueName.length() > 1 && curPhase.isCueInStimuli(cueName)) {
      				rowPos = exportTrial(cueName, curPhase, sheet, rowPos, colPos, results);
@@ -523,7 +706,7 @@ public class SimExport implements Runnable {
          			}
          		}
          	// export compound Cues
-         		for (int y = 1; view.getIsSetCompound() && y < cueNames.length + 1; y++) {
+         		for (int y = 1; compounds && y < cueNames.length + 1; y++) {
          			String cueName = (String)cueNames[y-1];
          			if (cueName.length() > 1 && curPhase.isCueInStimuli(cueName)) {
          				rowPos = exportResponse(cueName, curPhase, sheet, rowPos, colPos, results);
@@ -556,7 +739,7 @@ public class SimExport implements Runnable {
          			}
          		}
          	// export compound Cues
-         		for (int y = 1; view.getIsSetCompound() && y < cueNames.length + 1; y++) {
+         		for (int y = 1; compounds && y < cueNames.length + 1; y++) {
          			String cueName = (String)cueNames[y-1];
          			if (cueName.length() > 1 && curPhase.isCueInStimuli(cueName)) {
          				rowPos = exportAverageResponse(cueName, curPhase, sheet, rowPos, colPos, results);
@@ -629,6 +812,24 @@ public class SimExport implements Runnable {
         	}
         	sheet.setColumnWidth(0, (short) ((50 * 5) / ((double) 1 / 20)));
         }
+        flush(sheet);
+    }
+    
+    /**
+     * Write out the rows of a finished sheet on this thread. Rows left in
+     * the window are only written when the whole workbook is, one sheet
+     * after another.
+     * @param sheet sheet to flush
+     */
+    
+    private void flush(Sheet sheet) {
+    	try {
+    		((SXSSFSheet) sheet).flushRows();
+    	} catch (IOException e) {
+    		if(failure == null) {
+    			failure = e;
+    		}
+    	}
     }
     
      
@@ -723,24 +924,12 @@ public class SimExport implements Runnable {
         	String interfaceName = getInterfaceName(cueName);
      		if (curPhase.isCueInStimuli(cueName)) {
  	   			CueList cues = results.get(cueName);
- 	   			for (int x = 0; x < 1; x++){
- 	   				row = sheet.createRow(rowPos);
- 	   				for(int z = 0; z <= cues.getTrialCount(); z++) {
- 	   					if (z == 0) {
- 	   						cell = row.createCell((colPos + z));
- 	   						cell.setCellValue(interfaceName + "");
- 	   						cell.setCellStyle(cs3);
- 	   					} else {
- 	   						
- 	   						cell = row.createCell((colPos + z));
- 	   						cell.setCellValue(cues.averageAssoc(z-1));
- 	   						cell.setCellStyle(cs4);
- 	   						//sheet.setColumnWidth(x, (short) ((50 * 4) / ((double) 1 / 20)));
- 	   					}
- 	   				}
- 	   				rowPos++;
-        		//}
- 	   			}
+ 	   			row = sheet.createRow(rowPos);
+ 	   			cell = row.createCell(colPos);
+ 	   			cell.setCellValue(interfaceName + "");
+ 	   			cell.setCellStyle(cs3);
+ 	   			valueRow(row, colPos + 1, block(cues.getAverageWeights(), cues.getTrialCount()), cs4);
+ 	   			rowPos++;
      		}
      	return rowPos;
     }
@@ -752,6 +941,17 @@ public class SimExport implements Runnable {
      */
     
     protected String getInterfaceName(String cueName) {
+    	return getInterfaceName(model, cueName);
+    }
+    
+    /**
+     * Format the print name of a cue
+     * @param model model the cue belongs to
+     * @param cueName
+     * @return
+     */
+    
+    static String getInterfaceName(SimModel model, String cueName) {
     	String interfaceName;
     	if (cueName.length() > 1) {
  			if (Character.isUpperCase(cueName.charAt(cueName.length()-1))) { //compound
@@ -790,19 +990,10 @@ public class SimExport implements Runnable {
  	   			for (int x = 0; x < cues.size()  && x < curPhase.getMaxDuration(); x++) {
  	   				row = sheet.createRow(rowPos);
  	   				SimCue curcue = cues.get(x);
- 	   				for (int z = 0; z <= cues.getTrialCount(); z++) { 
- 	   					if (z == 0) {
- 	   						cell = row.createCell((colPos));
- 	   						cell.setCellValue(interfaceName + " Component "+(x+1));
- 	   						cell.setCellStyle(cs3);
- 	   					} else {
- 	   						
- 	   						cell = row.createCell((colPos + z));
- 	   						cell.setCellValue(curcue.getAssocValueVector().get(z-1).doubleValue());
- 	   						cell.setCellStyle(cs4);
- 	   						
- 	   					}
- 	   				}
+ 	   				cell = row.createCell((colPos));
+ 	   				cell.setCellValue(interfaceName + " Component "+(x+1));
+ 	   				cell.setCellStyle(cs3);
+ 	   				valueRow(row, colPos + 1, block(curcue.getAssocValueVector(), cues.getTrialCount()), cs4);
  	   				rowPos++;
  	   			}
      		} 
@@ -829,22 +1020,10 @@ public class SimExport implements Runnable {
  	   			for (int x = 0; x < cues.size() && x < curPhase.getMaxDuration(); x++) {
  	   				row = sheet.createRow(rowPos);
  	   				SimCue curcue = cues.get(x);
- 	   				for (int z = 0; z <= cues.getTrialCount(); z++) { 
- 	   					if (z == 0) {
- 	   						cell = row.createCell((colPos));
- 	   						cell.setCellValue(interfaceName + " Component "+(x+1));
- 	   						cell.setCellStyle(cs3);
- 	   					} else {
- 	   						
- 	   						cell = row.createCell((colPos + z));
- 	   						cell.setCellValue(curcue.response(z-1));
- 	   						cell.setCellStyle(cs4);
- 	   						if(cues.getMaxCueList().get(z-1) < x) {
- 	   							//cell.setCellStyle(cs5);
- 	   						}
- 	   						//sheet.setColumnWidth(z, (short) ((50 * 4) / ((double) 1 / 20)));
- 	   					}
- 	   				}
+ 	   				cell = row.createCell((colPos));
+ 	   				cell.setCellValue(interfaceName + " Component "+(x+1));
+ 	   				cell.setCellStyle(cs3);
+ 	   				valueRow(row, colPos + 1, block(curcue.getResponses(), cues.getTrialCount()), cs4);
  	   				rowPos++;
  	   			}
      		} 
@@ -869,24 +1048,232 @@ public class SimExport implements Runnable {
         		interfaceName = getInterfaceName(cueName);
  	   			CueList cues = results.get(cueName);
  	   		row = sheet.createRow(rowPos);	
- 	   		for (int z = 0; z <= cues.getTrialCount(); z++) { 
-					if (z == 0) {
-						cell = row.createCell((colPos));
-						cell.setCellValue("Mean response "+interfaceName);
-						cell.setCellStyle(cs3);
-					} else {
-						
-						cell = row.createCell((colPos + z));
-						cell.setCellValue(cues.averageResponse(z-1));
-						cell.setCellStyle(cs4);
-						//sheet.setColumnWidth(z, (short) ((50 * 4) / ((double) 1 / 20)));
-					}
-				}
+ 	   		cell = row.createCell((colPos));
+ 	   		cell.setCellValue("Mean response "+interfaceName);
+ 	   		cell.setCellStyle(cs3);
+ 	   		valueRow(row, colPos + 1, block(cues.getAverageResponse(), cues.getTrialCount()), cs4);
  	   				rowPos++;
      		} 
      		return rowPos;
     }
     
+    /**
+     * @return the largest number of trials in any phase of the model.
+     */
+    
+    private int maxTrials() {
+    	int max = 0;
+    	for(SimGroup group : groups.values()) {
+    		for(SimPhase phase : group.getPhases()) {
+    			max = Math.max(max, phase.getNoTrials());
+    		}
+    	}
+    	return max;
+    }
+    
+    /**
+     * Export the results of a phase with one row per trial and one column per
+     * component. Phases with more trials or columns than fit on a sheet are
+     * split across several sheets, each with its own header rows.
+     * @param group group the phase belongs to
+     * @param phaseNo index of the phase in the group
+     * @param curPhase phase to export
+     * @return the names of the sheets written.
+     */
+    
+    protected List<String> exportPhaseRows(SimGroup group, int phaseNo, SimPhase curPhase) {
+    	List<Column> columns = phaseColumns(curPhase);
+    	int trials = 0;
+    	for(Column column : columns) {
+    		trials = Math.max(trials, column.length());
+    	}
+    	int rowsPerSheet = SpreadsheetVersion.EXCEL2007.getMaxRows() - HEADER_ROWS;
+    	int columnsPerSheet = SpreadsheetVersion.EXCEL2007.getMaxColumns() - 1;
+    	List<String> names = new ArrayList<String>();
+    	String baseName = group.getNameOfGroup() + " P" + (phaseNo+1);
+    	for(int firstTrial = 0; firstTrial < Math.max(trials, 1) && !control.isCancelled(); firstTrial += rowsPerSheet) {
+    		for(int firstColumn = 0; firstColumn < Math.max(columns.size(), 1); firstColumn += columnsPerSheet) {
+    			String name;
+    			Sheet phaseSheet;
+    			//Other groups may be adding sheets at the same time
+    			synchronized(wb) {
+    				name = uniqueSheetName(names.isEmpty() ? baseName : baseName + " (" + (names.size()+1) + ")");
+    				phaseSheet = wb.createSheet(name);
+    			}
+    			names.add(name);
+    			phaseSheets.add(phaseSheet);
+    			List<Column> shown = columns.subList(firstColumn, Math.min(columns.size(), firstColumn + columnsPerSheet));
+    			//Section and series headers
+    			Row sections = phaseSheet.createRow(0);
+    			Row headers = phaseSheet.createRow(1);
+    			String section = null;
+    			for(int c = 0; c < shown.size(); c++) {
+    				Column column = shown.get(c);
+    				if(!column.section.equals(section)) {
+    					section = column.section;
+    					cell = sections.createCell(c + 1);
+    					cell.setCellValue(section);
+    					cell.setCellStyle(cs2);
+    				}
+    				cell = headers.createCell(c + 1);
+    				cell.setCellValue(column.name);
+    				cell.setCellStyle(cs3);
+    			}
+    			int lastTrial = Math.min(trials, firstTrial + rowsPerSheet);
+    			double[][] blocks = new double[shown.size()][];
+    			for(int c = 0; c < blocks.length; c++) {
+    				blocks[c] = shown.get(c).values;
+    			}
+    			for(int z = firstTrial; z < lastTrial; z++) {
+    				row = phaseSheet.createRow(HEADER_ROWS + z - firstTrial);
+    				//Last cell first, so the row's cells are allocated once rather than grown
+    				for(int c = blocks.length - 1; c >= 0; c--) {
+    					if(z < blocks[c].length) {
+    						cell = row.createCell(c + 1);
+    						cell.setCellValue(blocks[c][z]);
+    						cell.setCellStyle(cs4);
+    					}
+    				}
+    				cell = row.createCell(0);
+    				cell.setCellValue("Trial " + (z+1));
+    				cell.setCellStyle(cs3);
+    			}
+    			flush(phaseSheet);
+    		}
+    	}
+    	return names;
+    }
+    
+    /**
+     * @param name wanted sheet name
+     * @return a legal sheet name not yet used in the workbook.
+     */
+    
+    private String uniqueSheetName(String name) {
+    	String safe = WorkbookUtil.createSafeSheetName(name);
+    	String unique = safe;
+    	for(int n = 2; wb.getSheetIndex(unique) >= 0; n++) {
+    		String suffix = " " + n;
+    		unique = safe.substring(0, Math.min(safe.length(), 31 - suffix.length())) + suffix;
+    	}
+    	return unique;
+    }
+    
+    /**
+     * Collect the series exported for a phase in the same order and with the
+     * same names as the trials as columns layout.
+     * @param curPhase phase to export
+     * @return the columns for the phase.
+     */
+    
+    private List<Column> phaseColumns(final SimPhase curPhase) {
+    	Map<String, CueList> results = curPhase.getResults();
+    	List<String> cueNames = new ArrayList<String>();
+    	List<String> configurals = new ArrayList<String>();
+    	//Cues first, then compounds, as in the other layout
+    	for(String cueName : results.keySet()) {
+    		if(cueName.length() == 1 && Character.isUpperCase(cueName.charAt(0)) && curPhase.isCueInStimuli(cueName)) {
+    			cueNames.add(cueName);
+    		} else if(cueName.length() == 1 && Character.isLowerCase(cueName.charAt(0)) && curPhase.isCueInStimuli(cueName)) {
+    			configurals.add(cueName);
+    		}
+    	}
+    	for(String cueName : results.keySet()) {
+    		if(compounds && cueName.length() > 1 && curPhase.isCueInStimuli(cueName)) {
+    			cueNames.add(cueName);
+    		}
+    	}
+    	List<Column> columns = new ArrayList<Column>();
+    	addComponentColumns("Realtime V", cueNames, curPhase, false, columns);
+    	addAverageColumns("V Per Trial", cueNames, curPhase, false, columns);
+    	addComponentColumns("Realtime Response", cueNames, curPhase, true, columns);
+    	addAverageColumns("Mean Response Per Trial", cueNames, curPhase, true, columns);
+    	addComponentColumns("Configural Realtime V", configurals, curPhase, false, columns);
+    	addAverageColumns("Configural V Per Trial", configurals, curPhase, false, columns);
+    	return columns;
+    }
+    
+    private void addComponentColumns(String section, List<String> cueNames, SimPhase curPhase,
+    		boolean response, List<Column> columns) {
+    	for(String cueName : cueNames) {
+    		CueList cues = curPhase.getResults().get(cueName);
+    		String interfaceName = getInterfaceName(cueName);
+    		for (int x = 0; x < cues.size() && x < curPhase.getMaxDuration(); x++) {
+    			SimCue curcue = cues.get(x);
+    			columns.add(new Column(section, interfaceName + " Component " + (x+1),
+    					block(response ? curcue.getResponses() : curcue.getAssocValueVector(), cues.getTrialCount())));
+    		}
+    	}
+    }
+    
+    private void addAverageColumns(String section, List<String> cueNames, SimPhase curPhase,
+    		boolean response, List<Column> columns) {
+    	for(String cueName : cueNames) {
+    		CueList cues = curPhase.getResults().get(cueName);
+    		String interfaceName = getInterfaceName(cueName);
+    		columns.add(new Column(section, response ? "Mean response " + interfaceName : interfaceName,
+    				block(response ? cues.getAverageResponse() : cues.getAverageWeights(), cues.getTrialCount())));
+    	}
+    }
+    
+    /**
+     * A series of values per trial shown as one column.
+     */
+    
+    private static class Column {
+    	/** Table the column belongs to. **/
+    	final String section;
+    	/** Column header. **/
+    	final String name;
+    	/** Value for each trial. **/
+    	final double[] values;
+    	
+    	Column(String section, String name, double[] values) {
+    		this.section = section;
+    		this.name = name;
+    		this.values = values;
+    	}
+    	
+    	/** @return the number of trials in the series. **/
+    	int length() {
+    		return values.length;
+    	}
+    }
+    
+    /**
+     * Copy the start of a series into an array ahead of writing it, so the
+     * values are unboxed once and read in order.
+     * @param series values per trial
+     * @param count number of trials wanted
+     * @return the first count values, or all of them if there are fewer.
+     */
+    
+    static double[] block(List<? extends Number> series, int count) {
+    	double[] values = new double[Math.min(count, series.size())];
+    	Iterator<? extends Number> it = series.iterator();
+    	for(int i = 0; i < values.length; i++) {
+    		values[i] = it.next().doubleValue();
+    	}
+    	return values;
+    }
+    
+    /**
+     * Write a block of values across a row, all in the same style.
+     * @param row row to write to
+     * @param firstCol column of the first value
+     * @param values values to write
+     * @param style style of the value cells
+     */
+    
+    private void valueRow(Row row, int firstCol, double[] values, CellStyle style) {
+    	//Last cell first, so the row's cells are allocated once rather than grown
+    	for(int z = values.length - 1; z >= 0; z--) {
+    		Cell valueCell = row.createCell(firstCol + z);
+    		valueCell.setCellValue(values[z]);
+    		valueCell.setCellStyle(style);
+    	}
+    }
+    
     /**
      * Print a row of trial headers.
      * @param num
@@ -895,7 +1282,7 @@ public class SimExport implements Runnable {
      */
     
     private void trialRow(int num, int colPos, Row row2) {
-    	for (int x = 1; x <= num; x++) {
+    	for (int x = num; x >= 1; x--) {
 			cell = row2.createCell(colPos + x);
 			cell.setCellValue("Trial " + x);
 			cell.setCellStyle(cs3);
@@ -936,5 +1323,14 @@ public class SimExport implements Runnable {
 	public void setControl(ModelControl control) {
 		this.control = control;
 	}
+
+	/**
+	 * @param trialsAsRows true to write trials as rows, with each phase's
+	 * results on sheets of their own. Used regardless when a phase has
+	 * more trials than fit across a sheet.
+	 */
+	public void setTrialsAsRows(boolean trialsAsRows) {
+		this.trialsAsRows = trialsAsRows;
+	}
 	
 }
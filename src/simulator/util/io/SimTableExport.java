@@ -0,0 +1,238 @@
+package simulator.util.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import simulator.CueList;
+import simulator.ModelControl;
+import simulator.SimCue;
+import simulator.SimGroup;
+import simulator.SimModel;
+import simulator.SimPhase;
+import simulator.SimulationMonitor;
+import simulator.events.EngineEvents;
+
+/**
+ * Exports the results from the simulator as a single long-format table of
+ * comma or tab separated values, one record per cue, component and trial:
+ * group, phase, cue, component, trial, V and response. Records with an
+ * empty component hold the cue's values averaged over its components.
+ * Tab separated values are written if the file name ends in .tsv.
+ * Groups can also be written one at a time as they finish, see
+ * {@link ExportPipeline}.
+ */
+
+public class SimTableExport implements ResultExporter, GroupExporter {
+	/** Column names. **/
+	private static final String[] HEADER = {"group", "phase", "cue", "component", "trial", "V", "response"};
+	/** Cells in every record. **/
+	public static final int COLUMNS = HEADER.length;
+	/** Size of the write buffer. **/
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final SimModel model;
+	private final File file;
+	/** Whether compound results are exported. **/
+	private final boolean compounds;
+	private boolean success;
+	private ModelControl control;
+	/** Writer for the file, while open. **/
+	private DelimitedWriter out;
+
+	/**
+	 * @param model the model whose results are exported.
+	 * @param file file to write.
+	 * @param compounds true to include compound cues.
+	 */
+
+	public SimTableExport(SimModel model, File file, boolean compounds) {
+		this.model = model;
+		this.file = file;
+		this.compounds = compounds;
+		success = true;
+	}
+
+	public void doExport() throws IOException {
+		SimulationMonitor.get().watchExport(control);
+		begin();
+		try {
+			for(SimGroup group : model.getGroups().values()) {
+				if(isCancelled()) {
+					break;
+				}
+				long estimatedCycle = System.currentTimeMillis();
+				exportGroup(group);
+				control.incrementProgress(1);
+				control.setEstimatedCycleTime(System.currentTimeMillis()-estimatedCycle);
+			}
+		} finally {
+			finish();
+		}
+		control.setProgress(100);
+	}
+
+	/**
+	 * Open the file and write the header.
+	 * @throws IOException
+	 */
+
+	public void begin() throws IOException {
+		char separator = file.getName().toLowerCase().endsWith(".tsv") ? '\t' : ',';
+		out = new DelimitedWriter(new FileOutputStream(file).getChannel(), separator, BUFFER_SIZE);
+		for(String column : HEADER) {
+			out.writeString(column);
+		}
+		out.endRecord();
+	}
+
+	/**
+	 * Close the file. A cancelled export leaves no file behind, rather than
+	 * one that is missing groups.
+	 * @throws IOException
+	 */
+
+	public void finish() throws IOException {
+		if(out != null) {
+			out.close();
+			out = null;
+			if(isCancelled()) {
+				file.delete();
+			}
+		}
+	}
+
+	private boolean isCancelled() {
+		return control != null && control.isCancelled();
+	}
+
+	/**
+	 * Write the records for every phase of a group.
+	 * @param group group to export.
+	 * @throws IOException
+	 */
+
+	public void exportGroup(SimGroup group) throws IOException {
+		long rows = 0;
+		List<SimPhase> phases = group.getPhases();
+		EngineEvents.Span span = EngineEvents.get().exportSheet("table", group.getNameOfGroup(), phases.size()); //$NON-NLS-1$
+		try {
+			for(int i = 0; i < phases.size() && !isCancelled(); i++) {
+				SimPhase phase = phases.get(i);
+				for(Entry<String, CueList> entry : phase.getResults().entrySet()) {
+					String cueName = entry.getKey();
+					if(isExported(cueName, phase)) {
+						rows += exportCue(group.getNameOfGroup(), i+1, SimExport.getInterfaceName(model, cueName),
+								entry.getValue(), phase.getMaxDuration(), out);
+					}
+				}
+			}
+		} finally {
+			span.end();
+		}
+		if(control != null) {
+			control.addRowsWritten(rows);
+		}
+	}
+
+	/**
+	 * @param cueName name of a cue in the results.
+	 * @param phase phase the results are from.
+	 * @return true if the cue appears in the spreadsheet export as well.
+	 */
+
+	private boolean isExported(String cueName, SimPhase phase) {
+		if(!phase.isCueInStimuli(cueName)) {
+			return false;
+		}
+		return cueName.length() == 1 || compounds;
+	}
+
+	/**
+	 * Write the records of one cue: each component per trial, then the
+	 * averages per trial.
+	 * @return the number of records written.
+	 */
+
+	private int exportCue(String group, int phase, String cue, CueList cues, int maxDuration,
+			DelimitedWriter out) throws IOException {
+		int trials = cues.getTrialCount();
+		int records = 0;
+		for(int x = 0; x < cues.size() && x < maxDuration; x++) {
+			SimCue component = cues.get(x);
+			List<Double> weights = component.getAssocValueVector();
+			List<Double> responses = component.getResponses();
+			for(int z = 0; z < trials && z < weights.size(); z++) {
+				writeKey(group, phase, cue, out);
+				out.writeLong(x+1);
+				out.writeLong(z+1);
+				out.writeDouble(weights.get(z));
+				writeOptional(responses, z, out);
+				out.endRecord();
+				records++;
+			}
+		}
+		List<Double> averages = cues.getAverageWeights();
+		List<Double> responses = cues.getAverageResponse();
+		for(int z = 0; z < trials && z < averages.size(); z++) {
+			writeKey(group, phase, cue, out);
+			out.writeEmpty();
+			out.writeLong(z+1);
+			out.writeDouble(averages.get(z));
+			writeOptional(responses, z, out);
+			out.endRecord();
+			records++;
+		}
+		return records;
+	}
+
+	private void writeKey(String group, int phase, String cue, DelimitedWriter out) throws IOException {
+		out.writeString(group);
+		out.writeLong(phase);
+		out.writeString(cue);
+	}
+
+	private void writeOptional(List<Double> values, int index, DelimitedWriter out) throws IOException {
+		if(values != null && index < values.size()) {
+			out.writeDouble(values.get(index));
+		} else {
+			out.writeEmpty();
+		}
+	}
+
+	/**
+	 * @return the model being exported.
+	 */
+	public SimModel getModel() {
+		return model;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			doExport();
+		} catch (IOException e) {
+			success = false;
+		}
+	}
+
+	/**
+	 * @return true if the export succeeded
+	 */
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 * @param control
+	 */
+	public void setControl(ModelControl control) {
+		this.control = control;
+	}
+}
@@ -0,0 +1,278 @@
+package simulator.util.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed storage for series of weights or responses. Values are cut
+ * into blocks; in each block every value is XORed with the one before,
+ * which leaves the sign, exponent and leading mantissa bits of a slowly
+ * changing series as zeros, and repeated values as all zeros. The XORed
+ * values are laid out byte plane by byte plane and deflated.
+ *
+ * A stream is a run of blocks, each an int count of values, an int
+ * length of compressed bytes and the bytes themselves, ended by a zero
+ * count. Any block can be decoded on its own.
+ */
+
+public final class WeightCodec {
+	/** Values per block. **/
+	public static final int BLOCK_SIZE = 1024;
+
+	private WeightCodec() {}
+
+	/**
+	 * Encodes values one at a time, writing each block as it fills.
+	 */
+
+	public static class Encoder {
+		private final DataOutputStream out;
+		private final Deflater deflater = new Deflater();
+		private final double[] block = new double[BLOCK_SIZE];
+		private final byte[] planes = new byte[BLOCK_SIZE*8];
+		private byte[] compressed = new byte[BLOCK_SIZE*8];
+		private int count;
+
+		/**
+		 * @param out stream to write to, left open when finished.
+		 */
+
+		public Encoder(OutputStream out) {
+			this.out = out instanceof DataOutputStream ? (DataOutputStream) out : new DataOutputStream(out);
+		}
+
+		/**
+		 * @param value next value in the series.
+		 * @throws IOException
+		 */
+
+		public void append(double value) throws IOException {
+			block[count++] = value;
+			if(count == BLOCK_SIZE) {
+				writeBlock();
+			}
+		}
+
+		/**
+		 * @param values values to append in order.
+		 * @throws IOException
+		 */
+
+		public void appendAll(List<? extends Number> values) throws IOException {
+			for(Number value : values) {
+				append(value.doubleValue());
+			}
+		}
+
+		/**
+		 * Write the last partial block and the end of the stream.
+		 * @throws IOException
+		 */
+
+		public void finish() throws IOException {
+			writeBlock();
+			out.writeInt(0);
+			deflater.end();
+		}
+
+		private void writeBlock() throws IOException {
+			if(count == 0) {
+				return;
+			}
+			long previous = 0;
+			for(int i = 0; i < count; i++) {
+				long bits = Double.doubleToRawLongBits(block[i]);
+				long xor = bits ^ previous;
+				previous = bits;
+				for(int b = 0; b < 8; b++) {
+					planes[b*count + i] = (byte) (xor >>> (56 - 8*b));
+				}
+			}
+			deflater.reset();
+			deflater.setInput(planes, 0, count*8);
+			deflater.finish();
+			int length = 0;
+			while(!deflater.finished()) {
+				if(length == compressed.length) {
+					compressed = Arrays.copyOf(compressed, compressed.length*2);
+				}
+				length += deflater.deflate(compressed, length, compressed.length - length);
+			}
+			out.writeInt(count);
+			out.writeInt(length);
+			out.write(compressed, 0, length);
+			count = 0;
+		}
+	}
+
+	/**
+	 * Read-only list view of an encoded stream. Blocks are located when the
+	 * view is made and decoded as values in them are asked for; the last
+	 * decoded block is kept.
+	 */
+
+	public static class Column extends AbstractList<Double> implements RandomAccess {
+		private final ByteBuffer stream;
+		/** Start of each block's compressed bytes. **/
+		private final int[] offsets;
+		/** Compressed length and value count of each block. **/
+		private final int[] lengths;
+		private final int[] counts;
+		private final int size;
+		/** Bytes taken by the whole stream. **/
+		private final int byteLength;
+		/** Most recently decoded block. **/
+		private volatile Decoded last;
+
+		/**
+		 * @param buffer buffer holding the stream.
+		 * @param position start of the stream in the buffer.
+		 * @throws IOException if the stream runs past the end of the buffer.
+		 */
+
+		public Column(ByteBuffer buffer, int position) throws IOException {
+			stream = buffer.duplicate();
+			int blocks = 0;
+			int total = 0;
+			int[] offsets = new int[4];
+			int[] lengths = new int[4];
+			int[] counts = new int[4];
+			int p = position;
+			for(int n = header(p); n != 0; n = header(p)) {
+				if(n < 0 || n > BLOCK_SIZE || p + 8 > stream.limit()) {
+					throw new IOException("Corrupt weight column at " + p);
+				}
+				if(blocks == offsets.length) {
+					offsets = Arrays.copyOf(offsets, blocks*2);
+					lengths = Arrays.copyOf(lengths, blocks*2);
+					counts = Arrays.copyOf(counts, blocks*2);
+				}
+				counts[blocks] = n;
+				lengths[blocks] = stream.getInt(p + 4);
+				offsets[blocks] = p + 8;
+				if(lengths[blocks] < 0 || offsets[blocks] + lengths[blocks] > stream.limit()) {
+					throw new IOException("Truncated weight column at " + p);
+				}
+				p += 8 + lengths[blocks];
+				total += n;
+				blocks++;
+			}
+			this.offsets = offsets;
+			this.lengths = lengths;
+			this.counts = counts;
+			size = total;
+			byteLength = p + 4 - position;
+		}
+
+		/**
+		 * @param p position of a block header.
+		 * @return the value count at the position.
+		 * @throws IOException if the position is past the end of the buffer.
+		 */
+
+		private int header(int p) throws IOException {
+			if(p < 0 || p + 4 > stream.limit()) {
+				throw new IOException("Truncated weight column at " + p);
+			}
+			return stream.getInt(p);
+		}
+
+		/**
+		 * @return the number of bytes the stream takes in the buffer.
+		 */
+		public int byteLength() {
+			return byteLength;
+		}
+
+		@Override
+		public Double get(int index) {
+			if(index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException(index + " of " + size);
+			}
+			//Every block but the last is full
+			int block = index / BLOCK_SIZE;
+			Decoded decoded = last;
+			if(decoded == null || decoded.block != block) {
+				try {
+					decoded = new Decoded(block, decode(block));
+				} catch (IOException e) {
+					//Lists cannot throw checked exceptions
+					throw new IllegalStateException(e.getMessage(), e);
+				}
+				last = decoded;
+			}
+			return decoded.values[index - block*BLOCK_SIZE];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @param block number of the block.
+		 * @return the values of the block.
+		 * @throws IOException if the compressed bytes are corrupt or do not
+		 * hold as many values as the block declares.
+		 */
+
+		private double[] decode(int block) throws IOException {
+			int count = counts[block];
+			byte[] input = new byte[lengths[block]];
+			ByteBuffer source = stream.duplicate();
+			source.position(offsets[block]);
+			source.get(input);
+			byte[] planes = new byte[count*8];
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(input);
+				int length = 0;
+				while(length < planes.length && !inflater.finished()) {
+					int inflated = inflater.inflate(planes, length, planes.length - length);
+					if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						throw new IOException("Truncated weight column in block " + block);
+					}
+					length += inflated;
+				}
+				if(length != planes.length || !inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+					throw new IOException("Weight block " + block + " does not hold " + count + " values");
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt weight block " + block, e);
+			} finally {
+				inflater.end();
+			}
+			double[] values = new double[count];
+			long previous = 0;
+			for(int i = 0; i < count; i++) {
+				long xor = 0;
+				for(int b = 0; b < 8; b++) {
+					xor = (xor << 8) | (planes[b*count + i] & 0xff);
+				}
+				previous ^= xor;
+				values[i] = Double.longBitsToDouble(previous);
+			}
+			return values;
+		}
+	}
+
+	/** A decoded block. **/
+	private static class Decoded {
+		final int block;
+		final double[] values;
+
+		Decoded(int block, double[] values) {
+			this.block = block;
+			this.values = values;
+		}
+	}
+}